@@ -0,0 +1,7458 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterInputStream;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+// Headless election engine: registries, tallying, persistence and the
+// election lifecycle. Nothing here depends on AWT or Swing, so it can run
+// on a server or inside a load test; FinalElectionApp is one client that
+// subscribes to its events.
+public class ElectionEngine {
+    // Headless entry point for maintenance commands
+    public static void main(String[] args) {
+        if (args.length == 1 && args[0].equals("migrate")) {
+            System.exit(FileHandler.migrateTextFiles() ? 0 : 1);
+        }
+        if ((args.length == 2 || (args.length == 3 && args[2].equals("--after-close"))) && args[0].equals("ingest")) {
+            System.exit(ingest(Paths.get(args[1]), args.length == 3) ? 0 : 1);
+        }
+        if ((args.length == 3 || args.length == 4) && args[0].equals("count")) {
+            System.exit(count(args[1], Paths.get(args[2]), args.length == 4 ? Integer.parseInt(args[3]) : 1) ? 0 : 1);
+        }
+        if (args.length == 1 && args[0].equals("recount")) {
+            System.exit(recount() ? 0 : 1);
+        }
+        if (args.length == 1 && args[0].equals("snapshot")) {
+            System.exit(snapshot() ? 0 : 1);
+        }
+        if (args.length == 1 && args[0].equals("snapshots")) {
+            Snapshots.list().forEach(System.out::println);
+            System.exit(0);
+        }
+        if (args.length == 3 && args[0].equals("restore")) {
+            System.exit(restore(args[1], Paths.get(args[2])) ? 0 : 1);
+        }
+        if ((args.length == 1 || args.length == 3) && args[0].equals("verify")) {
+            long from = args.length == 3 ? Long.parseLong(args[1]) : 1;
+            long to = args.length == 3 ? Long.parseLong(args[2]) : Long.MAX_VALUE;
+            System.exit(verify(from, to) ? 0 : 1);
+        }
+        if ((args.length == 1 || args.length == 2) && args[0].equals("serve")) {
+            serve(args.length == 2 ? Integer.parseInt(args[1]) : VotingServer.DEFAULT_PORT);
+            return;
+        }
+        System.err.println("Usage: java ElectionEngine migrate | ingest <ballots.csv> [--after-close] | serve [port]\n"
+                + "       | recount | verify [fromSeq toSeq] | snapshot | snapshots\n"
+                + "       | restore <seq|yyyy-MM-ddTHH:mm> <targetDir>\n"
+                + "       | count <irv|stv|dhondt|sainte-lague> <ranked.csv> [seats]");
+        System.exit(2);
+    }
+
+    // Runs the HTTP voting endpoint until the process is killed.
+    private static void serve(int port) {
+        Admin admin = new Admin();
+        try {
+            VotingServer server = new VotingServer(admin, port);
+            System.out.println("Voting endpoint listening on http://" + server.getAddress().getHostString() + ":"
+                    + server.getAddress().getPort() + "/ (" + server.getThreading() + ")");
+        } catch (IOException e) {
+            System.err.println("Error starting voting endpoint: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // Exits non-zero unless the recount matches the live tallies.
+    private static boolean recount() {
+        try (Admin admin = new Admin()) {
+            Recount.Report report = admin.recount();
+            System.out.print(report);
+            return report.isVerified();
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error recounting ballots: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static boolean snapshot() {
+        try (Admin admin = new Admin()) {
+            System.out.println(admin.snapshot());
+            return true;
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error taking election snapshot: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Rebuilds the election as of a ledger seq, or of a local time, in an empty directory.
+    private static boolean restore(String at, Path target) {
+        try {
+            long seq = at.contains("T")
+                    ? Snapshots.seqAt(LocalDateTime.parse(at).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli())
+                    : Long.parseLong(at);
+            System.out.print(Snapshots.restore(seq, target));
+            return true;
+        } catch (IOException | UncheckedIOException | DateTimeParseException | NumberFormatException e) {
+            System.err.println("Error restoring election: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Exits non-zero if any ballot in the range fails the hash chain.
+    private static boolean verify(long from, long to) {
+        try (Admin admin = new Admin()) {
+            BallotChain.Report report = admin.verifyBallotChain(from, to);
+            System.out.print(report);
+            return report.isValid();
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error verifying ballot chain: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Counts a file of ranked ballots against the candidates in the data directory.
+    private static boolean count(String method, Path ballots, int seats) {
+        CountingEngine engine = Counting.forName(method);
+        if (engine == null) {
+            System.err.println("Unknown counting method: " + method);
+            return false;
+        }
+        try {
+            CandidateRegistry registry = new CandidateRegistry(FileHandler.readCandidates());
+            long start = System.nanoTime();
+            RankedBallots ranked = RankedBallots.read(ballots, registry);
+            double readSeconds = (System.nanoTime() - start) / 1e9;
+            start = System.nanoTime();
+            Counting.Result result = engine.count(ranked, seats);
+            double countSeconds = (System.nanoTime() - start) / 1e9;
+            System.out.print(result);
+            System.out.printf("%d ballots read in %.1f s, counted in %.2f s%n", ranked.size(), readSeconds,
+                    countSeconds);
+            return true;
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error reading ranked ballots: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Loads a polling-station upload; rejected ballots go to <file>.rejects.csv.
+    // --after-close counts an upload that arrives once the polls have closed.
+    // Exits non-zero if any ballot was rejected or none was accepted.
+    private static boolean ingest(Path ballots, boolean afterClose) {
+        Path rejects = ballots.resolveSibling(ballots.getFileName() + ".rejects.csv");
+        try (Admin admin = new Admin()) {
+            long start = System.nanoTime();
+            Map<VoteResult, Long> counts = admin.ingestBallotFile(ballots, rejects, afterClose);
+            admin.flush();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long total = counts.values().stream().mapToLong(Long::longValue).sum();
+            System.out.printf("Ingested %d ballots in %.1f s%n", total, seconds);
+            counts.forEach((result, n) -> System.out.println(result + ": " + n));
+            long accepted = counts.getOrDefault(VoteResult.ACCEPTED, 0L);
+            if (total > accepted)
+                System.out.println("Rejected ballots written to " + rejects);
+            return accepted > 0 && accepted == total;
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error ingesting ballots: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // ----------------------- Engine Events -----------------------
+    public interface ElectionListener {
+        void onEvent(ElectionEvent event);
+    }
+
+    public static class ElectionEvent {
+        public enum Type {
+            CAMPAIGN_STARTED, CAMPAIGN_ENDED, ELECTION_STARTED, ELECTION_PAUSED, ELECTION_RESUMED, ELECTION_ENDED,
+            CONSTITUENCY_ENDED, VOTE_ACCEPTED, VOTE_REJECTED
+        }
+
+        private final Type type;
+        private final Voter voter;
+        private final Candidate candidate;
+        private final VoteResult result;
+
+        ElectionEvent(Type type, Voter voter, Candidate candidate, VoteResult result) {
+            this.type = type;
+            this.voter = voter;
+            this.candidate = candidate;
+            this.result = result;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        // Vote events only
+        public Voter getVoter() {
+            return voter;
+        }
+
+        // The chosen candidate for vote events, the winner (or null) for ELECTION_ENDED
+        public Candidate getCandidate() {
+            return candidate;
+        }
+
+        // Vote events only
+        public VoteResult getResult() {
+            return result;
+        }
+    }
+
+    public interface LoadListener {
+        // Progress in voter records indexed so far
+        void onProgress(long done, long total);
+
+        void onLoaded(int voterCount);
+    }
+
+    public interface ResultsSubscriber {
+        void onResults(ResultsUpdate update);
+    }
+
+    // One published view of the results: every candidate's votes, in rank
+    // order, plus what changed since the subscriber's previous update.
+    public static class ResultsUpdate {
+        private final long seq;
+        private final long timeMillis;
+        private final int totalVotes;
+        private final List<Leaderboard.Standing> standings;
+        private final Map<String, Integer> deltas;
+        private final int coalesced;
+
+        ResultsUpdate(long seq, long timeMillis, int totalVotes, List<Leaderboard.Standing> standings,
+                      Map<String, Integer> deltas, int coalesced) {
+            this.seq = seq;
+            this.timeMillis = timeMillis;
+            this.totalVotes = totalVotes;
+            this.standings = standings;
+            this.deltas = deltas;
+            this.coalesced = coalesced;
+        }
+
+        public long getSeq() {
+            return seq;
+        }
+
+        // When the counts were sampled.
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        public int getTotalVotes() {
+            return totalVotes;
+        }
+
+        public List<Leaderboard.Standing> getStandings() {
+            return standings;
+        }
+
+        // Candidate id -> votes gained since this subscriber's previous update.
+        public Map<String, Integer> getDeltas() {
+            return deltas;
+        }
+
+        // Number of feed ticks folded into this update because the subscriber was still busy.
+        public int getCoalesced() {
+            return coalesced;
+        }
+
+        // Later update with the deltas of both.
+        ResultsUpdate mergeInto(ResultsUpdate later) {
+            Map<String, Integer> merged = new LinkedHashMap<>(deltas);
+            later.deltas.forEach((id, d) -> merged.merge(id, d, Integer::sum));
+            return new ResultsUpdate(later.seq, later.timeMillis, later.totalVotes, later.standings,
+                    Collections.unmodifiableMap(merged), coalesced + later.coalesced);
+        }
+    }
+
+    // ----------------------- Supporting Classes -----------------------
+    static class Admin implements Closeable {
+        // Scheduler key of the national election; constituency elections are keyed by place
+        static final String NATIONAL = "national";
+        // Ballots per ledger commit when ingesting a file
+        static final int INGEST_BATCH = 10_000;
+        static final String RANKED_FILE = "ranked_ballots.csv";
+        private static final Metrics.Counter VOTES_ACCEPTED = Metrics.global().counter("election_votes_accepted_total");
+        private static final Metrics.Counter VOTES_REJECTED = Metrics.global().counter("election_votes_rejected_total");
+        private static final Metrics.Timer CAST_VOTE = Metrics.global().timer("election_cast_vote_seconds");
+        private static final Metrics.Timer FIND_VOTER = Metrics.global().timer("election_find_voter_seconds");
+        private static final Metrics.Timer QUERY_VOTERS = Metrics.global().timer("election_query_voters_seconds");
+
+        private final List<ElectionListener> listeners = new CopyOnWriteArrayList<>();
+        private final AtomicBoolean campaignRunning = new AtomicBoolean();
+        private final AtomicBoolean electionRunning = new AtomicBoolean();
+        private CandidateRegistry candidateRegistry;
+        // Null until the voter roll is open
+        private volatile VoterRegistry voterRegistry;
+        // Registration-ordered view of the candidate registry, used for display and persistence
+        private List<Candidate> candidates;
+        private volatile VoteLedger ledger;
+        // Per-minute and per-hour turnout, fed by every accepted ballot
+        private volatile TurnoutAnalytics turnout;
+        // Last checkpointed seq the ballot chain verified through
+        private volatile long chainVerifiedThrough;
+        private volatile VoterRoll roll;
+        private final CountDownLatch loaded = new CountDownLatch(1);
+        private ResultsFeed resultsFeed;
+        private volatile ResultsFeed.Subscription electionLog;
+        private volatile ElectionScheduler scheduler;
+        private volatile CandidateViews views;
+        // Full rankings behind castRankedVote, also appended to RANKED_FILE
+        private final RankedBallots rankedBallots = new RankedBallots();
+        private FileChannel rankedLog;
+        // Brings candidate.dat and the voter roll up to date in the background,
+        // so the caller (often the Swing EDT) never waits on the disk
+        private WriteBehind writeBehind;
+        // Drains writeBehind if the JVM exits without close()
+        private Thread drainHook;
+        // The gauges this Admin registered, removed again by close()
+        private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+        // Takes a snapshot every -Delection.snapshotMinutes (default 60, 0 turns it off)
+        private ScheduledExecutorService snapshotter;
+
+        // Loads everything before returning.
+        public Admin() {
+            this.candidateRegistry = new CandidateRegistry(FileHandler.readCandidates());
+            this.candidates = candidateRegistry.asList();
+            startWriteBehind();
+            startResultsFeed();
+            loadVoters(null);
+            finishLoading();
+        }
+
+        // Returns once candidates are loaded; the voter roll is indexed on a
+        // background thread, reporting progress (in records) to the listener.
+        // Voting and registration wait until the roll and ledger are loaded.
+        public Admin(LoadListener listener) {
+            this.candidateRegistry = new CandidateRegistry(FileHandler.readCandidates());
+            this.candidates = candidateRegistry.asList();
+            startWriteBehind();
+            startResultsFeed();
+            Thread loader = new Thread(() -> {
+                loadVoters(listener);
+                finishLoading();
+                listener.onLoaded(voterRegistry.size());
+            }, "voter-loader");
+            loader.setDaemon(true);
+            loader.start();
+        }
+
+        // Votes are acknowledged once they are in memory and in the ledger;
+        // the files they touch are flushed from here.
+        private void startWriteBehind() {
+            this.writeBehind = new WriteBehind(() -> {
+                boolean saved = FileHandler.writeCandidates(candidates);
+                VoterRoll r = roll;
+                if (r != null)
+                    r.sync();
+                synchronized (rankedBallots) {
+                    try {
+                        if (rankedLog != null)
+                            rankedLog.force(false);
+                    } catch (IOException e) {
+                        System.err.println("Error syncing ranked ballots: " + e.getMessage());
+                        saved = false;
+                    }
+                }
+                return saved;
+            });
+            this.drainHook = new Thread(writeBehind::close, "election-writer-drain");
+            Runtime.getRuntime().addShutdownHook(drainHook);
+            WriteBehind stage = writeBehind;
+            gauge("election_persistence_queue_depth", () -> stage.stats().getQueueDepth());
+        }
+
+        private void gauge(String name, LongSupplier value) {
+            gauges.put(name, value);
+            Metrics.global().gauge(name, value);
+        }
+
+        // -Delection.resultsFile=<path> keeps a CSV of the live standings there.
+        private void startResultsFeed() {
+            this.resultsFeed = new ResultsFeed(candidateRegistry);
+            String export = System.getProperty("election.resultsFile");
+            if (export != null)
+                resultsFeed.subscribe(ResultsFeed.fileSink(Paths.get(export)));
+        }
+
+        private void loadVoters(LoadListener progress) {
+            try {
+                this.roll = FileHandler.openVoterRoll();
+                this.voterRegistry = new VoterRegistry(roll, progress);
+                VoterRegistry registry = voterRegistry;
+                gauge("election_voter_roll_heap_bytes", registry::heapBytes);
+                gauge("election_voter_roll_size", registry::size);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error opening voter roll", e);
+            }
+        }
+
+        private void finishLoading() {
+            // Snapshot + ledger tail are authoritative for votes and hasVoted;
+            // bring any roll flags that missed their last sync back in line
+            this.ledger = VoteLedger.open(candidateRegistry, voterRegistry);
+            startTurnout();
+            openRankedLog();
+            for (int i = 0; i < voterRegistry.size(); i++) {
+                boolean voted = voterRegistry.isVoted(i);
+                if (roll.isVoted(i) != voted)
+                    roll.setVoted(i, voted);
+            }
+            // An election left running or paused by the last process carries on
+            this.scheduler = new ElectionScheduler(this::onElectionExpired);
+            ElectionScheduler.State national = scheduler.state(NATIONAL);
+            if (national == ElectionScheduler.State.RUNNING || national == ElectionScheduler.State.PAUSED) {
+                electionRunning.set(true);
+                electionLog = resultsFeed.subscribe(ResultsFeed.logSink());
+            }
+            scheduler.recover();
+            loaded.countDown();
+            startSnapshots();
+        }
+
+        // Buckets start empty; ballots the loaded tallies already count are
+        // replayed from the ledger on a daemon thread so loading never waits.
+        private void startTurnout() {
+            TurnoutAnalytics analytics = new TurnoutAnalytics(candidateRegistry);
+            long loadedSeq = ledger.lastSeq();
+            this.turnout = analytics;
+            Thread replay = new Thread(() -> {
+                try {
+                    analytics.replay(loadedSeq);
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Error replaying turnout from the vote ledger: " + e.getMessage());
+                }
+            }, "turnout-replay");
+            replay.setDaemon(true);
+            replay.start();
+        }
+
+        private void startSnapshots() {
+            long minutes = Long.getLong("election.snapshotMinutes", 60L);
+            if (minutes <= 0)
+                return;
+            snapshotter = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "election-snapshots");
+                t.setDaemon(true);
+                return t;
+            });
+            snapshotter.scheduleWithFixedDelay(() -> {
+                try {
+                    snapshot();
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Error taking election snapshot: " + e.getMessage());
+                }
+            }, minutes, minutes, TimeUnit.MINUTES);
+        }
+
+        private void openRankedLog() {
+            Path file = FileHandler.resolve(RANKED_FILE);
+            try {
+                if (Files.exists(file))
+                    RankedBallots.read(file, candidateRegistry, rankedBallots);
+                FileChannel log = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND);
+                synchronized (rankedBallots) {
+                    rankedLog = log;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error opening ranked ballots", e);
+            }
+        }
+
+        private void onElectionExpired(String election) {
+            if (election.equals(NATIONAL))
+                endElection();
+            else
+                fireConstituencyEnded(election);
+        }
+
+        public boolean isLoaded() {
+            return loaded.getCount() == 0;
+        }
+
+        public void awaitLoaded() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    loaded.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+
+        // Listeners run on the thread that raised the event; a UI must hand off to its own thread.
+        public void addListener(ElectionListener listener) {
+            listeners.add(listener);
+        }
+
+        public void removeListener(ElectionListener listener) {
+            listeners.remove(listener);
+        }
+
+        private void fire(ElectionEvent.Type type, Voter voter, Candidate candidate, VoteResult result) {
+            if (listeners.isEmpty())
+                return;
+            ElectionEvent event = new ElectionEvent(type, voter, candidate, result);
+            for (ElectionListener l : listeners) {
+                l.onEvent(event);
+            }
+        }
+
+        // Live results pushed at most ~100 ms after the votes they reflect.
+        // Callbacks run on a feed thread; a UI must hand off to its own thread.
+        public ResultsFeed.Subscription subscribeResults(ResultsSubscriber subscriber) {
+            return resultsFeed.subscribe(subscriber);
+        }
+
+        public boolean isCampaignRunning() {
+            return campaignRunning.get();
+        }
+
+        public boolean isElectionRunning() {
+            return electionRunning.get();
+        }
+
+        // Number of registered voters who have voted, read from the voted bitmap.
+        public int getTurnout() {
+            VoterRegistry registry = voterRegistry;
+            return registry == null ? 0 : registry.votedCount();
+        }
+
+        public int getTotalVotes() {
+            return candidateRegistry.leaderboard().total();
+        }
+
+        // Live top-k results without sorting the candidate list.
+        public List<Leaderboard.Standing> getTopCandidates(int k) {
+            return candidateRegistry.leaderboard().top(k);
+        }
+
+        // Returns false if the id cannot be written to the ledger (see VoteLedger.isValidId).
+        public boolean addCandidate(String name, String place, String id, String party, String symbol,
+                                    String assets, String criminalCases) {
+            if (!VoteLedger.isValidId(id))
+                return false;
+            Candidate candidate = new Candidate(name, place, id, party, symbol, assets, criminalCases);
+            candidateRegistry.addOrReplace(candidate);
+            // A new candidate is saved right away rather than with the next batch of votes
+            writeBehind.markDirty(1);
+            writeBehind.requestFlush();
+            return true;
+        }
+
+        // Queue depth and flush latency of the write-behind stage.
+        public WriteBehind.Stats getPersistenceStats() {
+            return writeBehind.stats();
+        }
+
+        // Returns false if a voter with this id is already registered, if the
+        // name or id is too long for the roll's fixed-width fields, or if the
+        // id cannot be written to the ledger.
+        public boolean addVoter(String name, String id) {
+            awaitLoaded();
+            if (!VoteLedger.isValidId(id) || voterRegistry.add(name, id) < 0)
+                return false;
+            writeBehind.markDirty(1);
+            return true;
+        }
+
+        // Returns false if the campaign is already running.
+        public boolean startCampaign() {
+            if (!campaignRunning.compareAndSet(false, true))
+                return false;
+            System.out.println("Campaign started.");
+            fire(ElectionEvent.Type.CAMPAIGN_STARTED, null, null, null);
+            return true;
+        }
+
+        // Returns false if no campaign is running.
+        public boolean endCampaign() {
+            if (!campaignRunning.compareAndSet(true, false))
+                return false;
+            System.out.println("Campaign ended.");
+            fire(ElectionEvent.Type.CAMPAIGN_ENDED, null, null, null);
+            return true;
+        }
+
+        // Returns false if an election is already running.
+        public boolean startElection(int durationInSeconds) {
+            awaitLoaded();
+            if (!electionRunning.compareAndSet(false, true))
+                return false;
+            scheduler.start(NATIONAL, durationInSeconds * 1000L);
+            fire(ElectionEvent.Type.ELECTION_STARTED, null, null, null);
+            electionLog = resultsFeed.subscribe(ResultsFeed.logSink());
+            return true;
+        }
+
+        // Stops the countdown; ballots are refused until resumed.
+        public boolean pauseElection() {
+            awaitLoaded();
+            if (!scheduler.pause(NATIONAL))
+                return false;
+            fire(ElectionEvent.Type.ELECTION_PAUSED, null, null, null);
+            return true;
+        }
+
+        public boolean resumeElection() {
+            awaitLoaded();
+            if (!scheduler.resume(NATIONAL))
+                return false;
+            fire(ElectionEvent.Type.ELECTION_RESUMED, null, null, null);
+            return true;
+        }
+
+        public boolean extendElection(int extraSeconds) {
+            awaitLoaded();
+            return scheduler.extend(NATIONAL, extraSeconds * 1000L);
+        }
+
+        public boolean isElectionPaused() {
+            ElectionScheduler s = scheduler;
+            return s != null && s.state(NATIONAL) == ElectionScheduler.State.PAUSED;
+        }
+
+        public long getElectionSecondsLeft() {
+            ElectionScheduler s = scheduler;
+            return s == null ? 0 : (s.remainingMillis(NATIONAL) + 999) / 1000;
+        }
+
+        // Opens voting in one constituency on its own deadline. Ballots for its
+        // candidates are refused once it is paused or over; places without a
+        // constituency election follow the national one.
+        public boolean startConstituencyElection(String place, int durationInSeconds) {
+            awaitLoaded();
+            return scheduler.start(place, durationInSeconds * 1000L);
+        }
+
+        public boolean endConstituencyElection(String place) {
+            awaitLoaded();
+            if (!scheduler.end(place))
+                return false;
+            fireConstituencyEnded(place);
+            return true;
+        }
+
+        // Pause, resume and extend for constituency elections, keyed by place.
+        public ElectionScheduler getScheduler() {
+            awaitLoaded();
+            return scheduler;
+        }
+
+        private void fireConstituencyEnded(String place) {
+            Constituencies.SeatResult seat = Constituencies.seat(candidateRegistry, place);
+            fire(ElectionEvent.Type.CONSTITUENCY_ENDED, null, seat.getWinner(), null);
+        }
+
+        // Validates and applies a whole upload under one ledger commit and
+        // returns a result per ballot, in order. A voter who already voted,
+        // or whose ballot appeared earlier in the same batch, is rejected.
+        // Ballots are matched to candidates by id. No per-ballot events are
+        // raised; the results feed picks up the new counts.
+        public VoteResult[] castVotes(List<Ballot> ballots) {
+            return castVotes(ballots, false);
+        }
+
+        // afterClose takes ballots cast at the polls and uploaded once they
+        // closed: they count if the candidate's election was ever started.
+        private VoteResult[] castVotes(List<Ballot> ballots, boolean afterClose) {
+            awaitLoaded();
+            int n = ballots.size();
+            VoteResult[] results = new VoteResult[n];
+            int[] indexes = new int[n];
+            Candidate[] chosen = new Candidate[n];
+            String[] voterIds = new String[n];
+            String[] candidateIds = new String[n];
+            long[] times = new long[n];
+            Set<Integer> marked = new HashSet<>();
+            long now = System.currentTimeMillis();
+            int accepted = 0;
+            for (int i = 0; i < n; i++) {
+                Ballot b = ballots.get(i);
+                int index = b.getVoterId() == null ? -1 : voterRegistry.indexOf(b.getVoterId());
+                Candidate c = b.getCandidateId() == null ? null : candidateRegistry.findById(b.getCandidateId());
+                if (index < 0) {
+                    results[i] = VoteResult.UNKNOWN_VOTER;
+                } else if (c == null) {
+                    results[i] = VoteResult.UNKNOWN_CANDIDATE;
+                } else if (afterClose ? neverOpened(c) : votingClosed(c)) {
+                    results[i] = VoteResult.VOTING_CLOSED;
+                } else if (!voterRegistry.markVoted(index)) {
+                    results[i] = marked.contains(index) ? VoteResult.DUPLICATE_IN_BATCH : VoteResult.ALREADY_VOTED;
+                } else {
+                    marked.add(index);
+                    results[i] = VoteResult.ACCEPTED;
+                    indexes[accepted] = index;
+                    chosen[accepted] = c;
+                    voterIds[accepted] = b.getVoterId();
+                    candidateIds[accepted] = c.getId();
+                    times[accepted] = b.getTimeMillis() > 0 ? b.getTimeMillis() : now;
+                    accepted++;
+                }
+            }
+            VOTES_REJECTED.add(n - accepted);
+            for (VoteResult r : results) {
+                if (r != VoteResult.ACCEPTED)
+                    Metrics.rejection(r).increment();
+            }
+            if (accepted == 0)
+                return results;
+            // Voters are held by their bits until the batch is on disk; counts move only after
+            if (ledger.appendAll(voterIds, candidateIds, times, accepted) < 0) {
+                for (int k = 0; k < accepted; k++) {
+                    voterRegistry.clearVoted(indexes[k]);
+                }
+                throw new UncheckedIOException(new IOException("Ballot batch could not be written to the vote ledger"));
+            }
+            for (int k = 0; k < accepted; k++) {
+                chosen[k].incrementVote();
+                roll.setVoted(indexes[k], true);
+            }
+            turnout.record(chosen, times, accepted);
+            ledger.compactIfNeeded();
+            writeBehind.markDirty(accepted);
+            VOTES_ACCEPTED.add(accepted);
+            return results;
+        }
+
+        // Reads "voterId,candidateId[,timeMillis]" lines (blank and # lines
+        // skipped) and applies them in batches of INGEST_BATCH, one ledger
+        // commit each. Every rejected ballot is written to rejects as
+        // "line,voterId,candidateId,reason". Returns the count per result.
+        public Map<VoteResult, Long> ingestBallotFile(Path file, Path rejects) throws IOException {
+            return ingestBallotFile(file, rejects, false);
+        }
+
+        // With afterClose the file is an upload from polls that have since
+        // closed; ballots are refused only if their election never started.
+        public Map<VoteResult, Long> ingestBallotFile(Path file, Path rejects, boolean afterClose)
+                throws IOException {
+            Map<VoteResult, Long> counts = new EnumMap<>(VoteResult.class);
+            List<Ballot> batch = new ArrayList<>(INGEST_BATCH);
+            List<Long> lines = new ArrayList<>(INGEST_BATCH);
+            try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+                 BufferedWriter out = Files.newBufferedWriter(rejects, StandardCharsets.UTF_8)) {
+                String line;
+                long lineNo = 0;
+                while ((line = in.readLine()) != null) {
+                    lineNo++;
+                    if (line.isEmpty() || line.startsWith("#"))
+                        continue;
+                    Ballot ballot = parseBallot(line);
+                    if (ballot == null) {
+                        counts.merge(VoteResult.MALFORMED, 1L, Long::sum);
+                        out.write(lineNo + "," + line + "," + VoteResult.MALFORMED + "\n");
+                        continue;
+                    }
+                    batch.add(ballot);
+                    lines.add(lineNo);
+                    if (batch.size() == INGEST_BATCH)
+                        applyBatch(batch, lines, counts, out, afterClose);
+                }
+                applyBatch(batch, lines, counts, out, afterClose);
+            }
+            return counts;
+        }
+
+        private void applyBatch(List<Ballot> batch, List<Long> lines, Map<VoteResult, Long> counts,
+                                BufferedWriter rejects, boolean afterClose) throws IOException {
+            VoteResult[] results = castVotes(batch, afterClose);
+            for (int i = 0; i < results.length; i++) {
+                counts.merge(results[i], 1L, Long::sum);
+                if (results[i] != VoteResult.ACCEPTED) {
+                    Ballot b = batch.get(i);
+                    rejects.write(lines.get(i) + "," + b.getVoterId() + "," + b.getCandidateId() + "," + results[i]
+                            + "\n");
+                }
+            }
+            batch.clear();
+            lines.clear();
+        }
+
+        private static Ballot parseBallot(String line) {
+            String[] parts = line.split(",", -1);
+            if (parts.length < 2 || parts.length > 3 || parts[0].isEmpty() || parts[1].isEmpty())
+                return null;
+            long time = 0;
+            if (parts.length == 3) {
+                try {
+                    time = Long.parseLong(parts[2].trim());
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+            return new Ballot(parts[0].trim(), parts[1].trim(), time);
+        }
+
+        // Flushes everything pending and waits for it; the ledger is already durable.
+        public void flush() {
+            awaitLoaded();
+            if (!writeBehind.flushNow())
+                throw new UncheckedIOException(new IOException("Election files could not be saved"));
+        }
+
+        // Saves anything pending and stops this Admin's background threads.
+        // Its shutdown hook and gauges go with it, so a process that creates
+        // several Admins keeps neither hooks nor gauges for closed ones.
+        @Override
+        public void close() {
+            try {
+                Runtime.getRuntime().removeShutdownHook(drainHook);
+            } catch (IllegalStateException e) {
+                // Already shutting down; the hook drains the writer itself
+            }
+            gauges.forEach(Metrics.global()::removeGauge);
+            if (snapshotter != null)
+                snapshotter.shutdownNow();
+            if (scheduler != null)
+                scheduler.close();
+            resultsFeed.close();
+            writeBehind.close();
+        }
+
+        // Ballots count only while an election is running for the
+        // candidate's place: its own constituency election if it has one,
+        // otherwise the national one. Pausing the national election closes
+        // every place.
+        private boolean votingClosed(Candidate c) {
+            ElectionScheduler.State national = scheduler.state(NATIONAL);
+            if (national == ElectionScheduler.State.PAUSED)
+                return true;
+            ElectionScheduler.State seat = scheduler.state(c.getPlace());
+            if (seat != null)
+                return seat != ElectionScheduler.State.RUNNING;
+            return national != ElectionScheduler.State.RUNNING;
+        }
+
+        // The election for the candidate's place, by the same rule as
+        // votingClosed, has never been started.
+        private boolean neverOpened(Candidate c) {
+            ElectionScheduler.State seat = scheduler.state(c.getPlace());
+            return seat == null && scheduler.state(NATIONAL) == null;
+        }
+
+        // Ends the election once, whether called by the scheduler or by the admin.
+        public boolean endElection() {
+            if (!electionRunning.compareAndSet(true, false))
+                return false;
+            scheduler.end(NATIONAL);
+            Candidate winner = candidateRegistry.leaderboard().leader();
+            writeBehind.requestFlush();
+            // Push the final counts now rather than on the next tick
+            resultsFeed.tick();
+            ResultsFeed.Subscription log = electionLog;
+            if (log != null)
+                log.close();
+            fire(ElectionEvent.Type.ELECTION_ENDED, null, winner, null);
+            return true;
+        }
+
+        public String getVoterList() {
+            VoterRegistry registry = voterRegistry;
+            StringBuilder sb = new StringBuilder();
+            if (registry == null)
+                return "";
+            for (int i = 0; i < registry.size(); i++) {
+                sb.append(registry.nameAt(i)).append(" (ID: ").append(registry.idAt(i)).append(")\n");
+            }
+            return sb.toString();
+        }
+
+        // A search over the registered voters that is read a page at a time,
+        // so even a very large roll is never turned into one list or string.
+        // prefix matches the start of a name or id, ignoring case; null or
+        // empty matches everyone.
+        public VoterQuery queryVoters(String prefix, VoterFilter filter) {
+            VoterRegistry registry = voterRegistry;
+            if (registry == null)
+                return VoterQuery.EMPTY;
+            long t0 = System.nanoTime();
+            VoterQuery query = registry.query(prefix, filter);
+            QUERY_VOTERS.record(System.nanoTime() - t0);
+            return query;
+        }
+
+        // One page of a fresh query; callers paging through many rows should keep the VoterQuery instead.
+        public List<Voter> getVoters(String prefix, VoterFilter filter, int offset, int limit) {
+            return queryVoters(prefix, filter).page(offset, limit);
+        }
+
+        public String getVoteCount() {
+            StringBuilder sb = new StringBuilder();
+            for (Candidate c : candidates) {
+                sb.append(c.getName()).append(" : ").append(c.getVotes()).append(" votes\n");
+            }
+            return sb.toString();
+        }
+
+        // The rendered candidate text for the voter screens. It is rebuilt
+        // only after a candidate is added or a manifesto is edited, so every
+        // session in between shares the same strings.
+        public CandidateViews getCandidateViews() {
+            long version = candidateRegistry.version();
+            CandidateViews v = views;
+            if (v == null || v.getVersion() != version) {
+                // Rendered after reading the version, so a concurrent change only costs one extra rebuild
+                v = new CandidateViews(version, candidates);
+                views = v;
+            }
+            return v;
+        }
+
+        public String getCandidateList() {
+            return getCandidateViews().getList();
+        }
+
+        // Returns candidate summary using a pipe delimiter.
+        public String[] getCandidateSummary() {
+            return getCandidateViews().getSummary().toArray(new String[0]);
+        }
+
+        public String getCandidateManifestos() {
+            return getCandidateViews().getManifestos();
+        }
+
+        public String getCandidateDetails() {
+            return getCandidateViews().getDetails();
+        }
+
+        // Safe to call from many polling-station threads at once.
+        public VoteResult castVote(Voter voter, String candidateName) {
+            return castVote(voter == null ? null : voter.getId(), voter, candidateName);
+        }
+
+        // Casts by voter id alone; no Voter is materialized unless a listener needs one.
+        public VoteResult castVote(String voterId, String candidateName) {
+            return castVote(voterId, null, candidateName);
+        }
+
+        private VoteResult castVote(String voterId, Voter voter, String candidateName) {
+            awaitLoaded();
+            long start = System.nanoTime();
+            int index = voterId == null ? -1 : voterRegistry.indexOf(voterId);
+            Candidate c = candidateRegistry.findFirstByName(candidateName);
+            VoteResult result = c != null && index >= 0 && votingClosed(c) ? VoteResult.VOTING_CLOSED
+                    : TallyEngine.tally(voterRegistry, index, c);
+            // Only the ballot is appended; the full files are rewritten by
+            // compaction. A ballot the ledger did not take would not survive a
+            // restart, so its tally and voted bit are taken back.
+            if (result == VoteResult.ACCEPTED && ledger.append(voterId, c.getId()) < 0) {
+                c.decrementVote();
+                voterRegistry.clearVoted(index);
+                result = VoteResult.NOT_RECORDED;
+            }
+            if (voter == null && index >= 0 && !listeners.isEmpty())
+                voter = voterRegistry.voterAt(index);
+            if (result == VoteResult.ACCEPTED) {
+                ledger.compactIfNeeded();
+                roll.setVoted(index, true);
+                turnout.record(c, System.currentTimeMillis());
+                writeBehind.markDirty(1);
+                VOTES_ACCEPTED.increment();
+                fire(ElectionEvent.Type.VOTE_ACCEPTED, voter, c, result);
+            } else {
+                VOTES_REJECTED.increment();
+                Metrics.rejection(result).increment();
+                fire(ElectionEvent.Type.VOTE_REJECTED, voter, c, result);
+            }
+            CAST_VOTE.record(System.nanoTime() - start);
+            return result;
+        }
+
+        // A ranked ballot for the instant-runoff and STV counts, as candidate
+        // names in order of preference. The first preference is cast like any
+        // other vote, so the live tallies, ledger and turnout include it; the
+        // whole ranking is kept for countRanked. The ranking is written to
+        // RANKED_FILE first and taken out again if the vote is refused, so
+        // the plurality tally never counts a ballot the ranked counts miss.
+        public VoteResult castRankedVote(String voterId, List<String> candidateNames) {
+            awaitLoaded();
+            List<Candidate> ranking = new ArrayList<>(candidateNames.size());
+            VoteResult invalid = candidateNames.isEmpty() ? VoteResult.MALFORMED : null;
+            for (String name : candidateNames) {
+                Candidate c = candidateRegistry.findFirstByName(name);
+                if (c == null) {
+                    invalid = VoteResult.UNKNOWN_CANDIDATE;
+                    break;
+                }
+                if (ranking.contains(c)) {
+                    invalid = VoteResult.MALFORMED;
+                    break;
+                }
+                ranking.add(c);
+            }
+            if (invalid != null) {
+                VOTES_REJECTED.increment();
+                Metrics.rejection(invalid).increment();
+                return invalid;
+            }
+            ByteBuffer buf = ByteBuffer.wrap(RankedBallots.line(voterId, ranking).getBytes(StandardCharsets.UTF_8));
+            synchronized (rankedBallots) {
+                long mark = -1;
+                try {
+                    mark = rankedLog.size();
+                    while (buf.hasRemaining()) {
+                        rankedLog.write(buf);
+                    }
+                } catch (IOException e) {
+                    System.err.println("Error appending ranked ballot: " + e.getMessage());
+                    if (mark >= 0)
+                        truncateRankedLog(mark);
+                    VOTES_REJECTED.increment();
+                    Metrics.rejection(VoteResult.NOT_RECORDED).increment();
+                    return VoteResult.NOT_RECORDED;
+                }
+                VoteResult result = castVote(voterId, null, candidateNames.get(0));
+                if (result == VoteResult.ACCEPTED)
+                    rankedBallots.add(ranking);
+                else
+                    truncateRankedLog(mark);
+                return result;
+            }
+        }
+
+        // Drops a ranked ballot appended past mark; called with rankedBallots held.
+        private void truncateRankedLog(long mark) {
+            try {
+                rankedLog.truncate(mark);
+            } catch (IOException e) {
+                System.err.println("Error removing refused ranked ballot: " + e.getMessage());
+            }
+        }
+
+        // Counts the ranked ballots cast so far, e.g. with Counting.INSTANT_RUNOFF or Counting.STV.
+        public Counting.Result countRanked(CountingEngine engine, int seats) {
+            awaitLoaded();
+            return engine.count(rankedBallots, seats);
+        }
+
+        // Recounts every ballot record on the fork-join pool and compares the
+        // result with the live tallies. Best run with voting paused; votes
+        // cast meanwhile are flagged in the report rather than counted exactly.
+        public Recount.Report recount() throws IOException {
+            awaitLoaded();
+            return Recount.run(candidates, voterRegistry);
+        }
+
+        // Re-hashes the ballot chain and checks every block against its
+        // checkpoint. An incremental run skips blocks that verified earlier
+        // in this session; records after the last checkpoint are always checked.
+        public BallotChain.Report verifyBallotChain(boolean incremental) throws IOException {
+            awaitLoaded();
+            BallotChain.Report report = BallotChain.verify(incremental ? chainVerifiedThrough + 1 : 1, Long.MAX_VALUE,
+                    ForkJoinPool.commonPool());
+            if (report.isValid())
+                chainVerifiedThrough = Math.max(chainVerifiedThrough, report.getCheckpointedSeq());
+            return report;
+        }
+
+        // Verifies only the blocks holding ballots fromSeq..toSeq.
+        public BallotChain.Report verifyBallotChain(long fromSeq, long toSeq) throws IOException {
+            awaitLoaded();
+            return BallotChain.verify(fromSeq, toSeq, ForkJoinPool.commonPool());
+        }
+
+        // Compacts the ledger and stores a snapshot of candidates, voters and
+        // tallies as of its last ballot; only chunks that changed since the
+        // previous snapshot are written.
+        public Snapshots.Snapshot snapshot() throws IOException {
+            awaitLoaded();
+            ledger.compactNow();
+            return Snapshots.take(candidates);
+        }
+
+        // The candidates with their tallies as of ledger seq, for example
+        // Snapshots.seqAt(time) to see the standings at a time of day.
+        public List<Candidate> getCandidatesAt(long seq) throws IOException {
+            awaitLoaded();
+            return Snapshots.candidatesAt(seq, candidates);
+        }
+
+        // Constant-time turnout by minute or hour, constituency, candidate and party.
+        public TurnoutAnalytics getTurnoutAnalytics() {
+            awaitLoaded();
+            return turnout;
+        }
+
+        // The Results tab's turnout summary over the last 12 hours.
+        public String getTurnoutReport() {
+            return getTurnoutAnalytics().report(System.currentTimeMillis(), 12);
+        }
+
+        // Chain hash of the latest ballot; publishing it commits to every ballot before it.
+        public String getBallotChainHead() {
+            awaitLoaded();
+            return ledger.headHash();
+        }
+
+        // Shares seats between parties in proportion to the live vote totals.
+        public Counting.Result allocateSeats(Counting.HighestAverages method, int seats) {
+            return method.count(candidates, seats);
+        }
+
+        public Voter findVoter(String name, String id) {
+            VoterRegistry registry = voterRegistry;
+            if (registry == null)
+                return null;
+            long start = System.nanoTime();
+            Voter voter = registry.find(name, id);
+            FIND_VOTER.record(System.nanoTime() - start);
+            return voter;
+        }
+
+        public Candidate findCandidate(String name, String id) {
+            return candidateRegistry.find(name, id);
+        }
+
+        public List<Candidate> getCandidatesByParty(String party) {
+            return candidateRegistry.findByParty(party);
+        }
+
+        // Winner and margin for every constituency plus seats won per party.
+        public Constituencies.Results getConstituencyResults() {
+            return Constituencies.tally(candidateRegistry);
+        }
+
+        public String getConstituencyResultsText() {
+            Constituencies.Results results = getConstituencyResults();
+            if (results.getSeats().isEmpty())
+                return "No candidates available.";
+            StringBuilder sb = new StringBuilder();
+            for (Constituencies.SeatResult seat : results.getSeats()) {
+                sb.append(seat.getPlace()).append(": ");
+                if (seat.getWinner() == null) {
+                    sb.append("no votes yet\n");
+                } else {
+                    sb.append(seat.getWinner().getName()).append(" (").append(seat.getWinner().getParty())
+                            .append(") by ").append(seat.getMargin()).append(" votes\n");
+                }
+            }
+            sb.append("\nSeats by party:\n");
+            for (Map.Entry<String, Integer> e : results.getSeatsByParty().entrySet()) {
+                sb.append(e.getKey()).append(" : ").append(e.getValue()).append("\n");
+            }
+            return sb.toString();
+        }
+
+        public String getElectionWinner() {
+            if (candidates.isEmpty())
+                return "No candidates available.";
+
+            // The leader has no votes only if nobody has
+            List<Leaderboard.Standing> top = candidateRegistry.leaderboard().top(2);
+            if (top.get(0).getVotes() == 0) {
+                return "Voting has not yet started.";
+            }
+
+            String winnerName = top.get(0).getCandidate().getName();
+            int winnerVotes = top.get(0).getVotes();
+            int runnerUpVotes = (top.size() > 1) ? top.get(1).getVotes() : 0;
+            int voteDifference = winnerVotes - runnerUpVotes;
+            return "Winner: " + winnerName + "\nVotes: " + winnerVotes + "\nVote Difference: " + voteDifference;
+        }
+    }
+
+    // Immutable text renderings of the candidate list at one registry version.
+    static class CandidateViews {
+        private final long version;
+        private final List<String> summary;
+        private final String list;
+        private final String manifestos;
+        private final String details;
+
+        CandidateViews(long version, List<Candidate> candidates) {
+            this.version = version;
+            String[] lines = new String[candidates.size()];
+            StringBuilder names = new StringBuilder();
+            StringBuilder manifestoText = new StringBuilder();
+            StringBuilder detailText = new StringBuilder();
+            int i = 0;
+            for (Candidate c : candidates) {
+                if (i == lines.length)
+                    lines = Arrays.copyOf(lines, i + 1);
+                lines[i++] = c.getName() + " | " + c.getParty() + " | " + c.getSymbol();
+                names.append(c.getName()).append("\n");
+                manifestoText.append(c.getName()).append(":\n").append(c.getManifesto()).append("\n\n");
+                detailText.append("Name: ").append(c.getName())
+                        .append(", Place: ").append(c.getPlace())
+                        .append(", Party: ").append(c.getParty())
+                        .append(", Assets: ").append(c.getAssets())
+                        .append(", Criminal Cases: ").append(c.getCriminalCases())
+                        .append("\n");
+            }
+            this.summary = List.of(Arrays.copyOf(lines, i));
+            this.list = names.toString();
+            this.manifestos = manifestoText.toString();
+            this.details = detailText.toString();
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        // One "name | party | symbol" line per candidate, in registration order.
+        public List<String> getSummary() {
+            return summary;
+        }
+
+        public String getList() {
+            return list;
+        }
+
+        public String getManifestos() {
+            return manifestos;
+        }
+
+        public String getDetails() {
+            return details;
+        }
+    }
+
+    static class Candidate {
+        private String name;
+        private String place;
+        private String id;
+        private String party;
+        private String symbol;
+        private String assets;
+        private String criminalCases;
+        private String manifesto;
+        // Striped counter so concurrent polling stations don't contend on one field
+        private final LongAdder votes = new LongAdder();
+        // Set while registered; rank is guarded by the leaderboard's lock
+        private Leaderboard board;
+        private int rank = -1;
+        // Set while the candidate waits in its board's queue of changed counts
+        final AtomicBoolean queued = new AtomicBoolean();
+        private volatile CandidateRegistry registry;
+
+        public Candidate(String name, String place, String id, String party, String symbol, String assets,
+                         String criminalCases) {
+            this.name = name;
+            this.place = place;
+            this.id = id;
+            this.party = party;
+            this.symbol = symbol;
+            this.assets = assets;
+            this.criminalCases = criminalCases;
+            this.manifesto = "No manifesto provided.";
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getPlace() {
+            return place;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getParty() {
+            return party;
+        }
+
+        public String getSymbol() {
+            return symbol;
+        }
+
+        public String getAssets() {
+            return assets;
+        }
+
+        public String getCriminalCases() {
+            return criminalCases;
+        }
+
+        public String getManifesto() {
+            return manifesto;
+        }
+
+        public int getVotes() {
+            return votes.intValue();
+        }
+
+        public void setManifesto(String manifesto) {
+            this.manifesto = manifesto;
+            CandidateRegistry r = registry;
+            if (r != null)
+                r.changed();
+        }
+
+        public void incrementVote() {
+            votes.increment();
+            Leaderboard b = board;
+            if (b != null)
+                b.voted(this, 1);
+        }
+
+        // Takes back a vote whose ballot could not be recorded.
+        public void decrementVote() {
+            votes.decrement();
+            Leaderboard b = board;
+            if (b != null)
+                b.voted(this, -1);
+        }
+
+        // Only for loading; not atomic with respect to concurrent increments.
+        public void setVotes(int votes) {
+            int before = getVotes();
+            this.votes.reset();
+            this.votes.add(votes);
+            Leaderboard b = board;
+            if (b != null)
+                b.reload(this, votes - before);
+        }
+
+        void join(Leaderboard board, int rank) {
+            this.board = board;
+            this.rank = rank;
+        }
+
+        void register(CandidateRegistry registry) {
+            this.registry = registry;
+        }
+
+        int getRank() {
+            return rank;
+        }
+
+        @Override
+        public String toString() {
+            return name + "," + place + "," + id + "," + party + "," + symbol + "," + assets + "," + criminalCases + ","
+                    + manifesto + "," + getVotes();
+        }
+    }
+
+    static class Voter {
+        private static final VarHandle HAS_VOTED;
+
+        static {
+            try {
+                HAS_VOTED = MethodHandles.lookup().findVarHandle(Voter.class, "hasVoted", boolean.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private String name;
+        private String id;
+        private volatile boolean hasVoted;
+        // Record index in the voter roll, or -1 if not stored there
+        private int rollIndex = -1;
+        // Set when this Voter is a view over a registry slot; the voted flag
+        // then lives in the registry's bitmap instead of hasVoted
+        private VoterRegistry registry;
+
+        public Voter(String name, String id) {
+            this.name = name;
+            this.id = id;
+            this.hasVoted = false;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public boolean hasVoted() {
+            return registry != null ? registry.isVoted(rollIndex) : hasVoted;
+        }
+
+        public int getRollIndex() {
+            return rollIndex;
+        }
+
+        void setRollIndex(int rollIndex) {
+            this.rollIndex = rollIndex;
+        }
+
+        void bind(VoterRegistry registry, int rollIndex) {
+            this.registry = registry;
+            this.rollIndex = rollIndex;
+        }
+
+        public void setVoted() {
+            if (registry != null)
+                registry.markVoted(rollIndex);
+            else
+                this.hasVoted = true;
+        }
+
+        // Atomically flips hasVoted; returns false if the voter had already voted.
+        public boolean markVoted() {
+            return registry != null ? registry.markVoted(rollIndex) : HAS_VOTED.compareAndSet(this, false, true);
+        }
+
+        public void clearVoted() {
+            if (registry != null)
+                registry.clearVoted(rollIndex);
+            else
+                this.hasVoted = false;
+        }
+
+        @Override
+        public String toString() {
+            return name + "," + id + "," + hasVoted();
+        }
+    }
+
+    enum VoteResult {
+        ACCEPTED, ALREADY_VOTED, UNKNOWN_VOTER, UNKNOWN_CANDIDATE, VOTING_CLOSED,
+        // The ballot could not be written to the vote ledger and was not counted
+        NOT_RECORDED,
+        // Batch ingestion only
+        DUPLICATE_IN_BATCH, MALFORMED
+    }
+
+    // One ballot from a polling-station upload; timeMillis 0 means "now".
+    public static class Ballot {
+        private final String voterId;
+        private final String candidateId;
+        private final long timeMillis;
+
+        public Ballot(String voterId, String candidateId, long timeMillis) {
+            this.voterId = voterId;
+            this.candidateId = candidateId;
+            this.timeMillis = timeMillis;
+        }
+
+        public String getVoterId() {
+            return voterId;
+        }
+
+        public String getCandidateId() {
+            return candidateId;
+        }
+
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+    }
+
+    // Lock-free tallying shared by every polling station. The voter's
+    // compare-and-set is the single point that decides whether a ballot
+    // counts, so a voter racing themselves on two stations votes once.
+    static class TallyEngine {
+        public static VoteResult tally(Voter voter, Candidate candidate) {
+            if (voter == null)
+                return VoteResult.UNKNOWN_VOTER;
+            if (candidate == null)
+                return VoteResult.UNKNOWN_CANDIDATE;
+            if (!voter.markVoted())
+                return VoteResult.ALREADY_VOTED;
+            candidate.incrementVote();
+            return VoteResult.ACCEPTED;
+        }
+
+        // Same decision made on the registry's voted bitmap; index is -1 for an unknown voter.
+        public static VoteResult tally(VoterRegistry registry, int index, Candidate candidate) {
+            if (index < 0)
+                return VoteResult.UNKNOWN_VOTER;
+            if (candidate == null)
+                return VoteResult.UNKNOWN_CANDIDATE;
+            if (!registry.markVoted(index))
+                return VoteResult.ALREADY_VOTED;
+            candidate.incrementVote();
+            return VoteResult.ACCEPTED;
+        }
+    }
+
+    // Voter index over the memory-mapped VoterRoll. Names and ids stay in the
+    // mapping; the heap holds only an open-addressing id -> roll index table
+    // and a voted bitmap, a few bytes per voter. Voter objects are created on
+    // demand as views over one index and read their flag from the bitmap.
+    static class VoterRegistry {
+        private static final int PROGRESS_EVERY = 1 << 16;
+
+        private final VoterRoll roll;
+        private final VotedBitmap voted = new VotedBitmap();
+        // Each slot holds a roll index + 1; 0 marks an empty slot
+        private volatile AtomicIntegerArray table;
+        private volatile int size;
+        private int indexed;
+
+        public VoterRegistry(VoterRoll roll, LoadListener progress) {
+            this.roll = roll;
+            int n = roll.size();
+            this.table = new AtomicIntegerArray(capacityFor(n));
+            voted.ensureCapacity(n);
+            for (int i = 0; i < n; i++) {
+                if (!insert(i))
+                    System.err.println("Skipping duplicate voter ID: " + roll.id(i));
+                else if (roll.isVoted(i))
+                    voted.set(i);
+                if (progress != null && (i + 1) % PROGRESS_EVERY == 0)
+                    progress.onProgress(i + 1, n);
+            }
+            this.size = n;
+            if (progress != null)
+                progress.onProgress(n, n);
+        }
+
+        // Heap held for the roll: the id table plus the voted bitmap.
+        public long heapBytes() {
+            return table.length() * 4L + voted.heapBytes();
+        }
+
+        // Appends to the roll and returns the new index, or -1 if the id is
+        // already registered or the name or id does not fit the roll.
+        public synchronized int add(String name, String id) {
+            if (indexOf(id) >= 0)
+                return -1;
+            int index = roll.append(new Voter(name, id));
+            if (index < 0)
+                return -1;
+            voted.ensureCapacity(index + 1);
+            if ((indexed + 1) * 4L > table.length() * 3L)
+                rehash(table.length() * 2);
+            insert(index);
+            size = index + 1;
+            return index;
+        }
+
+        // Returns the roll index of id, or -1 if it is not registered.
+        public int indexOf(String id) {
+            byte[] key = id.getBytes(StandardCharsets.UTF_8);
+            return indexOf(key, 0, key.length);
+        }
+
+        // Same lookup for a UTF-8 id held in buf[off, off + len).
+        public int indexOf(byte[] buf, int off, int len) {
+            AtomicIntegerArray t = table;
+            int mask = t.length() - 1;
+            for (int slot = VoterRoll.hashId(buf, off, len) & mask; ; slot = (slot + 1) & mask) {
+                int entry = t.get(slot);
+                if (entry == 0)
+                    return -1;
+                if (roll.idEquals(entry - 1, buf, off, len))
+                    return entry - 1;
+            }
+        }
+
+        public Voter findById(String id) {
+            int index = indexOf(id);
+            return index < 0 ? null : voterAt(index);
+        }
+
+        // Ids are unique, so the id index doubles as the name+id index.
+        public Voter find(String name, String id) {
+            int index = indexOf(id);
+            if (index < 0)
+                return null;
+            String stored = roll.name(index);
+            if (!stored.equals(name))
+                return null;
+            Voter v = new Voter(stored, id);
+            v.bind(this, index);
+            return v;
+        }
+
+        public Voter voterAt(int index) {
+            Voter v = new Voter(roll.name(index), roll.id(index));
+            v.bind(this, index);
+            return v;
+        }
+
+        public String nameAt(int index) {
+            return roll.name(index);
+        }
+
+        public String idAt(int index) {
+            return roll.id(index);
+        }
+
+        public boolean isVoted(int index) {
+            return voted.get(index);
+        }
+
+        // Returns false if the voter had already voted.
+        public boolean markVoted(int index) {
+            return voted.set(index);
+        }
+
+        public void clearVoted(int index) {
+            voted.clear(index);
+        }
+
+        // Only for loading, before voting opens.
+        public void clearAllVoted() {
+            voted.clearAll();
+        }
+
+        public int votedCount() {
+            return voted.count();
+        }
+
+        public int size() {
+            return size;
+        }
+
+        // Collects the roll indexes that match, in roll order. With no prefix
+        // and no status filter nothing is collected: row i is roll index i.
+        public VoterQuery query(String prefix, VoterFilter filter) {
+            int n = size;
+            byte[] key = prefix == null || prefix.isEmpty() ? null : lowerAscii(prefix.getBytes(StandardCharsets.UTF_8));
+            if (key == null && filter == VoterFilter.ALL)
+                return new VoterQuery(this, null, n);
+            int[] matches = new int[Math.min(n, 1024)];
+            int found = 0;
+            for (int i = 0; i < n; i++) {
+                if (filter != VoterFilter.ALL && voted.get(i) != (filter == VoterFilter.VOTED))
+                    continue;
+                if (key != null && !roll.startsWith(i, key))
+                    continue;
+                if (found == matches.length)
+                    matches = Arrays.copyOf(matches, Math.min(n, found * 2));
+                matches[found++] = i;
+            }
+            return new VoterQuery(this, matches, found);
+        }
+
+        private static byte[] lowerAscii(byte[] bytes) {
+            for (int k = 0; k < bytes.length; k++) {
+                if (bytes[k] >= 'A' && bytes[k] <= 'Z')
+                    bytes[k] += 'a' - 'A';
+            }
+            return bytes;
+        }
+
+        // Returns false if the slot's id is already indexed.
+        private boolean insert(int index) {
+            AtomicIntegerArray t = table;
+            int mask = t.length() - 1;
+            for (int slot = roll.idHash(index) & mask; ; slot = (slot + 1) & mask) {
+                int entry = t.get(slot);
+                if (entry == 0) {
+                    t.set(slot, index + 1);
+                    indexed++;
+                    return true;
+                }
+                if (roll.sameId(entry - 1, index))
+                    return false;
+            }
+        }
+
+        // Builds the larger table off to the side; readers keep using the old one until it is published.
+        private void rehash(int capacity) {
+            AtomicIntegerArray old = table;
+            AtomicIntegerArray grown = new AtomicIntegerArray(capacity);
+            int mask = capacity - 1;
+            for (int s = 0; s < old.length(); s++) {
+                int entry = old.get(s);
+                if (entry == 0)
+                    continue;
+                int slot = roll.idHash(entry - 1) & mask;
+                while (grown.get(slot) != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                grown.set(slot, entry);
+            }
+            table = grown;
+        }
+
+        // Power of two that keeps the load factor at or under 0.75.
+        private static int capacityFor(int n) {
+            int capacity = 16;
+            while (capacity * 3L < n * 4L + 4) {
+                capacity <<= 1;
+            }
+            return capacity;
+        }
+    }
+
+    enum VoterFilter {
+        ALL, VOTED, NOT_VOTED
+    }
+
+    // The result of one voter search, fixed when it was made: later
+    // registrations are not added, though each Voter still reads its voted
+    // flag live. Only the rows asked for are read from the roll.
+    static class VoterQuery {
+        static final VoterQuery EMPTY = new VoterQuery(null, null, 0);
+
+        private final VoterRegistry registry;
+        // Null when every roll index up to size matches
+        private final int[] matches;
+        private final int size;
+
+        VoterQuery(VoterRegistry registry, int[] matches, int size) {
+            this.registry = registry;
+            this.matches = matches;
+            this.size = size;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int rollIndex(int row) {
+            return matches == null ? row : matches[row];
+        }
+
+        public Voter voterAt(int row) {
+            return registry.voterAt(rollIndex(row));
+        }
+
+        // Up to limit voters starting at row offset; fewer at the end.
+        public List<Voter> page(int offset, int limit) {
+            if (offset < 0 || limit < 0)
+                throw new IllegalArgumentException("offset and limit must not be negative");
+            int end = (int) Math.min(size, (long) offset + limit);
+            List<Voter> page = new ArrayList<>(Math.max(0, end - offset));
+            for (int row = offset; row < end; row++) {
+                page.add(voterAt(row));
+            }
+            return page;
+        }
+    }
+
+    // One voted bit per voter index, in pages of long words so the roll can
+    // grow without copying existing bits. Bits flip by compare-and-set, so
+    // concurrent ballots for the same voter still count once.
+    static class VotedBitmap {
+        private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+        // 4M voters (512KB) per page
+        private static final int PAGE_SHIFT = 22;
+        private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+
+        private volatile long[][] pages = new long[0][];
+        private final LongAdder count = new LongAdder();
+
+        public long heapBytes() {
+            return (long) pages.length << (PAGE_SHIFT - 3);
+        }
+
+        // Indexes below this can be read and set without growing the bitmap.
+        public long capacity() {
+            return (long) pages.length << PAGE_SHIFT;
+        }
+
+        // Callers grow the bitmap before publishing an index that uses it.
+        public synchronized void ensureCapacity(int size) {
+            int needed = (int) (((long) size + PAGE_MASK) >>> PAGE_SHIFT);
+            if (needed <= pages.length)
+                return;
+            long[][] grown = Arrays.copyOf(pages, needed);
+            for (int p = pages.length; p < needed; p++) {
+                grown[p] = new long[1 << (PAGE_SHIFT - 6)];
+            }
+            pages = grown;
+        }
+
+        public boolean get(int index) {
+            long word = (long) WORDS.getVolatile(pages[index >>> PAGE_SHIFT], (index & PAGE_MASK) >>> 6);
+            return (word & (1L << index)) != 0;
+        }
+
+        // Returns false if the bit was already set.
+        public boolean set(int index) {
+            long[] page = pages[index >>> PAGE_SHIFT];
+            int w = (index & PAGE_MASK) >>> 6;
+            long bit = 1L << index;
+            while (true) {
+                long word = (long) WORDS.getVolatile(page, w);
+                if ((word & bit) != 0)
+                    return false;
+                if (WORDS.compareAndSet(page, w, word, word | bit)) {
+                    count.increment();
+                    return true;
+                }
+            }
+        }
+
+        public void clear(int index) {
+            long[] page = pages[index >>> PAGE_SHIFT];
+            int w = (index & PAGE_MASK) >>> 6;
+            long bit = 1L << index;
+            while (true) {
+                long word = (long) WORDS.getVolatile(page, w);
+                if ((word & bit) == 0)
+                    return;
+                if (WORDS.compareAndSet(page, w, word, word & ~bit)) {
+                    count.decrement();
+                    return;
+                }
+            }
+        }
+
+        public void clearAll() {
+            for (long[] page : pages) {
+                Arrays.fill(page, 0L);
+            }
+            count.reset();
+        }
+
+        public int count() {
+            return count.intValue();
+        }
+    }
+
+    // Hash-indexed candidate list with secondary name and party indexes.
+    // Adding a candidate with an existing id replaces it in place.
+    static class CandidateRegistry {
+        // Copy-on-write: candidates change rarely and are iterated from several threads
+        private final List<Candidate> candidates = new CopyOnWriteArrayList<>();
+        private final List<Candidate> view = Collections.unmodifiableList(candidates);
+        private final Map<String, Integer> positionById = new ConcurrentHashMap<>();
+        private final Map<String, List<Candidate>> byName = new ConcurrentHashMap<>();
+        private final Map<String, List<Candidate>> byParty = new ConcurrentHashMap<>();
+        private final Map<String, List<Candidate>> byPlace = new ConcurrentHashMap<>();
+        private final Leaderboard leaderboard = new Leaderboard();
+        // Bumped whenever a candidate is added or replaced or a manifesto changes
+        private final AtomicLong version = new AtomicLong();
+
+        public CandidateRegistry(List<Candidate> loaded) {
+            for (Candidate c : loaded) {
+                addOrReplace(c);
+            }
+        }
+
+        public synchronized void addOrReplace(Candidate candidate) {
+            Integer pos = positionById.get(candidate.getId());
+            if (pos != null) {
+                Candidate old = candidates.set(pos, candidate);
+                byName.get(old.getName()).remove(old);
+                byParty.get(old.getParty()).remove(old);
+                byPlace.get(old.getPlace()).remove(old);
+                if (byPlace.get(old.getPlace()).isEmpty())
+                    byPlace.remove(old.getPlace());
+                leaderboard.replace(old, candidate);
+                old.register(null);
+            } else {
+                positionById.put(candidate.getId(), candidates.size());
+                leaderboard.add(candidate, candidates.size());
+                candidates.add(candidate);
+            }
+            byName.computeIfAbsent(candidate.getName(), k -> new CopyOnWriteArrayList<>()).add(candidate);
+            byParty.computeIfAbsent(candidate.getParty(), k -> new CopyOnWriteArrayList<>()).add(candidate);
+            byPlace.computeIfAbsent(candidate.getPlace(), k -> new CopyOnWriteArrayList<>()).add(candidate);
+            candidate.register(this);
+            changed();
+        }
+
+        public long version() {
+            return version.get();
+        }
+
+        void changed() {
+            version.incrementAndGet();
+        }
+
+        public Candidate findById(String id) {
+            Integer pos = positionById.get(id);
+            return pos != null ? candidates.get(pos) : null;
+        }
+
+        public Candidate find(String name, String id) {
+            Candidate c = findById(id);
+            return (c != null && c.getName().equals(name)) ? c : null;
+        }
+
+        // Earliest-registered candidate with this name, matching the old list scan.
+        public Candidate findFirstByName(String name) {
+            List<Candidate> matches = byName.get(name);
+            if (matches == null || matches.isEmpty())
+                return null;
+            Candidate first = matches.get(0);
+            for (Candidate c : matches) {
+                if (positionById.get(c.getId()) < positionById.get(first.getId()))
+                    first = c;
+            }
+            return first;
+        }
+
+        public List<Candidate> findByName(String name) {
+            return byName.getOrDefault(name, Collections.emptyList());
+        }
+
+        public List<Candidate> findByParty(String party) {
+            return byParty.getOrDefault(party, Collections.emptyList());
+        }
+
+        // Candidates standing in one constituency.
+        public List<Candidate> findByPlace(String place) {
+            return byPlace.getOrDefault(place, Collections.emptyList());
+        }
+
+        public Set<String> places() {
+            return Collections.unmodifiableSet(byPlace.keySet());
+        }
+
+        // Registration position, or -1 if the candidate is not registered.
+        public int position(Candidate candidate) {
+            Integer pos = positionById.get(candidate.getId());
+            return pos != null && candidates.get(pos) == candidate ? pos : -1;
+        }
+
+        public List<Candidate> asList() {
+            return view;
+        }
+
+        public Leaderboard leaderboard() {
+            return leaderboard;
+        }
+    }
+
+    // Candidates ranked by votes. A ballot bumps its candidate's counter and
+    // the running total, and queues the candidate unless it is queued
+    // already, so voting threads never wait on the board's lock. A read
+    // takes only the queued candidates' new counts and moves each along the
+    // ranks to its place, which is a step or two for a handful of votes.
+    // The total is O(1) at any time; the leader and margin are O(1) and the
+    // top K is O(K) plus the tied block at the cut, once the queue is
+    // drained. Within a block of equal votes, reads order candidates by
+    // registration, as the old stable sort did.
+    static class Leaderboard {
+        // Parallel arrays indexed by rank; Candidate.rank points back in
+        private Candidate[] ranked = new Candidate[0];
+        private int[] counts = new int[0];
+        private int[] positions = new int[0];
+        private int size;
+        private final LongAdder total = new LongAdder();
+        // Candidates whose counters moved since the last read
+        private final Queue<Candidate> changed = new ConcurrentLinkedQueue<>();
+
+        // One candidate's votes at the moment the standing was taken.
+        public static class Standing {
+            private final Candidate candidate;
+            private final int votes;
+
+            Standing(Candidate candidate, int votes) {
+                this.candidate = candidate;
+                this.votes = votes;
+            }
+
+            public Candidate getCandidate() {
+                return candidate;
+            }
+
+            public int getVotes() {
+                return votes;
+            }
+        }
+
+        synchronized void add(Candidate candidate, int position) {
+            if (size == ranked.length) {
+                int capacity = Math.max(8, size * 2);
+                ranked = Arrays.copyOf(ranked, capacity);
+                counts = Arrays.copyOf(counts, capacity);
+                positions = Arrays.copyOf(positions, capacity);
+            }
+            ranked[size] = candidate;
+            counts[size] = candidate.getVotes();
+            positions[size] = position;
+            candidate.join(this, size);
+            total.add(counts[size]);
+            moveUp(size++);
+        }
+
+        synchronized void replace(Candidate old, Candidate candidate) {
+            int r = old.getRank();
+            old.join(null, -1);
+            ranked[r] = candidate;
+            total.add(candidate.getVotes() - old.getVotes());
+            counts[r] = candidate.getVotes();
+            candidate.join(this, r);
+            reposition(r);
+        }
+
+        // Called by Candidate.incrementVote and decrementVote after its own
+        // counter moved; no lock, and a candidate already queued is not
+        // queued again.
+        void voted(Candidate candidate, int delta) {
+            total.add(delta);
+            if (!candidate.queued.get() && candidate.queued.compareAndSet(false, true))
+                changed.add(candidate);
+        }
+
+        // Called by Candidate.setVotes while loading.
+        synchronized void reload(Candidate candidate, int delta) {
+            total.add(delta);
+            int r = candidate.getRank();
+            counts[r] = candidate.getVotes();
+            reposition(r);
+        }
+
+        // Brings the queued candidates' counts up to date. Each is unqueued
+        // before its counter is read, so a vote that lands during the read
+        // queues it again.
+        private void refresh() {
+            Candidate c;
+            while ((c = changed.poll()) != null) {
+                c.queued.set(false);
+                int r = c.getRank();
+                // Replaced since it was queued
+                if (r < 0 || ranked[r] != c)
+                    continue;
+                counts[r] = c.getVotes();
+                reposition(r);
+            }
+        }
+
+        // Earliest-registered of the candidates tied for the most votes.
+        public synchronized Candidate leader() {
+            refresh();
+            if (size == 0)
+                return null;
+            int best = 0;
+            for (int r = 1; r < size && counts[r] == counts[0]; r++) {
+                if (positions[r] < positions[best])
+                    best = r;
+            }
+            return ranked[best];
+        }
+
+        public Candidate runnerUp() {
+            List<Standing> top = top(2);
+            return top.size() < 2 ? null : top.get(1).getCandidate();
+        }
+
+        // Leader's lead over the runner-up (all of the leader's votes if unopposed).
+        public synchronized int margin() {
+            refresh();
+            if (size == 0)
+                return 0;
+            return counts[0] - (size > 1 ? counts[1] : 0);
+        }
+
+        public int total() {
+            return total.intValue();
+        }
+
+        // The first k candidates by votes, then registration order, with consistent vote counts.
+        public synchronized List<Standing> top(int k) {
+            refresh();
+            int n = Math.min(k, size);
+            if (n <= 0)
+                return new ArrayList<>();
+            // Everything above the block cut by rank n is already in order apart from ties
+            int end = n;
+            while (end < size && counts[end] == counts[n - 1]) {
+                end++;
+            }
+            Integer[] order = new Integer[end];
+            for (int r = 0; r < end; r++) {
+                order[r] = r;
+            }
+            Arrays.sort(order, (a, b) -> counts[a] != counts[b] ? counts[b] - counts[a] : positions[a] - positions[b]);
+            List<Standing> standings = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                standings.add(new Standing(ranked[order[i]], counts[order[i]]));
+            }
+            return standings;
+        }
+
+        // Returns the rank the candidate ends up at.
+        private int moveUp(int r) {
+            while (r > 0 && counts[r] > counts[r - 1]) {
+                swap(r, r - 1);
+                r--;
+            }
+            return r;
+        }
+
+        // Moves rank r up or down to where its count now belongs.
+        private void reposition(int r) {
+            r = moveUp(r);
+            while (r + 1 < size && counts[r] < counts[r + 1]) {
+                swap(r, r + 1);
+                r++;
+            }
+        }
+
+        private void swap(int a, int b) {
+            if (a == b)
+                return;
+            Candidate c = ranked[a];
+            ranked[a] = ranked[b];
+            ranked[b] = c;
+            int t = counts[a];
+            counts[a] = counts[b];
+            counts[b] = t;
+            t = positions[a];
+            positions[a] = positions[b];
+            positions[b] = t;
+            ranked[a].join(this, a);
+            ranked[b].join(this, b);
+        }
+    }
+
+    // Turnout by time, constituency (Candidate.place), candidate and party
+    // while polling is under way. Every accepted ballot adds one to the
+    // bucket for its minute and for its hour. A bucket is a row of atomic
+    // ints: the total, then one column per candidate (by registry
+    // position), per constituency and per party. The last MINUTES minutes
+    // and HOURS hours are kept in rings, so any bucket is one array read
+    // however many votes there are. Voting threads share no lock: a ballot
+    // increments its cells, and a slot moves on to a newer minute or hour
+    // by swapping in a fresh bucket with compare-and-set. Running totals
+    // per constituency and party start from the loaded tallies. Ballots
+    // from before a restart are replayed from the ledger in the background.
+    static class TurnoutAnalytics {
+        static final int MINUTES = 24 * 60;
+        static final int HOURS = 7 * 24;
+        private static final long MINUTE_MILLIS = 60_000L;
+        private static final long HOUR_MILLIS = 3_600_000L;
+        private static final int CANDIDATE = 0;
+        private static final int PLACE = 1;
+        private static final int PARTY = 2;
+
+        enum Resolution {
+            MINUTE, HOUR
+        }
+
+        // Columns per dimension that new buckets are sized for.
+        private static final class Layout {
+            final int[] widths;
+            final int[] offsets;
+            final int cells;
+
+            Layout(int candidates, int places, int parties) {
+                this.widths = new int[] { candidates, places, parties };
+                this.offsets = new int[] { 1, 1 + candidates, 1 + candidates + places };
+                this.cells = 1 + candidates + places + parties;
+            }
+        }
+
+        // One minute or hour. Columns registered after the bucket was
+        // created fall outside its layout and are counted in overflow.
+        private static final class Bucket {
+            final long tag;
+            final Layout layout;
+            final AtomicIntegerArray cells;
+            final Map<Long, LongAdder> overflow = new ConcurrentHashMap<>();
+
+            Bucket(long tag, Layout layout) {
+                this.tag = tag;
+                this.layout = layout;
+                this.cells = new AtomicIntegerArray(layout.cells);
+            }
+
+            void add(int dimension, int column) {
+                if (column < layout.widths[dimension])
+                    cells.getAndIncrement(layout.offsets[dimension] + column);
+                else
+                    overflow.computeIfAbsent((long) dimension << 32 | column, k -> new LongAdder()).increment();
+            }
+
+            int get(int dimension, int column) {
+                if (column < layout.widths[dimension])
+                    return cells.get(layout.offsets[dimension] + column);
+                LongAdder extra = overflow.get((long) dimension << 32 | column);
+                return extra == null ? 0 : extra.intValue();
+            }
+        }
+
+        private static final class Ring {
+            final long width;
+            final AtomicReferenceArray<Bucket> slots;
+
+            Ring(long width, int slots) {
+                this.width = width;
+                this.slots = new AtomicReferenceArray<>(slots);
+            }
+
+            // The bucket for time, swapping it in if its slot still holds an
+            // older one; null if the slot has already moved past it.
+            Bucket forWrite(long time, Layout layout) {
+                long tag = Math.floorDiv(time, width);
+                int slot = (int) Math.floorMod(tag, (long) slots.length());
+                while (true) {
+                    Bucket b = slots.get(slot);
+                    if (b != null && b.tag >= tag)
+                        return b.tag == tag ? b : null;
+                    Bucket fresh = new Bucket(tag, layout);
+                    if (slots.compareAndSet(slot, b, fresh))
+                        return fresh;
+                }
+            }
+
+            Bucket forRead(long time) {
+                long tag = Math.floorDiv(time, width);
+                Bucket b = slots.get((int) Math.floorMod(tag, (long) slots.length()));
+                return b != null && b.tag == tag ? b : null;
+            }
+        }
+
+        // Constituency or party names in column order, with their running totals.
+        private static final class Columns {
+            final Map<String, Integer> index = new ConcurrentHashMap<>();
+            final List<String> names = new CopyOnWriteArrayList<>();
+            volatile LongAdder[] totals = new LongAdder[0];
+        }
+
+        private final CandidateRegistry registry;
+        private final Columns places = new Columns();
+        private final Columns parties = new Columns();
+        private final Ring minutes = new Ring(MINUTE_MILLIS, MINUTES);
+        private final Ring hours = new Ring(HOUR_MILLIS, HOURS);
+        private volatile Layout layout;
+
+        // Running totals start from the candidates' current votes.
+        public TurnoutAnalytics(CandidateRegistry registry) {
+            this.registry = registry;
+            int n = registry.asList().size();
+            this.layout = new Layout(Math.max(8, n * 2), 8, 8);
+            for (Candidate c : registry.asList()) {
+                int place = column(places, c.getPlace());
+                int party = column(parties, c.getParty());
+                places.totals[place].add(c.getVotes());
+                parties.totals[party].add(c.getVotes());
+            }
+        }
+
+        private int column(Columns columns, String name) {
+            Integer col = columns.index.get(name);
+            return col != null ? col : register(columns, name);
+        }
+
+        // Only the first ballot for a new constituency or party gets here.
+        private synchronized int register(Columns columns, String name) {
+            Integer col = columns.index.get(name);
+            if (col != null)
+                return col;
+            col = columns.names.size();
+            LongAdder[] totals = Arrays.copyOf(columns.totals, col + 1);
+            totals[col] = new LongAdder();
+            columns.totals = totals;
+            columns.names.add(name);
+            columns.index.put(name, col);
+            widen(col, columns == places ? PLACE : PARTY);
+            return col;
+        }
+
+        // New buckets get room for column and twice as many more.
+        private synchronized void widen(int column, int dimension) {
+            Layout l = layout;
+            if (column < l.widths[dimension])
+                return;
+            int[] widths = l.widths.clone();
+            widths[dimension] = Math.max(8, column * 2);
+            layout = new Layout(widths[CANDIDATE], widths[PLACE], widths[PARTY]);
+        }
+
+        // One accepted ballot for c at timeMillis.
+        public void record(Candidate c, long timeMillis) {
+            add(c, timeMillis, true);
+        }
+
+        // The accepted ballots of a batch, chosen[k] at times[k].
+        public void record(Candidate[] chosen, long[] times, int count) {
+            for (int k = 0; k < count; k++) {
+                add(chosen[k], times[k], true);
+            }
+        }
+
+        private void add(Candidate c, long timeMillis, boolean live) {
+            int candidate = registry.position(c);
+            if (candidate < 0)
+                return;
+            int place = column(places, c.getPlace());
+            int party = column(parties, c.getParty());
+            if (live) {
+                places.totals[place].increment();
+                parties.totals[party].increment();
+            }
+            Layout l = layout;
+            if (candidate >= l.widths[CANDIDATE]) {
+                widen(candidate, CANDIDATE);
+                l = layout;
+            }
+            add(minutes.forWrite(timeMillis, l), candidate, place, party);
+            add(hours.forWrite(timeMillis, l), candidate, place, party);
+        }
+
+        private static void add(Bucket b, int candidate, int place, int party) {
+            if (b == null)
+                return;
+            b.cells.getAndIncrement(0);
+            b.add(CANDIDATE, candidate);
+            b.add(PLACE, place);
+            b.add(PARTY, party);
+        }
+
+        // Fills the buckets from ledger records up to seq, which the loaded
+        // tallies already count. Records older than the hour ring are skipped.
+        void replay(long upToSeq) throws IOException {
+            long cutoff = System.currentTimeMillis() - HOURS * HOUR_MILLIS;
+            BallotChain.scan(1, upToSeq, (seq, b, off, textLen, hashOff) -> {
+                int end = off + textLen;
+                int c1 = VoterLoader.indexOf(b, (byte) ',', off, end);
+                int c2 = c1 < 0 ? -1 : VoterLoader.indexOf(b, (byte) ',', c1 + 1, end);
+                int c3 = c2 < 0 ? -1 : VoterLoader.indexOf(b, (byte) ',', c2 + 1, end);
+                if (c3 < 0)
+                    return true;
+                long time = 0;
+                for (int i = c3 + 1; i < end; i++) {
+                    int d = b[i] - '0';
+                    if (d < 0 || d > 9)
+                        return true;
+                    time = time * 10 + d;
+                }
+                if (time < cutoff)
+                    return true;
+                Candidate c = registry.findById(new String(b, c2 + 1, c3 - c2 - 1, StandardCharsets.UTF_8));
+                if (c != null)
+                    add(c, time, false);
+                return true;
+            });
+        }
+
+        private Ring ring(Resolution resolution) {
+            return resolution == Resolution.MINUTE ? minutes : hours;
+        }
+
+        // Ballots in the minute or hour containing timeMillis; 0 once it has rotated out.
+        public int total(Resolution resolution, long timeMillis) {
+            Bucket b = ring(resolution).forRead(timeMillis);
+            return b == null ? 0 : b.cells.get(0);
+        }
+
+        public int forCandidate(Resolution resolution, long timeMillis, Candidate c) {
+            Bucket b = ring(resolution).forRead(timeMillis);
+            int col = registry.position(c);
+            return b == null || col < 0 ? 0 : b.get(CANDIDATE, col);
+        }
+
+        public int forPlace(Resolution resolution, long timeMillis, String place) {
+            Bucket b = ring(resolution).forRead(timeMillis);
+            Integer col = places.index.get(place);
+            return b == null || col == null ? 0 : b.get(PLACE, col);
+        }
+
+        public int forParty(Resolution resolution, long timeMillis, String party) {
+            Bucket b = ring(resolution).forRead(timeMillis);
+            Integer col = parties.index.get(party);
+            return b == null || col == null ? 0 : b.get(PARTY, col);
+        }
+
+        // Votes for the constituency's candidates so far, including those loaded at startup.
+        public int placeTotal(String place) {
+            Integer col = places.index.get(place);
+            return col == null ? 0 : places.totals[col].intValue();
+        }
+
+        public int partyTotal(String party) {
+            Integer col = parties.index.get(party);
+            return col == null ? 0 : parties.totals[col].intValue();
+        }
+
+        public List<String> places() {
+            return new ArrayList<>(places.names);
+        }
+
+        public List<String> parties() {
+            return new ArrayList<>(parties.names);
+        }
+
+        // Text for the admin Results tab: ballots this minute and in the last
+        // 60, ballots per hour over the last hourCount hours with each party's
+        // share, and each constituency's total, this hour and last hour.
+        public String report(long now, int hourCount) {
+            StringBuilder sb = new StringBuilder();
+            int thisMinute = total(Resolution.MINUTE, now);
+            int lastHour = 0;
+            for (int m = 0; m < 60; m++) {
+                lastHour += total(Resolution.MINUTE, now - m * MINUTE_MILLIS);
+            }
+            sb.append(String.format("This minute: %d ballots   last 60 minutes: %d%n%n", thisMinute, lastHour));
+            List<String> parties = parties();
+            sb.append(String.format("%-8s %8s", "Hour", "Ballots"));
+            for (String party : parties) {
+                sb.append(String.format(" %10s", party));
+            }
+            sb.append('\n');
+            long hourStart = Math.floorDiv(now, HOUR_MILLIS) * HOUR_MILLIS;
+            for (int h = hourCount - 1; h >= 0; h--) {
+                long time = hourStart - h * HOUR_MILLIS;
+                int ballots = total(Resolution.HOUR, time);
+                sb.append(String.format("%tH:00    %8d", time, ballots));
+                for (String party : parties) {
+                    sb.append(String.format(" %9.1f%%", ballots == 0 ? 0.0
+                            : 100.0 * forParty(Resolution.HOUR, time, party) / ballots));
+                }
+                sb.append('\n');
+            }
+            sb.append(String.format("%n%-20s %10s %10s %10s%n", "Constituency", "Total", "This hour", "Last hour"));
+            for (String place : places()) {
+                sb.append(String.format("%-20s %10d %10d %10d%n", place, placeTotal(place),
+                        forPlace(Resolution.HOUR, now, place), forPlace(Resolution.HOUR, now - HOUR_MILLIS, place)));
+            }
+            return sb.toString();
+        }
+    }
+
+    // Constituency results. Candidates are partitioned by place and every
+    // place is an independent seat, decided by its own candidates' votes.
+    // Seats are tallied in parallel on a fork-join pool, then the winners
+    // are rolled up into a seat count per party.
+    static class Constituencies {
+        // Seats per leaf task; smaller ranges are tallied inline
+        private static final int SEATS_PER_TASK = 16;
+
+        public static class SeatResult {
+            private final String place;
+            private final Candidate winner;
+            private final int winnerVotes;
+            private final int runnerUpVotes;
+            private final int totalVotes;
+
+            SeatResult(String place, Candidate winner, int winnerVotes, int runnerUpVotes, int totalVotes) {
+                this.place = place;
+                this.winner = winner;
+                this.winnerVotes = winnerVotes;
+                this.runnerUpVotes = runnerUpVotes;
+                this.totalVotes = totalVotes;
+            }
+
+            public String getPlace() {
+                return place;
+            }
+
+            // Null while nobody in this constituency has a vote.
+            public Candidate getWinner() {
+                return winner;
+            }
+
+            public int getWinnerVotes() {
+                return winnerVotes;
+            }
+
+            public int getMargin() {
+                return winnerVotes - runnerUpVotes;
+            }
+
+            public int getTotalVotes() {
+                return totalVotes;
+            }
+        }
+
+        public static class Results {
+            private final List<SeatResult> seats;
+            private final Map<String, Integer> seatsByParty;
+
+            Results(List<SeatResult> seats, Map<String, Integer> seatsByParty) {
+                this.seats = seats;
+                this.seatsByParty = seatsByParty;
+            }
+
+            // One result per place, sorted by place.
+            public List<SeatResult> getSeats() {
+                return seats;
+            }
+
+            // Seats won per party, sorted by party; undecided seats are not counted.
+            public Map<String, Integer> getSeatsByParty() {
+                return seatsByParty;
+            }
+        }
+
+        public static Results tally(CandidateRegistry registry) {
+            return tally(registry, ForkJoinPool.commonPool());
+        }
+
+        public static Results tally(CandidateRegistry registry, ForkJoinPool pool) {
+            String[] places = registry.places().toArray(new String[0]);
+            Arrays.sort(places);
+            List<SeatResult> seats = pool.invoke(new SeatTask(registry, places, 0, places.length));
+            Map<String, Integer> seatsByParty = new TreeMap<>();
+            for (SeatResult seat : seats) {
+                if (seat.getWinner() != null)
+                    seatsByParty.merge(seat.getWinner().getParty(), 1, Integer::sum);
+            }
+            return new Results(Collections.unmodifiableList(seats), Collections.unmodifiableMap(seatsByParty));
+        }
+
+        private static class SeatTask extends RecursiveTask<List<SeatResult>> {
+            private static final long serialVersionUID = 1L;
+
+            private final CandidateRegistry registry;
+            private final String[] places;
+            private final int from;
+            private final int to;
+
+            SeatTask(CandidateRegistry registry, String[] places, int from, int to) {
+                this.registry = registry;
+                this.places = places;
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected List<SeatResult> compute() {
+                if (to - from <= SEATS_PER_TASK) {
+                    List<SeatResult> results = new ArrayList<>(to - from);
+                    for (int i = from; i < to; i++) {
+                        results.add(seat(registry, places[i]));
+                    }
+                    return results;
+                }
+                int mid = (from + to) >>> 1;
+                SeatTask left = new SeatTask(registry, places, from, mid);
+                left.fork();
+                List<SeatResult> results = new SeatTask(registry, places, mid, to).compute();
+                List<SeatResult> merged = left.join();
+                merged.addAll(results);
+                return merged;
+            }
+        }
+
+        // Ties go to the earliest-registered candidate, as in the overall result.
+        static SeatResult seat(CandidateRegistry registry, String place) {
+            Candidate winner = null;
+            int winnerVotes = 0;
+            int runnerUpVotes = 0;
+            int total = 0;
+            for (Candidate c : registry.findByPlace(place)) {
+                int votes = c.getVotes();
+                total += votes;
+                if (winner == null || votes > winnerVotes
+                        || (votes == winnerVotes && registry.position(c) < registry.position(winner))) {
+                    if (winner != null)
+                        runnerUpVotes = Math.max(runnerUpVotes, winnerVotes);
+                    winner = c;
+                    winnerVotes = votes;
+                } else {
+                    runnerUpVotes = Math.max(runnerUpVotes, votes);
+                }
+            }
+            return new SeatResult(place, total == 0 ? null : winner, winnerVotes, runnerUpVotes, total);
+        }
+    }
+
+    // Ranked ballots packed for counting. Preferences are candidate indexes
+    // in one short array, ballot b's ranking running from prefs[offsets[b]]
+    // up to prefs[offsets[b + 1]], so a ballot costs 4 bytes plus 2 per
+    // preference. Candidates get an index the first time a ballot names them.
+    static class RankedBallots {
+        private final List<Candidate> candidates = new ArrayList<>();
+        private final Map<Candidate, Integer> indexes = new IdentityHashMap<>();
+        private short[] prefs = new short[1024];
+        private int[] offsets = new int[1024];
+        private int size;
+
+        // The ballots added so far, read without locking while more are added.
+        static class Packed {
+            final short[] prefs;
+            final int[] offsets;
+            final int size;
+            final List<Candidate> candidates;
+
+            Packed(short[] prefs, int[] offsets, int size, List<Candidate> candidates) {
+                this.prefs = prefs;
+                this.offsets = offsets;
+                this.size = size;
+                this.candidates = candidates;
+            }
+        }
+
+        // Returns false, storing nothing, if the ranking is empty or names a candidate twice.
+        public synchronized boolean add(List<Candidate> ranking) {
+            int length = ranking.size();
+            if (length == 0 || length > Short.MAX_VALUE)
+                return false;
+            int start = offsets[size];
+            if (start + length > prefs.length)
+                prefs = Arrays.copyOf(prefs, Math.max(prefs.length * 2, start + length));
+            if (size + 2 > offsets.length)
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            for (int k = 0; k < length; k++) {
+                short c = (short) indexOf(ranking.get(k));
+                for (int j = start; j < start + k; j++) {
+                    if (prefs[j] == c)
+                        return false;
+                }
+                prefs[start + k] = c;
+            }
+            // Publishing the end offset is what adds the ballot
+            offsets[size + 1] = start + length;
+            size++;
+            return true;
+        }
+
+        private int indexOf(Candidate candidate) {
+            Integer index = indexes.get(candidate);
+            if (index != null)
+                return index;
+            if (candidates.size() == Short.MAX_VALUE)
+                throw new IllegalStateException("Too many candidates for a ranked count");
+            indexes.put(candidate, candidates.size());
+            candidates.add(candidate);
+            return candidates.size() - 1;
+        }
+
+        public synchronized int size() {
+            return size;
+        }
+
+        // Later ballots go past the end of these arrays or into grown copies, so the view never changes.
+        synchronized Packed packed() {
+            return new Packed(prefs, offsets, size, new ArrayList<>(candidates));
+        }
+
+        // One "voterId,candidateId>candidateId>..." line, the format read() takes.
+        static String line(String voterId, List<Candidate> ranking) {
+            StringBuilder sb = new StringBuilder(voterId).append(',');
+            for (int k = 0; k < ranking.size(); k++) {
+                if (k > 0)
+                    sb.append('>');
+                sb.append(ranking.get(k).getId());
+            }
+            return sb.append('\n').toString();
+        }
+
+        // Loads ballots written by Admin.castRankedVote or prepared for the
+        // count command. Lines naming an unknown candidate, or a candidate
+        // twice, are skipped and reported.
+        public static RankedBallots read(Path file, CandidateRegistry registry) throws IOException {
+            return read(file, registry, new RankedBallots());
+        }
+
+        static RankedBallots read(Path file, CandidateRegistry registry, RankedBallots ballots) throws IOException {
+            long skipped = 0;
+            List<Candidate> ranking = new ArrayList<>();
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty())
+                        continue;
+                    ranking.clear();
+                    boolean known = true;
+                    int from = line.indexOf(',') + 1;
+                    while (known && from > 0 && from <= line.length()) {
+                        int to = line.indexOf('>', from);
+                        Candidate c = registry.findById(line.substring(from, to < 0 ? line.length() : to));
+                        known = c != null;
+                        ranking.add(c);
+                        from = to < 0 ? line.length() + 1 : to + 1;
+                    }
+                    if (!known || !ballots.add(ranking))
+                        skipped++;
+                }
+            }
+            if (skipped > 0)
+                System.err.println("Skipped " + skipped + " malformed ranked ballots in " + file.getFileName());
+            return ballots;
+        }
+    }
+
+    // A counting rule: turns the ballots into the candidates elected to seats.
+    interface CountingEngine {
+        String name();
+
+        Counting.Result count(RankedBallots ballots, int seats);
+    }
+
+    // Counting engines beside first-past-the-post: instant runoff and single
+    // transferable vote over ranked ballots, and D'Hondt or Sainte-Laguë seat
+    // allocation over party totals.
+    static class Counting {
+        // STV vote values are fixed point with five decimal places
+        static final long SCALE = 100_000;
+
+        public static final CountingEngine INSTANT_RUNOFF = new InstantRunoff();
+        public static final CountingEngine STV = new SingleTransferableVote();
+        public static final HighestAverages DHONDT = new HighestAverages(false);
+        public static final HighestAverages SAINTE_LAGUE = new HighestAverages(true);
+
+        // Returns null for an unknown name.
+        public static CountingEngine forName(String name) {
+            switch (name.toLowerCase(Locale.ROOT)) {
+                case "irv":
+                case "instant-runoff":
+                    return INSTANT_RUNOFF;
+                case "stv":
+                    return STV;
+                case "dhondt":
+                case "d'hondt":
+                    return DHONDT;
+                case "sainte-lague":
+                case "webster":
+                    return SAINTE_LAGUE;
+                default:
+                    return null;
+            }
+        }
+
+        public static class Result {
+            private final String method;
+            private final List<Candidate> elected;
+            private final Map<String, Integer> seatsByParty;
+            private final List<String> rounds;
+            private final double exhausted;
+
+            Result(String method, List<Candidate> elected, List<String> rounds, double exhausted) {
+                this.method = method;
+                this.elected = Collections.unmodifiableList(elected);
+                Map<String, Integer> seats = new TreeMap<>();
+                for (Candidate c : elected) {
+                    seats.merge(c.getParty(), 1, Integer::sum);
+                }
+                this.seatsByParty = Collections.unmodifiableMap(seats);
+                this.rounds = Collections.unmodifiableList(rounds);
+                this.exhausted = exhausted;
+            }
+
+            public String getMethod() {
+                return method;
+            }
+
+            // In the order they were elected.
+            public List<Candidate> getElected() {
+                return elected;
+            }
+
+            // Sorted by party.
+            public Map<String, Integer> getSeatsByParty() {
+                return seatsByParty;
+            }
+
+            // One line per round of the count.
+            public List<String> getRounds() {
+                return rounds;
+            }
+
+            // Votes left on ballots with no continuing preference.
+            public double getExhausted() {
+                return exhausted;
+            }
+
+            @Override
+            public String toString() {
+                StringBuilder sb = new StringBuilder(method).append('\n');
+                for (String round : rounds) {
+                    sb.append(round).append('\n');
+                }
+                sb.append("Elected:");
+                for (Candidate c : elected) {
+                    sb.append(' ').append(c.getName()).append(" (").append(c.getParty()).append(')');
+                }
+                return sb.append('\n').toString();
+            }
+        }
+
+        // Ballot piles for the ranked counts. Each continuing candidate holds
+        // the ballots currently counting for them, and electing or excluding
+        // a candidate moves only that candidate's pile on to the next
+        // continuing preferences. A whole count therefore costs about one
+        // step per preference, rather than a pass over every ballot each round.
+        private static final class Piles {
+            static final byte CONTINUING = 0;
+            static final byte ELECTED = 1;
+            static final byte EXCLUDED = 2;
+
+            final RankedBallots.Packed ballots;
+            final long unit;
+            // Index into prefs of each ballot's current preference
+            final int[] position;
+            // Current value of each ballot; null when every ballot keeps its full value
+            final int[] weight;
+            final long[] tally;
+            final long[] firstPreferences;
+            final byte[] state;
+            final int[][] pile;
+            final int[] pileSize;
+            int continuing;
+            long exhausted;
+
+            Piles(RankedBallots.Packed ballots, long unit, boolean weighted) {
+                this.ballots = ballots;
+                this.unit = unit;
+                int n = ballots.size;
+                int candidates = ballots.candidates.size();
+                this.position = new int[n];
+                this.weight = weighted ? new int[n] : null;
+                this.tally = new long[candidates];
+                this.firstPreferences = new long[candidates];
+                this.state = new byte[candidates];
+                this.pileSize = new int[candidates];
+                for (int b = 0; b < n; b++) {
+                    firstPreferences[ballots.prefs[ballots.offsets[b]]]++;
+                }
+                this.pile = new int[candidates][];
+                for (int c = 0; c < candidates; c++) {
+                    pile[c] = new int[(int) Math.max(16, firstPreferences[c])];
+                    tally[c] = firstPreferences[c] * unit;
+                    // A candidate named only in later preferences starts on no votes but is still in the count
+                }
+                for (int b = 0; b < n; b++) {
+                    int c = ballots.prefs[ballots.offsets[b]];
+                    position[b] = ballots.offsets[b];
+                    pile[c][pileSize[c]++] = b;
+                    if (weight != null)
+                        weight[b] = (int) unit;
+                }
+                this.continuing = candidates;
+            }
+
+            // Moves every ballot in c's pile on, at num/den of its current
+            // value; the rest stays with c. Value lost to rounding down is
+            // counted as exhausted: the remainders, in 1/den weight units,
+            // are carried until they add up to a whole unit.
+            void transfer(int c, long num, long den) {
+                int[] moving = pile[c];
+                int count = pileSize[c];
+                pile[c] = null;
+                pileSize[c] = 0;
+                short[] prefs = ballots.prefs;
+                long lost = 0;
+                for (int i = 0; i < count; i++) {
+                    int b = moving[i];
+                    long value = weight == null ? unit : weight[b];
+                    if (num != den) {
+                        long scaled = value * num;
+                        lost += scaled % den;
+                        if (lost >= den) {
+                            exhausted += lost / den;
+                            lost %= den;
+                        }
+                        value = scaled / den;
+                        weight[b] = (int) value;
+                    }
+                    int end = ballots.offsets[b + 1];
+                    int p = position[b] + 1;
+                    while (p < end && state[prefs[p]] != CONTINUING) {
+                        p++;
+                    }
+                    if (p == end) {
+                        exhausted += value;
+                        continue;
+                    }
+                    position[b] = p;
+                    int next = prefs[p];
+                    if (pileSize[next] == pile[next].length)
+                        pile[next] = Arrays.copyOf(pile[next], pile[next].length * 2);
+                    pile[next][pileSize[next]++] = b;
+                    tally[next] += value;
+                }
+            }
+
+            void elect(int c) {
+                state[c] = ELECTED;
+                continuing--;
+            }
+
+            void exclude(int c) {
+                state[c] = EXCLUDED;
+                continuing--;
+                transfer(c, 1, 1);
+            }
+
+            // Ties go to more first preferences, then to the candidate named earliest.
+            int leader() {
+                int best = -1;
+                for (int c = 0; c < state.length; c++) {
+                    if (state[c] == CONTINUING && (best < 0 || tally[c] > tally[best]
+                            || (tally[c] == tally[best] && firstPreferences[c] > firstPreferences[best])))
+                        best = c;
+                }
+                return best;
+            }
+
+            // Ties go out on fewer first preferences, then the candidate named latest.
+            int lowest() {
+                int worst = -1;
+                for (int c = 0; c < state.length; c++) {
+                    if (state[c] == CONTINUING && (worst < 0 || tally[c] < tally[worst]
+                            || (tally[c] == tally[worst] && firstPreferences[c] <= firstPreferences[worst])))
+                        worst = c;
+                }
+                return worst;
+            }
+
+            String votes(long value) {
+                return unit == 1 ? Long.toString(value) : String.format("%.2f", (double) value / unit);
+            }
+
+            String name(int c) {
+                return ballots.candidates.get(c).getName();
+            }
+        }
+
+        // Single seat: the last candidate standing, or the first to hold a
+        // majority of the ballots still in play. seats is ignored.
+        static class InstantRunoff implements CountingEngine {
+            @Override
+            public String name() {
+                return "Instant runoff";
+            }
+
+            @Override
+            public Result count(RankedBallots ballots, int seats) {
+                RankedBallots.Packed packed = ballots.packed();
+                Piles piles = new Piles(packed, 1, false);
+                List<Candidate> elected = new ArrayList<>();
+                List<String> rounds = new ArrayList<>();
+                for (int round = 1; piles.continuing > 0; round++) {
+                    int leader = piles.leader();
+                    long active = packed.size - piles.exhausted;
+                    if (piles.tally[leader] * 2 > active || piles.continuing == 1) {
+                        elected.add(packed.candidates.get(leader));
+                        rounds.add("Round " + round + ": " + piles.name(leader) + " elected with "
+                                + piles.tally[leader] + " of " + active + " votes");
+                        break;
+                    }
+                    int out = piles.lowest();
+                    long votes = piles.tally[out];
+                    piles.exclude(out);
+                    rounds.add("Round " + round + ": " + piles.name(out) + " excluded with " + votes + " votes");
+                }
+                return new Result(name(), elected, rounds, piles.exhausted);
+            }
+        }
+
+        // Droop quota with fractional surplus transfers (weighted inclusive
+        // Gregory): an elected candidate's surplus moves on every ballot they
+        // hold, each at surplus/total of its current value.
+        static class SingleTransferableVote implements CountingEngine {
+            @Override
+            public String name() {
+                return "Single transferable vote";
+            }
+
+            @Override
+            public Result count(RankedBallots ballots, int seats) {
+                if (seats < 1)
+                    throw new IllegalArgumentException("seats must be at least 1");
+                RankedBallots.Packed packed = ballots.packed();
+                Piles piles = new Piles(packed, SCALE, true);
+                long quota = (packed.size / (seats + 1) + 1) * SCALE;
+                List<Candidate> elected = new ArrayList<>();
+                List<Integer> surpluses = new ArrayList<>();
+                List<String> rounds = new ArrayList<>();
+                rounds.add("Quota: " + piles.votes(quota));
+                for (int round = 1; elected.size() < seats && piles.continuing > 0; round++) {
+                    int leader;
+                    while (elected.size() < seats && (leader = piles.leader()) >= 0
+                            && piles.tally[leader] >= quota) {
+                        piles.elect(leader);
+                        elected.add(packed.candidates.get(leader));
+                        surpluses.add(leader);
+                        rounds.add("Round " + round + ": " + piles.name(leader) + " elected with "
+                                + piles.votes(piles.tally[leader]));
+                    }
+                    if (elected.size() == seats)
+                        break;
+                    if (elected.size() + piles.continuing <= seats) {
+                        while ((leader = piles.leader()) >= 0) {
+                            piles.elect(leader);
+                            elected.add(packed.candidates.get(leader));
+                            rounds.add("Round " + round + ": " + piles.name(leader)
+                                    + " elected to a remaining seat with " + piles.votes(piles.tally[leader]));
+                        }
+                        break;
+                    }
+                    if (!surpluses.isEmpty()) {
+                        // Largest surplus first
+                        int from = 0;
+                        for (int i = 1; i < surpluses.size(); i++) {
+                            if (piles.tally[surpluses.get(i)] > piles.tally[surpluses.get(from)])
+                                from = i;
+                        }
+                        int c = surpluses.remove(from);
+                        long surplus = piles.tally[c] - quota;
+                        if (surplus > 0) {
+                            piles.transfer(c, surplus, piles.tally[c]);
+                            rounds.add("Round " + round + ": surplus of " + piles.votes(surplus) + " transferred from "
+                                    + piles.name(c));
+                        }
+                        piles.pile[c] = null;
+                        piles.tally[c] = quota;
+                        continue;
+                    }
+                    int out = piles.lowest();
+                    long votes = piles.tally[out];
+                    piles.exclude(out);
+                    rounds.add("Round " + round + ": " + piles.name(out) + " excluded with " + piles.votes(votes));
+                }
+                return new Result(name(), elected, rounds, (double) piles.exhausted / SCALE);
+            }
+        }
+
+        // Highest-averages seat allocation: each seat goes to the party with
+        // the largest votes / divisor, the divisor growing with the seats it
+        // already has (1, 2, 3, ... for D'Hondt; 1, 3, 5, ... for
+        // Sainte-Laguë). Within a party, seats go to its candidates with the
+        // most votes.
+        static class HighestAverages implements CountingEngine {
+            private final boolean sainteLague;
+
+            HighestAverages(boolean sainteLague) {
+                this.sainteLague = sainteLague;
+            }
+
+            @Override
+            public String name() {
+                return sainteLague ? "Sainte-Laguë" : "D'Hondt";
+            }
+
+            // Counts each ballot's first preference.
+            @Override
+            public Result count(RankedBallots ballots, int seats) {
+                RankedBallots.Packed packed = ballots.packed();
+                long[] votes = new long[packed.candidates.size()];
+                for (int b = 0; b < packed.size; b++) {
+                    votes[packed.prefs[packed.offsets[b]]]++;
+                }
+                return allocate(packed.candidates, votes, seats);
+            }
+
+            // Uses the candidates' live vote totals.
+            public Result count(List<Candidate> candidates, int seats) {
+                long[] votes = new long[candidates.size()];
+                for (int i = 0; i < votes.length; i++) {
+                    votes[i] = candidates.get(i).getVotes();
+                }
+                return allocate(candidates, votes, seats);
+            }
+
+            private Result allocate(List<Candidate> candidates, long[] votes, int seats) {
+                Map<String, Long> partyVotes = new TreeMap<>();
+                for (int i = 0; i < votes.length; i++) {
+                    partyVotes.merge(candidates.get(i).getParty(), votes[i], Long::sum);
+                }
+                List<String> rounds = new ArrayList<>();
+                Map<String, Integer> won = allocateSeats(partyVotes, seats, sainteLague, rounds);
+
+                // Open lists: a party's seats go to its strongest candidates, earliest named on a tie
+                Integer[] order = new Integer[votes.length];
+                for (int i = 0; i < order.length; i++) {
+                    order[i] = i;
+                }
+                Arrays.sort(order, (a, b) -> Long.compare(votes[b], votes[a]));
+                Map<String, Integer> filled = new HashMap<>();
+                List<Candidate> elected = new ArrayList<>();
+                for (int i : order) {
+                    String party = candidates.get(i).getParty();
+                    if (filled.getOrDefault(party, 0) < won.getOrDefault(party, 0)) {
+                        filled.merge(party, 1, Integer::sum);
+                        elected.add(candidates.get(i));
+                    }
+                }
+                for (Map.Entry<String, Integer> e : won.entrySet()) {
+                    int unfilled = e.getValue() - filled.getOrDefault(e.getKey(), 0);
+                    if (unfilled > 0)
+                        rounds.add(e.getKey() + ": " + unfilled + " seat(s) unfilled, not enough candidates");
+                }
+                return new Result(name(), elected, rounds, 0);
+            }
+
+            // Seats per party, in the map's order; a tie goes to the party
+            // with more votes, then to the one first in the map.
+            public static Map<String, Integer> allocateSeats(Map<String, Long> partyVotes, int seats,
+                                                             boolean sainteLague) {
+                return allocateSeats(partyVotes, seats, sainteLague, null);
+            }
+
+            private static Map<String, Integer> allocateSeats(Map<String, Long> partyVotes, int seats,
+                                                              boolean sainteLague, List<String> rounds) {
+                String[] parties = partyVotes.keySet().toArray(new String[0]);
+                long[] votes = new long[parties.length];
+                int[] won = new int[parties.length];
+                for (int i = 0; i < parties.length; i++) {
+                    votes[i] = partyVotes.get(parties[i]);
+                }
+                // Compares votes[a] / divisor(a) with votes[b] / divisor(b) without dividing
+                PriorityQueue<Integer> next = new PriorityQueue<>((a, b) -> {
+                    long divA = sainteLague ? 2L * won[a] + 1 : won[a] + 1;
+                    long divB = sainteLague ? 2L * won[b] + 1 : won[b] + 1;
+                    int cmp = Long.compare(votes[b] * divA, votes[a] * divB);
+                    if (cmp == 0)
+                        cmp = Long.compare(votes[b], votes[a]);
+                    return cmp != 0 ? cmp : Integer.compare(a, b);
+                });
+                for (int i = 0; i < parties.length; i++) {
+                    if (votes[i] > 0)
+                        next.add(i);
+                }
+                for (int seat = 1; seat <= seats && !next.isEmpty(); seat++) {
+                    int p = next.poll();
+                    long divisor = sainteLague ? 2L * won[p] + 1 : won[p] + 1;
+                    won[p]++;
+                    next.add(p);
+                    if (rounds != null)
+                        rounds.add(String.format("Seat %d: %s (%d / %d = %.2f)", seat, parties[p], votes[p], divisor,
+                                (double) votes[p] / divisor));
+                }
+                Map<String, Integer> result = new LinkedHashMap<>();
+                for (int i = 0; i < parties.length; i++) {
+                    if (won[i] > 0)
+                        result.put(parties[i], won[i]);
+                }
+                return result;
+            }
+        }
+    }
+
+    // Parallel loader for voter.txt. The file is cut into chunks at line
+    // boundaries, each chunk is parsed on a worker thread by scanning bytes
+    // for commas (no String.split or regex), and the parsed chunks are
+    // handed to the sink in file order.
+    static class VoterLoader {
+        private static final int CHUNK_SIZE = 4 << 20;
+        private static final byte[] TRUE = "true".getBytes(StandardCharsets.UTF_8);
+
+        interface ChunkSink {
+            void accept(List<Voter> chunk, long bytesDone, long bytesTotal);
+        }
+
+        public static void load(Path file, ChunkSink sink) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = channel.size();
+                List<long[]> ranges = splitAtLines(channel, size);
+                int threads = Math.max(1, Math.min(ranges.size(), Runtime.getRuntime().availableProcessors()));
+                ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+                    Thread t = new Thread(r, "voter-loader-worker");
+                    t.setDaemon(true);
+                    return t;
+                });
+                try {
+                    List<Future<List<Voter>>> parsed = new ArrayList<>();
+                    for (long[] range : ranges) {
+                        parsed.add(pool.submit(() -> parseChunk(channel, range[0], range[1])));
+                    }
+                    for (int i = 0; i < ranges.size(); i++) {
+                        sink.accept(parsed.get(i).get(), ranges.get(i)[1], size);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Voter load interrupted");
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof IOException ? (IOException) e.getCause()
+                            : new IOException(e.getCause());
+                } finally {
+                    pool.shutdownNow();
+                }
+            }
+        }
+
+        // Each range ends just after a newline (or at end of file).
+        static List<long[]> splitAtLines(FileChannel channel, long size) throws IOException {
+            List<long[]> ranges = new ArrayList<>();
+            ByteBuffer probe = ByteBuffer.allocate(4096);
+            long start = 0;
+            while (start < size) {
+                long end = Math.min(size, start + CHUNK_SIZE);
+                while (end < size) {
+                    probe.clear();
+                    int n = channel.read(probe, end);
+                    if (n <= 0) {
+                        end = size;
+                        break;
+                    }
+                    int nl = -1;
+                    for (int i = 0; i < n; i++) {
+                        if (probe.get(i) == '\n') {
+                            nl = i;
+                            break;
+                        }
+                    }
+                    if (nl >= 0) {
+                        end += nl + 1;
+                        break;
+                    }
+                    end += n;
+                }
+                ranges.add(new long[] { start, end });
+                start = end;
+            }
+            return ranges;
+        }
+
+        private static List<Voter> parseChunk(FileChannel channel, long start, long end) throws IOException {
+            byte[] bytes = new byte[(int) (end - start)];
+            ByteBuffer buf = ByteBuffer.wrap(bytes);
+            while (buf.hasRemaining()) {
+                if (channel.read(buf, start + buf.position()) < 0)
+                    break;
+            }
+            List<Voter> voters = new ArrayList<>(bytes.length / 24);
+            int lineStart = 0;
+            while (lineStart < bytes.length) {
+                int lineEnd = indexOf(bytes, (byte) '\n', lineStart, bytes.length);
+                int next = lineEnd < 0 ? bytes.length : lineEnd + 1;
+                if (lineEnd < 0)
+                    lineEnd = bytes.length;
+                if (lineEnd > lineStart && bytes[lineEnd - 1] == '\r')
+                    lineEnd--;
+                Voter v = parseLine(bytes, lineStart, lineEnd);
+                if (v != null)
+                    voters.add(v);
+                lineStart = next;
+            }
+            return voters;
+        }
+
+        // "name,id,hasVoted"; lines without a third field are skipped as before
+        private static Voter parseLine(byte[] b, int from, int to) {
+            int c1 = indexOf(b, (byte) ',', from, to);
+            if (c1 < 0)
+                return null;
+            int c2 = indexOf(b, (byte) ',', c1 + 1, to);
+            if (c2 < 0)
+                return null;
+            int c3 = indexOf(b, (byte) ',', c2 + 1, to);
+            int flagEnd = c3 < 0 ? to : c3;
+            if (flagEnd == c2 + 1)
+                return null;
+            Voter v = new Voter(new String(b, from, c1 - from, StandardCharsets.UTF_8),
+                    new String(b, c1 + 1, c2 - c1 - 1, StandardCharsets.UTF_8));
+            if (flagEnd - c2 - 1 == TRUE.length && Arrays.equals(b, c2 + 1, flagEnd, TRUE, 0, TRUE.length))
+                v.setVoted();
+            return v;
+        }
+
+        static int indexOf(byte[] b, byte target, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (b[i] == target)
+                    return i;
+            }
+            return -1;
+        }
+    }
+
+    static class FileHandler {
+        // Using lowercase file names for consistency
+        private static final String CANDIDATE_FILE = "candidate.txt";
+        private static final String VOTER_FILE = "voter.txt";
+        static final String CANDIDATE_DATA = "candidate.dat";
+        static final String VOTER_DATA = "voter.dat";
+
+        // All election files live in -Delection.dataDir (default: working directory)
+        public static Path resolve(String fileName) {
+            return Paths.get(System.getProperty("election.dataDir", "."), fileName);
+        }
+
+        // The binary file wins when present; legacy text files are read until
+        // the first save. A candidate.dat that fails its checksum is moved
+        // aside and the copy kept from the save before it is used instead.
+        // When neither copy can be read both are left in place and startup
+        // stops, rather than carrying on with no candidates.
+        public static List<Candidate> readCandidates() {
+            Path data = resolve(CANDIDATE_DATA);
+            Path backup = resolve(CANDIDATE_DATA + ".bak");
+            if (!Files.exists(data) && !Files.exists(backup))
+                return readCandidatesText();
+            List<Path> damaged = new ArrayList<>();
+            for (Path file : new Path[] { data, backup }) {
+                if (!Files.exists(file))
+                    continue;
+                long start = System.nanoTime();
+                try {
+                    List<Candidate> candidates = BinaryFormat.readCandidates(file);
+                    Metrics.fileRead(CANDIDATE_DATA, System.nanoTime() - start, Files.size(file));
+                    for (Path bad : damaged)
+                        quarantine(bad);
+                    return withValidIds(candidates);
+                } catch (IOException e) {
+                    System.err.println("Error reading " + file.getFileName() + ": " + e.getMessage());
+                    damaged.add(file);
+                }
+            }
+            throw new UncheckedIOException(new IOException("No readable copy of " + CANDIDATE_DATA
+                    + " in " + resolve("").toAbsolutePath() + "; restore it or its .bak before starting"));
+        }
+
+        // Files written before ids were checked may hold ones the ledger cannot record.
+        private static List<Candidate> withValidIds(List<Candidate> candidates) {
+            candidates.removeIf(c -> {
+                if (VoteLedger.isValidId(c.getId()))
+                    return false;
+                System.err.println("Skipping candidate with an invalid ID: " + c.getId());
+                return true;
+            });
+            return candidates;
+        }
+
+        // Keeps a damaged file for inspection without letting the next save overwrite it.
+        static void quarantine(Path file) {
+            Path aside = file.resolveSibling(file.getFileName() + ".corrupt-" + System.currentTimeMillis());
+            try {
+                Files.move(file, aside);
+                System.err.println("Moved " + file.getFileName() + " aside to " + aside.getFileName());
+            } catch (IOException e) {
+                System.err.println("Error moving " + file.getFileName() + " aside: " + e.getMessage());
+            }
+        }
+
+        public static List<Candidate> readCandidatesText() {
+            List<Candidate> candidates = new ArrayList<>();
+            try (BufferedReader br = new BufferedReader(new FileReader(resolve(CANDIDATE_FILE).toFile()))) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    String[] parts = line.split(",");
+                    if (parts.length < 9)
+                        continue;
+                    Candidate candidate = new Candidate(parts[0], parts[1], parts[2], parts[3], parts[4], parts[5],
+                            parts[6]);
+                    candidate.setManifesto(parts[7]);
+                    try {
+                        int votes = Integer.parseInt(parts[8]);
+                        candidate.setVotes(votes);
+                    } catch (NumberFormatException nfe) {
+                    }
+                    candidates.add(candidate);
+                }
+            } catch (IOException e) {
+                System.err.println("Error reading candidate file: " + e.getMessage());
+            }
+            return withValidIds(candidates);
+        }
+
+        public static List<Voter> readVoters() {
+            List<Voter> voters = new ArrayList<>();
+            try (VoterRoll roll = openVoterRoll()) {
+                roll.forEachBatch((chunk, bytesDone, bytesTotal) -> voters.addAll(chunk));
+            } catch (IOException e) {
+                System.err.println("Error reading voter file: " + e.getMessage());
+            }
+            return voters;
+        }
+
+        // Maps voter.dat as a fixed-width roll. A legacy voter.txt or version 1
+        // voter.dat is converted first; with neither, an empty roll is created.
+        public static VoterRoll openVoterRoll() throws IOException {
+            Path data = resolve(VOTER_DATA);
+            long start = System.nanoTime();
+            if (Files.exists(data) && BinaryFormat.peekVersion(data) == VoterRoll.VERSION) {
+                VoterRoll roll = VoterRoll.open(data);
+                Metrics.fileRead(VOTER_DATA, System.nanoTime() - start, Files.size(data));
+                return roll;
+            }
+            List<Voter> legacy = new ArrayList<>();
+            if (Files.exists(data))
+                BinaryFormat.readVoters(data, (chunk, bytesDone, bytesTotal) -> legacy.addAll(chunk));
+            else if (Files.exists(resolve(VOTER_FILE)))
+                VoterLoader.load(resolve(VOTER_FILE), (chunk, bytesDone, bytesTotal) -> legacy.addAll(chunk));
+            // The roll is indexed by id, so legacy duplicates are dropped here,
+            // as are ids the ledger cannot record
+            Set<String> ids = new HashSet<>();
+            legacy.removeIf(v -> {
+                if (!VoteLedger.isValidId(v.getId())) {
+                    System.err.println("Skipping voter with an invalid ID: " + v.getId());
+                    return true;
+                }
+                if (ids.add(v.getId()))
+                    return false;
+                System.err.println("Skipping duplicate voter ID: " + v.getId());
+                return true;
+            });
+            VoterRoll.write(data, legacy);
+            return VoterRoll.open(data);
+        }
+
+        // Replaces candidate.dat atomically; the previous copy is renamed to
+        // candidate.dat.bak in case the new one is damaged later. Returns
+        // false if the file could not be written.
+        public static boolean writeCandidates(List<Candidate> candidates) {
+            Path data = resolve(CANDIDATE_DATA);
+            long start = System.nanoTime();
+            try {
+                BinaryFormat.writeCandidates(data, resolve(CANDIDATE_DATA + ".bak"), candidates);
+                Metrics.fileWrite(CANDIDATE_DATA, System.nanoTime() - start, Files.size(data));
+                return true;
+            } catch (IOException e) {
+                System.err.println("Error writing candidate file: " + e.getMessage());
+                return false;
+            }
+        }
+
+        // Rewrites the whole roll; a running Admin updates its open roll in place instead.
+        public static void writeVoters(List<Voter> voters) {
+            long start = System.nanoTime();
+            try {
+                VoterRoll.write(resolve(VOTER_DATA), voters);
+                Metrics.fileWrite(VOTER_DATA, System.nanoTime() - start, Files.size(resolve(VOTER_DATA)));
+            } catch (IOException e) {
+                System.err.println("Error writing voter file: " + e.getMessage());
+            }
+        }
+
+        // Converts candidate.txt and voter.txt to the binary format and keeps
+        // the originals as *.txt.bak. Returns false if anything went wrong.
+        public static boolean migrateTextFiles() {
+            Path candidateText = resolve(CANDIDATE_FILE);
+            Path voterText = resolve(VOTER_FILE);
+            if (!Files.exists(candidateText) && !Files.exists(voterText)) {
+                System.err.println("No candidate.txt or voter.txt to migrate in " + resolve("").toAbsolutePath());
+                return false;
+            }
+            try {
+                if (Files.exists(candidateText)) {
+                    List<Candidate> candidates = readCandidatesText();
+                    BinaryFormat.writeCandidates(resolve(CANDIDATE_DATA), candidates);
+                    if (BinaryFormat.readCandidates(resolve(CANDIDATE_DATA)).size() != candidates.size())
+                        throw new IOException("candidate.dat does not match candidate.txt");
+                    Files.move(candidateText, resolve(CANDIDATE_FILE + ".bak"), StandardCopyOption.REPLACE_EXISTING);
+                    System.out.println("Migrated " + candidates.size() + " candidates to " + CANDIDATE_DATA);
+                }
+                if (Files.exists(voterText)) {
+                    List<Voter> voters = new ArrayList<>();
+                    VoterLoader.load(voterText, (chunk, bytesDone, bytesTotal) -> voters.addAll(chunk));
+                    VoterRoll.write(resolve(VOTER_DATA), voters);
+                    try (VoterRoll roll = VoterRoll.open(resolve(VOTER_DATA))) {
+                        if (roll.size() != voters.size())
+                            throw new IOException("voter.dat does not match voter.txt");
+                    }
+                    Files.move(voterText, resolve(VOTER_FILE + ".bak"), StandardCopyOption.REPLACE_EXISTING);
+                    System.out.println("Migrated " + voters.size() + " voters to " + VOTER_DATA);
+                }
+                return true;
+            } catch (IOException e) {
+                System.err.println("Error migrating text files: " + e.getMessage());
+                return false;
+            }
+        }
+    }
+
+    // Replaces a whole file so that a crash leaves either the old contents
+    // or the new ones, never a truncated mix: the data is written to
+    // <file>.tmp, forced to disk, renamed over the file, and the directory
+    // is forced so the rename itself survives a power cut.
+    static class AtomicFile {
+        interface Contents {
+            void writeTo(OutputStream out) throws IOException;
+        }
+
+        public static void write(Path file, Contents contents) throws IOException {
+            write(file, null, contents);
+        }
+
+        // With a backup path the old file is renamed to it once the new
+        // contents are on disk, instead of being copied before every write.
+        // A crash between the two renames leaves only the backup, which the
+        // reader falls back to.
+        public static void write(Path file, Path backup, Contents contents) throws IOException {
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileOutputStream fos = new FileOutputStream(tmp.toFile())) {
+                // Writers close their stream when done; the descriptor has to stay open for the sync
+                contents.writeTo(new FilterOutputStream(fos) {
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        out.write(b, off, len);
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        flush();
+                    }
+                });
+                fos.getFD().sync();
+            } catch (IOException e) {
+                Files.deleteIfExists(tmp);
+                throw e;
+            }
+            if (backup != null && Files.exists(file))
+                Files.move(file, backup, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory(file);
+        }
+
+        // Not every platform lets a directory be opened; there the rename is as durable as it gets.
+        static void syncDirectory(Path file) {
+            try (FileChannel dir = FileChannel.open(file.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+                dir.force(true);
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    // Versioned binary record format for candidate.dat (and version 1 of
+    // voter.dat, now only read for conversion to the VoterRoll format).
+    //   header:    int magic, short version, int record count
+    //   voter:     name, id, byte hasVoted
+    //   candidate: name, place, id, party, symbol, assets, criminalCases, manifesto, int votes
+    //   trailer:   int CRC32 of everything before it (candidate.dat version 2)
+    // Strings are a varint byte length followed by UTF-8 bytes, so commas and
+    // line breaks in a manifesto survive a round trip. Ints are big-endian.
+    static class BinaryFormat {
+        static final int VOTER_MAGIC = 0x454D5356; // "EMSV"
+        static final int CANDIDATE_MAGIC = 0x454D5343; // "EMSC"
+        static final short VERSION = 1;
+        static final short CANDIDATE_VERSION = 2;
+        private static final int BATCH_SIZE = 1 << 16;
+
+        public static int peekVersion(Path file) throws IOException {
+            try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+                in.readInt();
+                return in.readShort();
+            } catch (EOFException e) {
+                return -1;
+            }
+        }
+
+        // Voters are handed over in batches so callers can report progress.
+        public static void readVoters(Path file, VoterLoader.ChunkSink sink) throws IOException {
+            long size = Files.size(file);
+            try (RecordReader in = new RecordReader(Files.newInputStream(file))) {
+                int count = in.readHeader(VOTER_MAGIC, VERSION, file);
+                List<Voter> batch = new ArrayList<>(Math.min(count, BATCH_SIZE));
+                for (int i = 0; i < count; i++) {
+                    Voter v = new Voter(in.readString(), in.readString());
+                    if (in.readByte() != 0)
+                        v.setVoted();
+                    batch.add(v);
+                    if (batch.size() == BATCH_SIZE) {
+                        sink.accept(batch, size * (i + 1) / count, size);
+                        batch = new ArrayList<>(BATCH_SIZE);
+                    }
+                }
+                sink.accept(batch, size, size);
+            }
+        }
+
+        public static void writeCandidates(Path file, List<Candidate> candidates) throws IOException {
+            writeCandidates(file, null, candidates);
+        }
+
+        public static void writeCandidates(Path file, Path backup, List<Candidate> candidates) throws IOException {
+            List<Candidate> snapshot = new ArrayList<>(candidates);
+            AtomicFile.write(file, backup, stream -> writeCandidates(stream, snapshot));
+        }
+
+        // Closes stream when done.
+        public static void writeCandidates(OutputStream stream, List<Candidate> candidates) throws IOException {
+            try (RecordWriter out = new RecordWriter(stream)) {
+                out.writeHeader(CANDIDATE_MAGIC, CANDIDATE_VERSION, candidates.size());
+                for (Candidate c : candidates) {
+                    out.writeString(c.getName());
+                    out.writeString(c.getPlace());
+                    out.writeString(c.getId());
+                    out.writeString(c.getParty());
+                    out.writeString(c.getSymbol());
+                    out.writeString(c.getAssets());
+                    out.writeString(c.getCriminalCases());
+                    out.writeString(c.getManifesto());
+                    out.writeInt(c.getVotes());
+                }
+                out.writeChecksum();
+            }
+        }
+
+        public static List<Candidate> readCandidates(Path file) throws IOException {
+            return readCandidates(Files.newInputStream(file), file);
+        }
+
+        // file names the source in error messages.
+        public static List<Candidate> readCandidates(InputStream stream, Path file) throws IOException {
+            try (RecordReader in = new RecordReader(stream)) {
+                int count = in.readHeader(CANDIDATE_MAGIC, CANDIDATE_VERSION, file);
+                List<Candidate> candidates = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    Candidate c = new Candidate(in.readString(), in.readString(), in.readString(), in.readString(),
+                            in.readString(), in.readString(), in.readString());
+                    c.setManifesto(in.readString());
+                    c.setVotes(in.readInt());
+                    candidates.add(c);
+                }
+                if (in.version() >= 2)
+                    in.verifyChecksum(file);
+                return candidates;
+            }
+        }
+    }
+
+    // Unsynchronized buffered encoder for BinaryFormat; ASCII strings are
+    // copied straight into the buffer without an intermediate byte[].
+    static class RecordWriter implements Closeable {
+        private final OutputStream out;
+        private final byte[] buf = new byte[1 << 16];
+        private final CRC32 crc = new CRC32();
+        private int pos;
+
+        RecordWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        void writeHeader(int magic, short version, int count) throws IOException {
+            writeInt(magic);
+            ensure(2);
+            buf[pos++] = (byte) (version >>> 8);
+            buf[pos++] = (byte) version;
+            writeInt(count);
+        }
+
+        // Appends the CRC32 of every byte written so far.
+        void writeChecksum() throws IOException {
+            flushBuffer();
+            writeInt((int) crc.getValue());
+        }
+
+        void writeByte(int b) throws IOException {
+            ensure(1);
+            buf[pos++] = (byte) b;
+        }
+
+        void writeInt(int v) throws IOException {
+            ensure(4);
+            buf[pos++] = (byte) (v >>> 24);
+            buf[pos++] = (byte) (v >>> 16);
+            buf[pos++] = (byte) (v >>> 8);
+            buf[pos++] = (byte) v;
+        }
+
+        void writeVarInt(int v) throws IOException {
+            ensure(5);
+            while ((v & ~0x7F) != 0) {
+                buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+
+        void writeString(String s) throws IOException {
+            int len = s.length();
+            boolean ascii = true;
+            for (int i = 0; i < len && ascii; i++) {
+                ascii = s.charAt(i) < 0x80;
+            }
+            if (ascii && len <= buf.length - 5) {
+                writeVarInt(len);
+                ensure(len);
+                for (int i = 0; i < len; i++) {
+                    buf[pos++] = (byte) s.charAt(i);
+                }
+                return;
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length);
+            flushBuffer();
+            crc.update(bytes);
+            out.write(bytes);
+        }
+
+        private void ensure(int n) throws IOException {
+            if (buf.length - pos < n)
+                flushBuffer();
+        }
+
+        private void flushBuffer() throws IOException {
+            crc.update(buf, 0, pos);
+            out.write(buf, 0, pos);
+            pos = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flushBuffer();
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    // Counterpart of RecordWriter; strings are decoded straight from the buffer.
+    static class RecordReader implements Closeable {
+        private final InputStream in;
+        private byte[] buf = new byte[1 << 16];
+        private final CRC32 crc = new CRC32();
+        // buf[0..checked) has been added to crc
+        private int checked;
+        private int pos;
+        private int limit;
+        private int version;
+
+        RecordReader(InputStream in) {
+            this.in = in;
+        }
+
+        // Checks magic and version (1 up to maxVersion); returns the record count.
+        int readHeader(int magic, int maxVersion, Path file) throws IOException {
+            if (readInt() != magic)
+                throw new IOException(file.getFileName() + " is not an election data file");
+            require(2);
+            version = (short) (((buf[pos] & 0xFF) << 8) | (buf[pos + 1] & 0xFF));
+            pos += 2;
+            if (version < BinaryFormat.VERSION || version > maxVersion)
+                throw new IOException(file.getFileName() + " has unsupported format version " + version);
+            return readInt();
+        }
+
+        int version() {
+            return version;
+        }
+
+        // Reads the trailing CRC32 and compares it with every byte read before it.
+        void verifyChecksum(Path file) throws IOException {
+            crc.update(buf, checked, pos - checked);
+            checked = pos;
+            if (readInt() != (int) crc.getValue())
+                throw new IOException(file.getFileName() + " is corrupt (checksum mismatch)");
+        }
+
+        int readByte() throws IOException {
+            require(1);
+            return buf[pos++];
+        }
+
+        int readInt() throws IOException {
+            require(4);
+            int v = ((buf[pos] & 0xFF) << 24) | ((buf[pos + 1] & 0xFF) << 16) | ((buf[pos + 2] & 0xFF) << 8)
+                    | (buf[pos + 3] & 0xFF);
+            pos += 4;
+            return v;
+        }
+
+        int readVarInt() throws IOException {
+            int v = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                v |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return v;
+            }
+            throw new IOException("Corrupt varint");
+        }
+
+        String readString() throws IOException {
+            int len = readVarInt();
+            if (len < 0)
+                throw new IOException("Corrupt string length " + len);
+            require(len);
+            String s = new String(buf, pos, len, StandardCharsets.UTF_8);
+            pos += len;
+            return s;
+        }
+
+        // Makes n bytes available at buf[pos..], growing the buffer for long strings
+        private void require(int n) throws IOException {
+            if (limit - pos >= n)
+                return;
+            if (n > buf.length)
+                buf = Arrays.copyOf(buf, Math.max(n, buf.length * 2));
+            crc.update(buf, checked, pos - checked);
+            checked = 0;
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+            while (limit < n) {
+                int r = in.read(buf, limit, buf.length - limit);
+                if (r < 0)
+                    throw new EOFException("Truncated election data file");
+                limit += r;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    // Memory-mapped, fixed-width voter roll (voter.dat, format version 2).
+    //   header (32 bytes): int magic, short version, int count, short nameWidth, short idWidth,
+    //                      int CRC32 of the 14 bytes before it
+    //   record:            byte hasVoted, short nameLen, name[nameWidth], short idLen, id[idWidth]
+    // Every record has the same size, so voter i lives at a known offset: a
+    // vote flips one byte in place and registration appends one record.
+    // The file is mapped in fixed-size segments, so the roll does not have to
+    // fit in the heap. Dirty segments are forced to disk every
+    // -Delection.rollSyncMillis ms (default 1000; 0 forces after every write).
+    static class VoterRoll implements Closeable {
+        static final short VERSION = 2;
+        static final int HEADER_SIZE = 32;
+        static final int COUNT_OFFSET = 6;
+        private static final int CHECKSUM_OFFSET = 14;
+        private static final int DEFAULT_NAME_WIDTH = 62;
+        private static final int DEFAULT_ID_WIDTH = 31;
+        private static final long SEGMENT_BYTES = 64L << 20;
+
+        private final FileChannel channel;
+        private final MappedByteBuffer header;
+        private final int nameWidth;
+        private final int idWidth;
+        private final int recordSize;
+        private final int recordsPerSegment;
+        private final List<MappedByteBuffer> segments = new CopyOnWriteArrayList<>();
+        private final Set<Integer> dirtySegments = ConcurrentHashMap.newKeySet();
+        private final long syncMillis;
+        private final ScheduledExecutorService syncer;
+        private volatile int count;
+
+        private VoterRoll(FileChannel channel, int nameWidth, int idWidth) throws IOException {
+            this.channel = channel;
+            this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            this.nameWidth = nameWidth;
+            this.idWidth = idWidth;
+            this.recordSize = 1 + 2 + nameWidth + 2 + idWidth;
+            this.recordsPerSegment = (int) (SEGMENT_BYTES / recordSize);
+            this.count = header.getInt(COUNT_OFFSET);
+            this.syncMillis = Long.getLong("election.rollSyncMillis", 1000L);
+            if (syncMillis > 0) {
+                syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r, "voter-roll-sync");
+                    t.setDaemon(true);
+                    return t;
+                });
+                syncer.scheduleWithFixedDelay(this::sync, syncMillis, syncMillis, TimeUnit.MILLISECONDS);
+            } else {
+                syncer = null;
+            }
+        }
+
+        // Opening only maps the header; records are mapped segment by segment on first use.
+        public static VoterRoll open(Path file) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                ByteBuffer h = ByteBuffer.allocate(HEADER_SIZE);
+                while (h.hasRemaining() && channel.read(h, h.position()) > 0) {
+                }
+                if (h.position() < HEADER_SIZE || h.getInt(0) != BinaryFormat.VOTER_MAGIC)
+                    throw new IOException(file.getFileName() + " is not a voter roll");
+                if (h.getShort(4) != VERSION)
+                    throw new IOException(file.getFileName() + " has format version " + h.getShort(4)
+                            + ", expected " + VERSION);
+                // Rolls written before the checksum existed have 0 there; it is filled in below
+                int stored = h.getInt(CHECKSUM_OFFSET);
+                if (stored != 0 && stored != headerChecksum(h))
+                    throw new IOException(file.getFileName() + " has a corrupt header (checksum mismatch)");
+                VoterRoll roll = new VoterRoll(channel, h.getShort(10), h.getShort(12));
+                if (stored == 0)
+                    roll.header.putInt(CHECKSUM_OFFSET, headerChecksum(roll.header));
+                return roll;
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        // Writes a complete roll to a temporary file and renames it into place.
+        // Field widths grow to fit the longest name and id in the list.
+        public static void write(Path file, List<Voter> voters) throws IOException {
+            int n = voters.size();
+            int nameWidth = DEFAULT_NAME_WIDTH;
+            int idWidth = DEFAULT_ID_WIDTH;
+            for (int i = 0; i < n; i++) {
+                nameWidth = Math.max(nameWidth, utf8Length(voters.get(i).getName()));
+                idWidth = Math.max(idWidth, utf8Length(voters.get(i).getId()));
+            }
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer h = ByteBuffer.allocate(HEADER_SIZE);
+                h.putInt(BinaryFormat.VOTER_MAGIC).putShort(VERSION).putInt(n).putShort((short) nameWidth)
+                        .putShort((short) idWidth).putInt(0);
+                h.putInt(CHECKSUM_OFFSET, headerChecksum(h));
+                h.clear();
+                channel.write(h, 0);
+                int recordSize = 1 + 2 + nameWidth + 2 + idWidth;
+                ByteBuffer out = ByteBuffer.allocate(Math.max(recordSize, 1 << 16) / recordSize * recordSize);
+                long position = HEADER_SIZE;
+                for (int i = 0; i < n; i++) {
+                    if (out.remaining() < recordSize) {
+                        position += flush(channel, out, position);
+                    }
+                    encode(out, voters.get(i), nameWidth, idWidth);
+                }
+                flush(channel, out, position);
+                channel.force(true);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            AtomicFile.syncDirectory(file);
+        }
+
+        // Bytes per record for the field widths in a roll header.
+        static int recordSize(ByteBuffer header) {
+            return 1 + 2 + header.getShort(10) + 2 + header.getShort(12);
+        }
+
+        private static int headerChecksum(ByteBuffer h) {
+            CRC32 crc = new CRC32();
+            crc.update(h.duplicate().position(0).limit(CHECKSUM_OFFSET));
+            return (int) crc.getValue();
+        }
+
+        public int size() {
+            return count;
+        }
+
+        // Materializes voters in batches for the in-memory registry; each
+        // Voter remembers its record index for in-place updates.
+        public void forEachBatch(VoterLoader.ChunkSink sink) throws IOException {
+            int n = count;
+            long total = HEADER_SIZE + (long) n * recordSize;
+            byte[] nameBuf = new byte[nameWidth];
+            byte[] idBuf = new byte[idWidth];
+            List<Voter> batch = new ArrayList<>(Math.min(n, 1 << 16));
+            for (int i = 0; i < n; i++) {
+                MappedByteBuffer seg = segment(i);
+                int off = (i % recordsPerSegment) * recordSize;
+                boolean voted = seg.get(off) != 0;
+                int nameLen = seg.getShort(off + 1);
+                seg.get(off + 3, nameBuf, 0, nameLen);
+                int idOff = off + 3 + nameWidth;
+                int idLen = seg.getShort(idOff);
+                seg.get(idOff + 2, idBuf, 0, idLen);
+                Voter v = new Voter(new String(nameBuf, 0, nameLen, StandardCharsets.UTF_8),
+                        new String(idBuf, 0, idLen, StandardCharsets.UTF_8));
+                if (voted)
+                    v.setVoted();
+                v.setRollIndex(i);
+                batch.add(v);
+                if (batch.size() == 1 << 16) {
+                    sink.accept(batch, HEADER_SIZE + (long) (i + 1) * recordSize, total);
+                    batch = new ArrayList<>(1 << 16);
+                }
+            }
+            sink.accept(batch, total, total);
+        }
+
+        public boolean isVoted(int index) {
+            return segment(index).get((index % recordsPerSegment) * recordSize) != 0;
+        }
+
+        public String name(int index) {
+            MappedByteBuffer seg = segment(index);
+            int off = (index % recordsPerSegment) * recordSize + 1;
+            byte[] bytes = new byte[seg.getShort(off)];
+            seg.get(off + 2, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        public String id(int index) {
+            MappedByteBuffer seg = segment(index);
+            int off = (index % recordsPerSegment) * recordSize + 3 + nameWidth;
+            byte[] bytes = new byte[seg.getShort(off)];
+            seg.get(off + 2, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        // True if the name or the id starts with prefix, ignoring ASCII case;
+        // prefix must already be lower case. Compared in the mapping, so a
+        // search over the roll creates no Strings.
+        public boolean startsWith(int index, byte[] prefix) {
+            MappedByteBuffer seg = segment(index);
+            int off = (index % recordsPerSegment) * recordSize + 1;
+            return fieldStartsWith(seg, off, prefix) || fieldStartsWith(seg, off + 2 + nameWidth, prefix);
+        }
+
+        private static boolean fieldStartsWith(MappedByteBuffer seg, int off, byte[] prefix) {
+            if (seg.getShort(off) < prefix.length)
+                return false;
+            for (int k = 0; k < prefix.length; k++) {
+                byte b = seg.get(off + 2 + k);
+                if (b >= 'A' && b <= 'Z')
+                    b += 'a' - 'A';
+                if (b != prefix[k])
+                    return false;
+            }
+            return true;
+        }
+
+        // Same value as hashId(id(index).getBytes(UTF_8)), read straight from the mapping.
+        public int idHash(int index) {
+            MappedByteBuffer seg = segment(index);
+            int off = (index % recordsPerSegment) * recordSize + 3 + nameWidth;
+            int len = seg.getShort(off);
+            int h = 0;
+            for (int k = 0; k < len; k++) {
+                h = 31 * h + seg.get(off + 2 + k);
+            }
+            return mix(h);
+        }
+
+        public boolean idEquals(int index, byte[] id) {
+            return idEquals(index, id, 0, id.length);
+        }
+
+        public boolean idEquals(int index, byte[] buf, int from, int len) {
+            MappedByteBuffer seg = segment(index);
+            int off = (index % recordsPerSegment) * recordSize + 3 + nameWidth;
+            if (seg.getShort(off) != len)
+                return false;
+            for (int k = 0; k < len; k++) {
+                if (seg.get(off + 2 + k) != buf[from + k])
+                    return false;
+            }
+            return true;
+        }
+
+        public boolean sameId(int a, int b) {
+            MappedByteBuffer segA = segment(a);
+            MappedByteBuffer segB = segment(b);
+            int offA = (a % recordsPerSegment) * recordSize + 3 + nameWidth;
+            int offB = (b % recordsPerSegment) * recordSize + 3 + nameWidth;
+            int len = segA.getShort(offA);
+            if (segB.getShort(offB) != len)
+                return false;
+            for (int k = 0; k < len; k++) {
+                if (segA.get(offA + 2 + k) != segB.get(offB + 2 + k))
+                    return false;
+            }
+            return true;
+        }
+
+        public static int hashId(byte[] id) {
+            return hashId(id, 0, id.length);
+        }
+
+        public static int hashId(byte[] buf, int off, int len) {
+            int h = 0;
+            for (int k = off; k < off + len; k++) {
+                h = 31 * h + buf[k];
+            }
+            return mix(h);
+        }
+
+        // Murmur3 finalizer, so sequential ids spread over the low bits
+        private static int mix(int h) {
+            h ^= h >>> 16;
+            h *= 0x85ebca6b;
+            h ^= h >>> 13;
+            h *= 0xc2b2ae35;
+            return h ^ (h >>> 16);
+        }
+
+        // Flips one byte in place.
+        public void setVoted(int index, boolean voted) {
+            segment(index).put((index % recordsPerSegment) * recordSize, (byte) (voted ? 1 : 0));
+            written(index / recordsPerSegment);
+        }
+
+        // Appends one record and returns its index, or -1 if the name or id
+        // does not fit this roll's field widths.
+        public synchronized int append(Voter voter) {
+            if (utf8Length(voter.getName()) > nameWidth || utf8Length(voter.getId()) > idWidth)
+                return -1;
+            int index = count;
+            ByteBuffer record = ByteBuffer.allocate(recordSize);
+            encode(record, voter, nameWidth, idWidth);
+            segment(index).put((index % recordsPerSegment) * recordSize, record.array());
+            written(index / recordsPerSegment);
+            // Count last, so a crash mid-append never exposes a half-written record
+            count = index + 1;
+            header.putInt(COUNT_OFFSET, count);
+            header.putInt(CHECKSUM_OFFSET, headerChecksum(header));
+            if (syncMillis <= 0)
+                header.force();
+            return index;
+        }
+
+        private void written(int seg) {
+            if (syncMillis <= 0)
+                segments.get(seg).force();
+            else
+                dirtySegments.add(seg);
+        }
+
+        public void sync() {
+            for (Integer seg : dirtySegments) {
+                dirtySegments.remove(seg);
+                segments.get(seg).force();
+            }
+            header.force();
+        }
+
+        // Returns the mapped segment holding record index. Full segments are
+        // mapped at SEGMENT_BYTES; the last one only covers the file plus
+        // room to grow, and is remapped larger when an append outgrows it.
+        private MappedByteBuffer segment(int index) {
+            int seg = index / recordsPerSegment;
+            long needed = (long) (index % recordsPerSegment + 1) * recordSize;
+            if (seg < segments.size() && segments.get(seg).capacity() >= needed)
+                return segments.get(seg);
+            synchronized (segments) {
+                try {
+                    long full = (long) recordsPerSegment * recordSize;
+                    for (int s = 0; s <= seg; s++) {
+                        long start = HEADER_SIZE + s * full;
+                        long want = s < seg ? full : needed;
+                        if (s < segments.size() && segments.get(s).capacity() >= want)
+                            continue;
+                        long length = Math.min(full, Math.max(channel.size() - start, Math.max(want, want * 2)));
+                        MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, start, length);
+                        if (s < segments.size())
+                            segments.set(s, buf);
+                        else
+                            segments.add(buf);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Error mapping voter roll", e);
+                }
+                return segments.get(seg);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (syncer != null)
+                syncer.shutdownNow();
+            sync();
+            channel.close();
+        }
+
+        private static void encode(ByteBuffer out, Voter v, int nameWidth, int idWidth) {
+            byte[] name = v.getName().getBytes(StandardCharsets.UTF_8);
+            byte[] id = v.getId().getBytes(StandardCharsets.UTF_8);
+            int start = out.position();
+            out.put((byte) (v.hasVoted() ? 1 : 0));
+            out.putShort((short) name.length).put(name);
+            out.position(start + 3 + nameWidth);
+            out.putShort((short) id.length).put(id);
+            out.position(start + 3 + nameWidth + 2 + idWidth);
+        }
+
+        private static long flush(FileChannel channel, ByteBuffer out, long position) throws IOException {
+            out.flip();
+            long written = 0;
+            while (out.hasRemaining()) {
+                written += channel.write(out, position + written);
+            }
+            out.clear();
+            // Zero the reused buffer so field padding stays clean
+            Arrays.fill(out.array(), (byte) 0);
+            return written;
+        }
+
+        private static int utf8Length(String s) {
+            return s.getBytes(StandardCharsets.UTF_8).length;
+        }
+    }
+
+    // Append-only vote ledger. Every accepted ballot is appended as
+    // "seq,voterId,candidateId,timestamp,chainHash" to the current ledger
+    // segment and group-committed (one fsync covers every ballot written
+    // before it). Every COMPACT_EVERY ballots the current segment is sealed
+    // and folded into vote_snapshot.txt in the background, then archived and
+    // checkpointed in the ballot chain (see BallotChain).
+    static class VoteLedger {
+        static final String SNAPSHOT_FILE = "vote_snapshot.txt";
+        private static final String SEGMENT_PREFIX = "vote_ledger.";
+        private static final String SEGMENT_SUFFIX = ".log";
+        // Compacted segments are kept here so the election can be recounted from its ballots
+        private static final String ARCHIVE_PREFIX = "vote_archive.";
+        // Votes carried over from the legacy text files, which have no ballot records
+        private static final String BASELINE_FILE = "vote_baseline.txt";
+        private static final int COMPACT_EVERY = 10000;
+        // "%019d,%64s,%08x\n": seq, its chain hash and the CRC32C of the rest of the file
+        private static final int SNAPSHOT_HEADER_BYTES = 94;
+
+        private final Object writeLock = new Object();
+        private final Object syncLock = new Object();
+        private final AtomicBoolean compacting = new AtomicBoolean();
+        private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "vote-ledger-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+        private final MessageDigest digest = BallotChain.sha256();
+        private FileChannel channel;
+        // Chain hash of the last record written
+        private byte[] head;
+        private long nextSeq;
+        private volatile long writtenSeq;
+        private long durableSeq;
+        // Records up to here were written before a force that failed; they are never confirmed
+        private long failedSeq;
+        private volatile long snapshotSeq;
+
+        // Ids are fields of comma-separated ledger and snapshot records, so
+        // they may not be empty or hold a comma or line break.
+        static boolean isValidId(String id) {
+            if (id == null || id.isEmpty())
+                return false;
+            for (int i = 0; i < id.length(); i++) {
+                char ch = id.charAt(i);
+                if (ch == ',' || ch == '\r' || ch == '\n')
+                    return false;
+            }
+            return true;
+        }
+
+        private VoteLedger(long lastSeq, long snapshotSeq) throws IOException {
+            this.head = BallotChain.hashAt(lastSeq);
+            this.nextSeq = lastSeq;
+            this.writtenSeq = lastSeq;
+            this.durableSeq = lastSeq;
+            this.snapshotSeq = snapshotSeq;
+            this.channel = openSegment(lastSeq + 1);
+        }
+
+        // Rebuilds Candidate.votes and Voter.hasVoted from the latest snapshot
+        // plus the ledger tail, then opens a fresh segment for new ballots.
+        // A snapshot that cannot be read is rebuilt from the baseline and
+        // every ballot record, and the damaged one moved aside; if the
+        // records have a gap, startup stops and the file is left as it is.
+        public static VoteLedger open(CandidateRegistry candidateRegistry, VoterRegistry voterRegistry) {
+            long snapshotSeq = 0;
+            Path snapshot = FileHandler.resolve(SNAPSHOT_FILE);
+            boolean hasSnapshot = Files.exists(snapshot);
+            boolean rebuild = false;
+            if (hasSnapshot) {
+                Map<String, Integer> votes = new LinkedHashMap<>();
+                Set<String> voted = new HashSet<>();
+                byte[][] head = { null };
+                try {
+                    snapshotSeq = readSnapshot(snapshot, votes, voted, head);
+                    checkChain(snapshotSeq, head[0]);
+                } catch (IOException e) {
+                    System.err.println("Error reading vote snapshot, rebuilding it from the ballot records: "
+                            + e.getMessage());
+                    rebuild = true;
+                    snapshotSeq = 0;
+                    votes.clear();
+                    voted.clear();
+                    Path baseline = baselineFile();
+                    try {
+                        if (baseline != null)
+                            readSnapshot(baseline, votes, voted);
+                    } catch (IOException be) {
+                        throw new UncheckedIOException("Vote snapshot and baseline are both unreadable", be);
+                    }
+                }
+                for (Candidate c : candidateRegistry.asList()) {
+                    c.setVotes(votes.getOrDefault(c.getId(), 0));
+                }
+                voterRegistry.clearAllVoted();
+                for (String voterId : voted) {
+                    int index = voterRegistry.indexOf(voterId);
+                    if (index >= 0)
+                        voterRegistry.markVoted(index);
+                }
+            }
+
+            long lastSeq = snapshotSeq;
+            long replayFrom = snapshotSeq;
+            // A rebuild replays the archive too, and every seq from 1 has to be there
+            long[] expected = { 1 };
+            for (Path segment : rebuild ? ballotFiles() : listSegments()) {
+                lastSeq = Math.max(lastSeq, forEachRecord(segment, (seq, voterId, candidateId) -> {
+                    if (seq <= replayFrom)
+                        return;
+                    if (seq != expected[0])
+                        expected[0] = -1;
+                    else
+                        expected[0]++;
+                    int index = voterRegistry.indexOf(voterId);
+                    Candidate c = candidateRegistry.findById(candidateId);
+                    if (index >= 0 && c != null && voterRegistry.markVoted(index)) {
+                        c.incrementVote();
+                    }
+                }));
+            }
+            if (rebuild && expected[0] < 0)
+                throw new UncheckedIOException(new IOException("Vote snapshot is unreadable and the ballot records "
+                        + "have gaps, so it cannot be rebuilt; restore the election from a snapshot"));
+            if (rebuild)
+                FileHandler.quarantine(snapshot);
+
+            try {
+                VoteLedger ledger = new VoteLedger(lastSeq, snapshotSeq);
+                if (!hasSnapshot || rebuild) {
+                    // First run on legacy text files: their vote columns become the base snapshot.
+                    // After a rebuild the tallies replayed above are written out the same way
+                    Map<String, Integer> votes = new LinkedHashMap<>();
+                    for (Candidate c : candidateRegistry.asList()) {
+                        votes.put(c.getId(), c.getVotes());
+                    }
+                    Set<String> voted = new LinkedHashSet<>();
+                    for (int i = 0; i < voterRegistry.size(); i++) {
+                        if (voterRegistry.isVoted(i))
+                            voted.add(voterRegistry.idAt(i));
+                    }
+                    if (!hasSnapshot && lastSeq == 0)
+                        writeSnapshotFile(FileHandler.resolve(BASELINE_FILE), votes, voted, 0, BallotChain.GENESIS);
+                    ledger.writeSnapshot(votes, voted, lastSeq);
+                }
+                return ledger;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error opening vote ledger", e);
+            }
+        }
+
+        // The snapshot has to end where the ballot chain does at its seq, so
+        // it cannot be swapped for one from another ledger or another point
+        // in this one. Throws IOException if it does not (the snapshot is
+        // rebuilt). A record whose hash does not match its text has been
+        // edited, and startup stops with UncheckedIOException; any other
+        // failure, such as a missing seq or a record without a hash, is
+        // reported with its seq and the snapshot is trusted as it is.
+        private static void checkChain(long seq, byte[] head) throws IOException {
+            if (head == null)
+                return;
+            BallotChain.BlockResult chain = BallotChain.verifyThrough(seq);
+            if (chain.tampered)
+                throw new UncheckedIOException(new IOException("The ballot chain does not verify through seq " + seq
+                        + " (" + chain.failures.get(0) + "); run verify to find the edited records"));
+            if (!chain.failures.isEmpty() || chain.lastSeq != seq) {
+                System.err.println("The ballot chain could not be checked through seq " + seq + " ("
+                        + (chain.failures.isEmpty() ? "it ends at seq " + chain.lastSeq : chain.failures.get(0))
+                        + "); run verify for the full report");
+                return;
+            }
+            if (!Arrays.equals(chain.head, head))
+                throw new IOException(SNAPSHOT_FILE + " does not match the ballot chain at seq " + seq);
+        }
+
+        // Appends one ballot and returns once it is durable on disk, or -1 if
+        // it could not be written or forced.
+        public long append(String voterId, String candidateId) {
+            long seq;
+            synchronized (writeLock) {
+                seq = nextSeq + 1;
+                byte[] text = (seq + "," + voterId + "," + candidateId + "," + System.currentTimeMillis())
+                        .getBytes(StandardCharsets.UTF_8);
+                byte[] hash = BallotChain.link(digest, head, text, 0, text.length);
+                try {
+                    ByteBuffer buf = ByteBuffer.allocate(text.length + 66);
+                    buf.put(text).put((byte) ',').put(BallotChain.hex(hash).getBytes(StandardCharsets.US_ASCII))
+                            .put((byte) '\n').flip();
+                    while (buf.hasRemaining()) {
+                        channel.write(buf);
+                    }
+                } catch (IOException e) {
+                    System.err.println("Error appending to vote ledger: " + e.getMessage());
+                    return -1;
+                }
+                head = hash;
+                nextSeq = seq;
+                writtenSeq = seq;
+            }
+            return sync(seq) ? seq : -1;
+        }
+
+        // Appends a whole batch with one write and one fsync and returns the
+        // last seq, or -1 if it could not be written. A failed write is
+        // truncated away so a partial batch is never replayed.
+        public long appendAll(String[] voterIds, String[] candidateIds, long[] times, int count) {
+            long seq;
+            synchronized (writeLock) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(count * 112);
+                StringBuilder sb = new StringBuilder(48);
+                byte[] hash = head;
+                seq = nextSeq;
+                for (int i = 0; i < count; i++) {
+                    sb.setLength(0);
+                    sb.append(++seq).append(',').append(voterIds[i]).append(',').append(candidateIds[i]).append(',')
+                            .append(times[i]);
+                    byte[] text = sb.toString().getBytes(StandardCharsets.UTF_8);
+                    hash = BallotChain.link(digest, hash, text, 0, text.length);
+                    out.write(text, 0, text.length);
+                    out.write(',');
+                    out.writeBytes(BallotChain.hex(hash).getBytes(StandardCharsets.US_ASCII));
+                    out.write('\n');
+                }
+                long start = -1;
+                try {
+                    start = channel.position();
+                    ByteBuffer buf = ByteBuffer.wrap(out.toByteArray());
+                    while (buf.hasRemaining()) {
+                        channel.write(buf);
+                    }
+                } catch (IOException e) {
+                    System.err.println("Error appending batch to vote ledger: " + e.getMessage());
+                    try {
+                        if (start >= 0)
+                            channel.truncate(start);
+                    } catch (IOException te) {
+                        System.err.println("Error truncating vote ledger: " + te.getMessage());
+                    }
+                    return -1;
+                }
+                head = hash;
+                nextSeq = seq;
+                writtenSeq = seq;
+            }
+            return sync(seq) ? seq : -1;
+        }
+
+        // Seq of the last ballot written.
+        public long lastSeq() {
+            return writtenSeq;
+        }
+
+        // The chain hash of the last ballot written, for publishing as a commitment.
+        public String headHash() {
+            synchronized (writeLock) {
+                return BallotChain.hex(head);
+            }
+        }
+
+        // Group commit: whichever thread gets the lock first forces every
+        // record written so far, and threads queued behind it return at once.
+        // If the force fails, every record it covered reports false.
+        private boolean sync(long seq) {
+            synchronized (syncLock) {
+                if (seq <= failedSeq)
+                    return false;
+                if (durableSeq >= seq)
+                    return true;
+                long target = writtenSeq;
+                try {
+                    channel.force(false);
+                    durableSeq = target;
+                    return true;
+                } catch (IOException e) {
+                    System.err.println("Error syncing vote ledger: " + e.getMessage());
+                    failedSeq = Math.max(failedSeq, target);
+                    return false;
+                }
+            }
+        }
+
+        // The snapshot is derived from the previous snapshot and the sealed
+        // segments only, so ballots being cast concurrently never leak into it.
+        public void compactIfNeeded() {
+            if (writtenSeq - snapshotSeq < COMPACT_EVERY || !compacting.compareAndSet(false, true))
+                return;
+            long seq;
+            try {
+                seq = seal();
+            } catch (IOException e) {
+                System.err.println("Error sealing vote ledger segment: " + e.getMessage());
+                compacting.set(false);
+                return;
+            }
+            compactor.execute(() -> {
+                try {
+                    fold(seq);
+                    BallotChain.checkpoint(seq);
+                } catch (IOException e) {
+                    System.err.println("Error compacting vote ledger: " + e.getMessage());
+                } finally {
+                    compacting.set(false);
+                }
+            });
+        }
+
+        // Seals and folds everything written so far before returning, waiting
+        // for a background compaction to finish first; returns the seq the
+        // snapshot file now covers.
+        public long compactNow() throws IOException {
+            while (!compacting.compareAndSet(false, true)) {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for compaction");
+                }
+            }
+            try {
+                if (writtenSeq == snapshotSeq)
+                    return snapshotSeq;
+                long seq = seal();
+                fold(seq);
+                BallotChain.checkpoint(seq);
+                return seq;
+            } finally {
+                compacting.set(false);
+            }
+        }
+
+        // Closes the current segment and starts a new one; returns the last sealed seq.
+        private long seal() throws IOException {
+            synchronized (writeLock) {
+                synchronized (syncLock) {
+                    channel.force(false);
+                    durableSeq = writtenSeq;
+                    channel.close();
+                    channel = openSegment(writtenSeq + 1);
+                    return writtenSeq;
+                }
+            }
+        }
+
+        private void fold(long seq) throws IOException {
+            Map<String, Integer> votes = new LinkedHashMap<>();
+            Set<String> voted = new LinkedHashSet<>();
+            long base = readSnapshot(FileHandler.resolve(SNAPSHOT_FILE), votes, voted);
+            for (Path segment : listSegments()) {
+                if (segmentStart(segment) > seq)
+                    continue;
+                forEachRecord(segment, (recordSeq, voterId, candidateId) -> {
+                    if (recordSeq > base && recordSeq <= seq && voted.add(voterId)) {
+                        votes.merge(candidateId, 1, Integer::sum);
+                    }
+                });
+            }
+            writeSnapshot(votes, voted, seq);
+        }
+
+        private void writeSnapshot(Map<String, Integer> votes, Set<String> voted, long seq) throws IOException {
+            writeSnapshotFile(FileHandler.resolve(SNAPSHOT_FILE), votes, voted, seq, BallotChain.hashAt(seq));
+            snapshotSeq = seq;
+            // Every segment that starts at or before seq is now covered by the snapshot
+            for (Path segment : listSegments()) {
+                if (segmentStart(segment) <= seq) {
+                    Files.move(segment, archivePath(segment), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+
+        private static void writeSnapshotFile(Path file, Map<String, Integer> votes, Set<String> voted, long seq,
+                                              byte[] head) throws IOException {
+            writeSnapshotFile(file, seq, head, out -> {
+                BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+                for (Map.Entry<String, Integer> e : votes.entrySet()) {
+                    bw.write("C," + e.getKey() + "," + e.getValue());
+                    bw.write('\n');
+                }
+                for (String voterId : voted) {
+                    bw.write("V," + voterId);
+                    bw.write('\n');
+                }
+                bw.flush();
+            });
+        }
+
+        // The body ("C,candidateId,votes" lines, then "V,voterId" lines) is
+        // written after a fixed-width header "seq,chainHash,crc32c": the
+        // chain hash of ballot seq, and the CRC32C of every byte after the
+        // header, which is filled in last.
+        static void writeSnapshotFile(Path file, long seq, byte[] head, AtomicFile.Contents body) throws IOException {
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                CRC32C crc = new CRC32C();
+                channel.position(SNAPSHOT_HEADER_BYTES);
+                OutputStream out = new CheckedOutputStream(Channels.newOutputStream(channel), crc);
+                body.writeTo(out);
+                out.flush();
+                ByteBuffer header = ByteBuffer.wrap(String.format("%019d,%s,%08x\n", seq, BallotChain.hex(head),
+                        crc.getValue()).getBytes(StandardCharsets.US_ASCII));
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+                channel.force(true);
+            } catch (IOException e) {
+                Files.deleteIfExists(tmp);
+                throw e;
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            AtomicFile.syncDirectory(file);
+        }
+
+        // The seq in a snapshot header line; files from before the checksum
+        // hold the seq alone, and those from before the chain hash "seq,crc32c".
+        static long headerSeq(String header) {
+            int comma = header.indexOf(',');
+            return Long.parseLong((comma < 0 ? header : header.substring(0, comma)).trim());
+        }
+
+        // Every file holding ballot records, archived segments first, in seq order.
+        static List<Path> ballotFiles() {
+            List<Path> files = listFiles(ARCHIVE_PREFIX);
+            files.addAll(listSegments());
+            return files;
+        }
+
+        // Null if the election started on the ledger, with no legacy votes to carry over.
+        static Path baselineFile() {
+            Path baseline = FileHandler.resolve(BASELINE_FILE);
+            return Files.exists(baseline) ? baseline : null;
+        }
+
+        // Reads a snapshot or baseline file and returns its seq. Throws if it
+        // is empty, fails its checksum or has a line that does not parse, so
+        // a damaged file is never taken for an election with fewer votes.
+        static long readSnapshot(Path snapshot, Map<String, Integer> votes, Set<String> voted) throws IOException {
+            return readSnapshot(snapshot, votes, voted, new byte[1][]);
+        }
+
+        // head[0] is set to the chain hash in the header, or null if the file has none.
+        static long readSnapshot(Path snapshot, Map<String, Integer> votes, Set<String> voted, byte[][] head)
+                throws IOException {
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(snapshot), 1 << 16)) {
+                ByteArrayOutputStream headerBytes = new ByteArrayOutputStream(SNAPSHOT_HEADER_BYTES);
+                int b;
+                while ((b = in.read()) >= 0 && b != '\n') {
+                    headerBytes.write(b);
+                }
+                if (b < 0)
+                    throw new IOException(snapshot.getFileName() + " is empty or truncated");
+                String header = headerBytes.toString(StandardCharsets.US_ASCII);
+                long seq = headerSeq(header);
+                String[] fields = header.split(",");
+                head[0] = fields.length == 3 ? HexFormat.of().parseHex(fields[1].trim()) : null;
+                CRC32C crc = new CRC32C();
+                BufferedReader br = new BufferedReader(
+                        new InputStreamReader(new CheckedInputStream(in, crc), StandardCharsets.UTF_8), 1 << 16);
+                String line;
+                while ((line = br.readLine()) != null) {
+                    String[] parts = line.split(",");
+                    if (parts[0].equals("C") && parts.length == 3) {
+                        votes.put(parts[1], Integer.parseInt(parts[2]));
+                    } else if (parts[0].equals("V") && parts.length == 2) {
+                        voted.add(parts[1]);
+                    } else {
+                        throw new IOException(snapshot.getFileName() + " has a malformed line: " + line);
+                    }
+                }
+                int comma = header.lastIndexOf(',');
+                if (comma >= 0 && Long.parseLong(header.substring(comma + 1).trim(), 16) != crc.getValue())
+                    throw new IOException(snapshot.getFileName() + " is corrupt (checksum mismatch)");
+                return seq;
+            } catch (RuntimeException e) {
+                throw new IOException(snapshot.getFileName() + " is corrupt: " + e.getMessage(), e);
+            }
+        }
+
+        interface RecordHandler {
+            void accept(long seq, String voterId, String candidateId);
+        }
+
+        // Feeds every well-formed record to the handler and returns the highest
+        // seq seen; a torn final record from a crash is skipped.
+        private static long forEachRecord(Path segment, RecordHandler handler) {
+            long lastSeq = 0;
+            try (BufferedReader br = Files.newBufferedReader(segment, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    String[] parts = line.split(",");
+                    if (parts.length < 4)
+                        continue;
+                    long seq;
+                    try {
+                        seq = Long.parseLong(parts[0]);
+                        Long.parseLong(parts[3]);
+                    } catch (NumberFormatException nfe) {
+                        continue;
+                    }
+                    lastSeq = Math.max(lastSeq, seq);
+                    handler.accept(seq, parts[1], parts[2]);
+                }
+            } catch (IOException e) {
+                System.err.println("Error replaying vote ledger: " + e.getMessage());
+            }
+            return lastSeq;
+        }
+
+        private static FileChannel openSegment(long startSeq) throws IOException {
+            return FileChannel.open(FileHandler.resolve(SEGMENT_PREFIX + startSeq + SEGMENT_SUFFIX), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+
+        static Path archivePath(Path segment) {
+            return FileHandler.resolve(ARCHIVE_PREFIX + segmentStart(segment) + SEGMENT_SUFFIX);
+        }
+
+        static long segmentStart(Path segment) {
+            String name = segment.getFileName().toString();
+            int start = name.indexOf('.') + 1;
+            return Long.parseLong(name.substring(start, name.length() - SEGMENT_SUFFIX.length()));
+        }
+
+        private static List<Path> listSegments() {
+            return listFiles(SEGMENT_PREFIX);
+        }
+
+        private static List<Path> listFiles(String prefix) {
+            List<Path> segments = new ArrayList<>();
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(FileHandler.resolve(""),
+                    prefix + "*" + SEGMENT_SUFFIX)) {
+                for (Path p : ds) {
+                    try {
+                        segmentStart(p);
+                        segments.add(p);
+                    } catch (NumberFormatException nfe) {
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Error listing vote ledger segments: " + e.getMessage());
+            }
+            segments.sort(Comparator.comparingLong(VoteLedger::segmentStart));
+            return segments;
+        }
+    }
+
+    // Hash chain over the vote ledger. Every record ends with
+    // SHA-256(previous record's hash || the record's own text), so editing,
+    // dropping or reordering any ballot breaks every hash after it. Every
+    // -Delection.checkpointEvery records (default 10000) compaction appends a
+    // checkpoint to ballot_checkpoints.log with the block's first and last
+    // seq, the chain hash at its end and the Merkle root of its record
+    // hashes. A block verifies from the checkpoint before it alone, so a
+    // range or the whole log is checked in parallel without re-hashing from
+    // the first ballot; records after the last checkpoint chain from it.
+    static class BallotChain {
+        static final String CHECKPOINT_FILE = "ballot_checkpoints.log";
+        // The hash the first chained record links to
+        static final byte[] GENESIS = new byte[32];
+        private static final int HASH_HEX = 64;
+
+        public static class Checkpoint {
+            private final long first;
+            private final long last;
+            private final byte[] chainHash;
+            private final byte[] merkleRoot;
+
+            Checkpoint(long first, long last, byte[] chainHash, byte[] merkleRoot) {
+                this.first = first;
+                this.last = last;
+                this.chainHash = chainHash;
+                this.merkleRoot = merkleRoot;
+            }
+
+            public long getFirst() {
+                return first;
+            }
+
+            public long getLast() {
+                return last;
+            }
+
+            public String getChainHash() {
+                return hex(chainHash);
+            }
+
+            public String getMerkleRoot() {
+                return hex(merkleRoot);
+            }
+        }
+
+        public static class Report {
+            private final long blocks;
+            private final long records;
+            private final long lastSeq;
+            private final String head;
+            private final long checkpointedSeq;
+            private final List<String> failures;
+            private final long bytes;
+            private final long millis;
+
+            Report(long blocks, long records, long lastSeq, byte[] head, long checkpointedSeq, List<String> failures,
+                   long bytes, long millis) {
+                this.blocks = blocks;
+                this.records = records;
+                this.lastSeq = lastSeq;
+                this.head = head == null ? null : hex(head);
+                this.checkpointedSeq = checkpointedSeq;
+                this.failures = Collections.unmodifiableList(failures);
+                this.bytes = bytes;
+                this.millis = millis;
+            }
+
+            // Checkpointed blocks verified.
+            public long getBlocks() {
+                return blocks;
+            }
+
+            // Records verified, in blocks and after the last checkpoint.
+            public long getRecords() {
+                return records;
+            }
+
+            public long getLastSeq() {
+                return lastSeq;
+            }
+
+            // Chain hash of the last record verified; publishing it pins down everything before it.
+            public String getHead() {
+                return head;
+            }
+
+            // Last seq covered by a checkpoint when the verification ran.
+            public long getCheckpointedSeq() {
+                return checkpointedSeq;
+            }
+
+            // One line per block or record that failed, naming the seq.
+            public List<String> getFailures() {
+                return failures;
+            }
+
+            public long getBytes() {
+                return bytes;
+            }
+
+            public long getMillis() {
+                return millis;
+            }
+
+            public boolean isValid() {
+                return failures.isEmpty();
+            }
+
+            @Override
+            public String toString() {
+                StringBuilder sb = new StringBuilder();
+                sb.append(String.format("Verified %d records in %d checkpointed blocks (%.1f MB) in %d ms%n",
+                        records, blocks, bytes / 1e6, millis));
+                if (head != null)
+                    sb.append("Head: seq ").append(lastSeq).append(' ').append(head).append('\n');
+                for (String f : failures) {
+                    sb.append("FAILED ").append(f).append('\n');
+                }
+                sb.append(isValid() ? "VALID" : "TAMPERED OR DAMAGED").append('\n');
+                return sb.toString();
+            }
+        }
+
+        static MessageDigest sha256() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e);
+            }
+        }
+
+        // The chain hash of a record whose text (without the hash field) is b[off, off + len).
+        static byte[] link(MessageDigest md, byte[] prev, byte[] b, int off, int len) {
+            md.update(prev);
+            md.update(b, off, len);
+            return md.digest();
+        }
+
+        static String hex(byte[] hash) {
+            return HexFormat.of().formatHex(hash);
+        }
+
+        private static boolean hexEquals(byte[] b, int off, byte[] hash) {
+            for (int i = 0; i < hash.length; i++) {
+                int hi = Character.digit(b[off + 2 * i], 16);
+                int lo = Character.digit(b[off + 2 * i + 1], 16);
+                if (hi < 0 || lo < 0 || (byte) (hi << 4 | lo) != hash[i])
+                    return false;
+            }
+            return true;
+        }
+
+        // Pairs are hashed as SHA-256(0x01 || left || right); an odd node moves up unchanged.
+        static byte[] merkleRoot(MessageDigest md, byte[] leaves, int count) {
+            byte[] level = Arrays.copyOf(leaves, count * 32);
+            int n = count;
+            while (n > 1) {
+                int parents = 0;
+                for (int i = 0; i < n; i += 2) {
+                    if (i + 1 < n) {
+                        md.update((byte) 1);
+                        md.update(level, i * 32, 64);
+                        System.arraycopy(md.digest(), 0, level, parents * 32, 32);
+                    } else {
+                        System.arraycopy(level, i * 32, level, parents * 32, 32);
+                    }
+                    parents++;
+                }
+                n = parents;
+            }
+            return n == 0 ? GENESIS : Arrays.copyOf(level, 32);
+        }
+
+        public static List<Checkpoint> readCheckpoints() {
+            List<Checkpoint> checkpoints = new ArrayList<>();
+            Path file = FileHandler.resolve(CHECKPOINT_FILE);
+            if (!Files.exists(file))
+                return checkpoints;
+            try (BufferedReader br = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    String[] parts = line.split(",");
+                    if (parts.length != 4 || parts[2].length() != HASH_HEX || parts[3].length() != HASH_HEX)
+                        continue;
+                    try {
+                        checkpoints.add(new Checkpoint(Long.parseLong(parts[0]), Long.parseLong(parts[1]),
+                                HexFormat.of().parseHex(parts[2]), HexFormat.of().parseHex(parts[3])));
+                    } catch (IllegalArgumentException e) {
+                        // Torn or hand-edited line; the blocks it covered show up as unverified
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Error reading ballot checkpoints: " + e.getMessage());
+            }
+            return checkpoints;
+        }
+
+        // Adds checkpoints for every full block of records up to sealedSeq.
+        // The hashes are re-verified on the way, so a record damaged before
+        // it was checkpointed is reported instead of certified.
+        static void checkpoint(long sealedSeq) throws IOException {
+            int every = Integer.getInteger("election.checkpointEvery", 10_000);
+            List<Checkpoint> existing = readCheckpoints();
+            long from = existing.isEmpty() ? 1 : existing.get(existing.size() - 1).getLast() + 1;
+            if (sealedSeq - from + 1 < every)
+                return;
+            byte[] prev = existing.isEmpty() ? GENESIS : existing.get(existing.size() - 1).chainHash;
+            MessageDigest md = sha256();
+            byte[] leaves = new byte[every * 32];
+            StringBuilder out = new StringBuilder();
+            long[] blockFirst = { from };
+            int[] count = { 0 };
+            byte[][] chain = { prev };
+            boolean[] failed = { false };
+            long lastFull = from + (sealedSeq - from + 1) / every * every - 1;
+            scan(from, lastFull, (seq, b, off, textLen, hashOff) -> {
+                if (failed[0])
+                    return false;
+                // Records from before the chain existed carry no hash; checkpoints start after them
+                if (hashOff < 0 && count[0] == 0 && chain[0] == GENESIS) {
+                    blockFirst[0] = seq + 1;
+                    return true;
+                }
+                byte[] hash = link(md, chain[0], b, off, textLen);
+                if (hashOff < 0 || !hexEquals(b, hashOff, hash) || seq != blockFirst[0] + count[0]) {
+                    System.err.println("Ballot chain broken at seq " + seq + "; no further checkpoints written");
+                    failed[0] = true;
+                    return false;
+                }
+                chain[0] = hash;
+                System.arraycopy(hash, 0, leaves, count[0] * 32, 32);
+                if (++count[0] == every) {
+                    out.append(blockFirst[0]).append(',').append(seq).append(',').append(hex(hash)).append(',')
+                            .append(hex(merkleRoot(md, leaves, every))).append('\n');
+                    blockFirst[0] = seq + 1;
+                    count[0] = 0;
+                }
+                return true;
+            });
+            if (out.length() == 0)
+                return;
+            Path file = FileHandler.resolve(CHECKPOINT_FILE);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                // Drop a line torn by a crash before appending after it
+                long end = channel.size();
+                ByteBuffer last = ByteBuffer.allocate(1);
+                while (end > 0 && channel.read(last.clear(), end - 1) == 1 && last.get(0) != '\n') {
+                    end--;
+                }
+                channel.truncate(end);
+                ByteBuffer buf = ByteBuffer.wrap(out.toString().getBytes(StandardCharsets.UTF_8));
+                long position = end;
+                while (buf.hasRemaining()) {
+                    position += channel.write(buf, position);
+                }
+                channel.force(false);
+            }
+        }
+
+        interface RecordVisitor {
+            // hashOff is -1 for a record without a hash; returning false stops the scan.
+            boolean visit(long seq, byte[] b, int off, int textLen, int hashOff);
+        }
+
+        // Visits the records with first <= seq <= last in seq order, across
+        // archived and live segments. Returns the bytes read.
+        static long scan(long first, long last, RecordVisitor visitor) throws IOException {
+            List<Path> files = VoteLedger.ballotFiles();
+            files.sort(Comparator.comparingLong(VoteLedger::segmentStart));
+            int start = 0;
+            for (int i = 0; i < files.size(); i++) {
+                if (VoteLedger.segmentStart(files.get(i)) <= first)
+                    start = i;
+            }
+            long bytes = 0;
+            for (int i = start; i < files.size() && VoteLedger.segmentStart(files.get(i)) <= last; i++) {
+                byte[] b;
+                try {
+                    b = Files.readAllBytes(files.get(i));
+                } catch (NoSuchFileException e) {
+                    b = Files.readAllBytes(VoteLedger.archivePath(files.get(i)));
+                }
+                bytes += b.length;
+                int lineStart = 0;
+                while (lineStart < b.length) {
+                    int lineEnd = VoterLoader.indexOf(b, (byte) '\n', lineStart, b.length);
+                    // A record still being appended has no newline yet
+                    if (lineEnd < 0)
+                        break;
+                    int c1 = VoterLoader.indexOf(b, (byte) ',', lineStart, lineEnd);
+                    long seq = c1 < 0 ? -1 : parseSeq(b, lineStart, c1);
+                    if (seq > last)
+                        return bytes;
+                    if (seq >= first) {
+                        // A trailing hash is told from the time field by its length, not by
+                        // counting commas, so a stray comma in an id cannot hide it
+                        int hashOff = lineEnd - HASH_HEX;
+                        boolean hashed = hashOff > lineStart && b[hashOff - 1] == ','
+                                && isHex(b, hashOff, lineEnd);
+                        int textLen = (hashed ? hashOff - 1 : lineEnd) - lineStart;
+                        if (!visitor.visit(seq, b, lineStart, textLen, hashed ? hashOff : -1))
+                            return bytes;
+                    }
+                    lineStart = lineEnd + 1;
+                }
+            }
+            return bytes;
+        }
+
+        // Recomputes the chain from the last checkpoint at or before seq
+        // through seq; the result's head is the chain hash of record seq if
+        // it has no failures and reaches seq.
+        static BlockResult verifyThrough(long seq) throws IOException {
+            byte[] prev = GENESIS;
+            long first = 1;
+            for (Checkpoint cp : readCheckpoints()) {
+                if (cp.last > seq)
+                    break;
+                prev = cp.chainHash;
+                first = cp.last + 1;
+            }
+            if (first > seq) {
+                BlockResult result = new BlockResult();
+                result.lastSeq = seq;
+                result.head = prev;
+                return result;
+            }
+            try {
+                return verifyRange(first, seq, prev, null);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+
+        // The chain hash stored on record seq; GENESIS if there is none, as
+        // for a fresh ledger or one whose last record predates the chain.
+        static byte[] hashAt(long seq) throws IOException {
+            byte[][] hash = { GENESIS };
+            if (seq > 0) {
+                scan(seq, seq, (recordSeq, b, off, textLen, hashOff) -> {
+                    if (hashOff >= 0)
+                        hash[0] = HexFormat.of().parseHex(new String(b, hashOff, HASH_HEX, StandardCharsets.US_ASCII));
+                    return false;
+                });
+            }
+            return hash[0];
+        }
+
+        private static boolean isHex(byte[] b, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (Character.digit(b[i], 16) < 0)
+                    return false;
+            }
+            return true;
+        }
+
+        private static long parseSeq(byte[] b, int from, int to) {
+            if (from >= to || to - from > 18)
+                return -1;
+            long value = 0;
+            for (int i = from; i < to; i++) {
+                int d = b[i] - '0';
+                if (d < 0 || d > 9)
+                    return -1;
+                value = value * 10 + d;
+            }
+            return value;
+        }
+
+        public static Report verifyAll() throws IOException {
+            return verify(1, Long.MAX_VALUE, ForkJoinPool.commonPool());
+        }
+
+        // Verifies every checkpointed block overlapping [from, to] on the
+        // pool, and, if to reaches past the last checkpoint, the records
+        // after it.
+        public static Report verify(long from, long to, ForkJoinPool pool) throws IOException {
+            long start = System.nanoTime();
+            List<Checkpoint> all = readCheckpoints();
+            List<String> failures = new ArrayList<>();
+            List<Checkpoint> blocks = new ArrayList<>();
+            List<byte[]> starts = new ArrayList<>();
+            for (int k = 0; k < all.size(); k++) {
+                Checkpoint cp = all.get(k);
+                if (k > 0 && cp.first != all.get(k - 1).last + 1)
+                    failures.add("checkpoint " + cp.first + "-" + cp.last + " does not follow the one before it");
+                if (cp.last >= from && cp.first <= to) {
+                    blocks.add(cp);
+                    starts.add(k == 0 ? GENESIS : all.get(k - 1).chainHash);
+                }
+            }
+            BlockResult checked;
+            try {
+                checked = pool.invoke(new BlockTask(blocks, starts, 0, blocks.size()));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            failures.addAll(checked.failures);
+            long records = checked.records;
+            long bytes = checked.bytes;
+            // Without new blocks the head is the last checkpoint, verified on an earlier run
+            Checkpoint headBlock = !blocks.isEmpty() ? blocks.get(blocks.size() - 1)
+                    : all.isEmpty() ? null : all.get(all.size() - 1);
+            long lastSeq = headBlock == null ? 0 : headBlock.last;
+            byte[] head = headBlock == null ? null : headBlock.chainHash;
+
+            long tailFrom = all.isEmpty() ? 1 : all.get(all.size() - 1).last + 1;
+            if (to >= tailFrom) {
+                BlockResult tail = verifyRange(tailFrom, to, all.isEmpty() ? GENESIS : all.get(all.size() - 1).chainHash,
+                        null);
+                failures.addAll(tail.failures);
+                records += tail.records;
+                bytes += tail.bytes;
+                if (tail.records > 0) {
+                    lastSeq = tail.lastSeq;
+                    head = tail.head;
+                }
+            }
+            return new Report(blocks.size(), records, lastSeq, head, tailFrom - 1, failures, bytes,
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+
+        static final class BlockResult {
+            long records;
+            long bytes;
+            long lastSeq;
+            byte[] head;
+            // A record's own hash disagrees with its text, as when a ballot was edited
+            boolean tampered;
+            final List<String> failures = new ArrayList<>();
+
+            BlockResult merge(BlockResult other) {
+                records += other.records;
+                bytes += other.bytes;
+                tampered |= other.tampered;
+                failures.addAll(other.failures);
+                return this;
+            }
+        }
+
+        // Recomputes the chain over [first, last] from prev. With a
+        // checkpoint, the block must also be complete and end on the
+        // checkpoint's chain hash and Merkle root.
+        private static BlockResult verifyRange(long first, long last, byte[] prev, Checkpoint cp) {
+            BlockResult result = new BlockResult();
+            MessageDigest md = sha256();
+            int size = cp == null ? 0 : (int) Math.min(Integer.MAX_VALUE / 32, cp.last - cp.first + 1);
+            byte[] leaves = new byte[size * 32];
+            byte[][] chain = { prev };
+            long[] expected = { first };
+            // Legacy records from before the chain are skipped only ahead of the first checkpoint
+            boolean[] leading = { prev == GENESIS && cp == null };
+            try {
+                result.bytes = scan(first, last, (seq, b, off, textLen, hashOff) -> {
+                    if (hashOff < 0 && leading[0]) {
+                        expected[0] = seq + 1;
+                        return true;
+                    }
+                    leading[0] = false;
+                    if (seq != expected[0]) {
+                        result.failures.add("seq " + expected[0] + (seq > expected[0] ? " is missing" : " repeats"));
+                        return false;
+                    }
+                    byte[] hash = link(md, chain[0], b, off, textLen);
+                    if (hashOff < 0 || !hexEquals(b, hashOff, hash)) {
+                        result.failures.add("seq " + seq + " does not match its chain hash");
+                        result.tampered = hashOff >= 0;
+                        return false;
+                    }
+                    if (cp != null)
+                        System.arraycopy(hash, 0, leaves, (int) (seq - first) * 32, 32);
+                    chain[0] = hash;
+                    expected[0]++;
+                    result.records++;
+                    return true;
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            result.lastSeq = expected[0] - 1;
+            result.head = chain[0];
+            if (cp != null && result.failures.isEmpty()) {
+                if (result.lastSeq != cp.last)
+                    result.failures.add("block " + cp.first + "-" + cp.last + " ends at seq " + result.lastSeq);
+                else if (!Arrays.equals(chain[0], cp.chainHash))
+                    result.failures.add("block " + cp.first + "-" + cp.last + " does not end on its checkpoint hash");
+                else if (!Arrays.equals(merkleRoot(md, leaves, size), cp.merkleRoot))
+                    result.failures.add("block " + cp.first + "-" + cp.last + " does not match its Merkle root");
+            }
+            return result;
+        }
+
+        private static class BlockTask extends RecursiveTask<BlockResult> {
+            private static final long serialVersionUID = 1L;
+
+            private final List<Checkpoint> blocks;
+            private final List<byte[]> starts;
+            private final int from;
+            private final int to;
+
+            BlockTask(List<Checkpoint> blocks, List<byte[]> starts, int from, int to) {
+                this.blocks = blocks;
+                this.starts = starts;
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected BlockResult compute() {
+                if (to - from <= 1) {
+                    BlockResult result = new BlockResult();
+                    for (int i = from; i < to; i++) {
+                        Checkpoint cp = blocks.get(i);
+                        result.merge(verifyRange(cp.first, cp.last, starts.get(i), cp));
+                    }
+                    return result;
+                }
+                int mid = (from + to) >>> 1;
+                BlockTask left = new BlockTask(blocks, starts, from, mid);
+                left.fork();
+                BlockResult right = new BlockTask(blocks, starts, mid, to).compute();
+                return left.join().merge(right);
+            }
+        }
+    }
+
+    // Recounts the election from its ballot records alone: the baseline
+    // carried over from the legacy files, then every archived and live
+    // ledger segment. The files are cut into chunks at line boundaries and
+    // tallied on the fork-join pool, each chunk into its own counts, which
+    // are summed on the way back up. With the voter registry it also checks
+    // that every ballot names a registered voter and that nobody has two.
+    static class Recount {
+        // Chunks per leaf task; smaller ranges are tallied inline
+        private static final int CHUNKS_PER_TASK = 1;
+
+        public static class Report {
+            private final Map<String, Long> recounted;
+            private final Map<String, Integer> live;
+            private final List<String> mismatches;
+            private final boolean settled;
+            private final long records;
+            private final long malformed;
+            private final long unknownVoters;
+            private final long unknownCandidates;
+            private final long duplicateVoters;
+            private final long repeatedSeqs;
+            private final long missingSeqs;
+            private final long bytes;
+            private final long millis;
+
+            Report(Map<String, Long> recounted, Map<String, Integer> live, boolean settled, Tally tally,
+                   long missingSeqs, long bytes, long millis) {
+                this.recounted = Collections.unmodifiableMap(recounted);
+                this.live = Collections.unmodifiableMap(live);
+                this.settled = settled;
+                this.records = tally.records;
+                this.malformed = tally.malformed;
+                this.unknownVoters = tally.unknownVoters;
+                this.unknownCandidates = tally.unknownCandidates;
+                this.duplicateVoters = tally.duplicateVoters;
+                this.repeatedSeqs = tally.repeatedSeqs;
+                this.missingSeqs = missingSeqs;
+                this.bytes = bytes;
+                this.millis = millis;
+                List<String> diffs = new ArrayList<>();
+                for (Map.Entry<String, Integer> e : live.entrySet()) {
+                    long count = recounted.getOrDefault(e.getKey(), 0L);
+                    if (count != e.getValue())
+                        diffs.add(e.getKey() + ": live " + e.getValue() + ", recount " + count);
+                }
+                this.mismatches = Collections.unmodifiableList(diffs);
+            }
+
+            // Recounted votes per candidate id, in registration order.
+            public Map<String, Long> getRecounted() {
+                return recounted;
+            }
+
+            // The live tallies the recount was compared with.
+            public Map<String, Integer> getLive() {
+                return live;
+            }
+
+            // One line per candidate whose live tally differs from the recount.
+            public List<String> getMismatches() {
+                return mismatches;
+            }
+
+            // False if votes were cast while the recount ran, so a mismatch may only be those votes.
+            public boolean isSettled() {
+                return settled;
+            }
+
+            public long getRecords() {
+                return records;
+            }
+
+            public long getMalformed() {
+                return malformed;
+            }
+
+            public long getUnknownVoters() {
+                return unknownVoters;
+            }
+
+            public long getUnknownCandidates() {
+                return unknownCandidates;
+            }
+
+            // Ballots beyond a voter's first; they are not counted.
+            public long getDuplicateVoters() {
+                return duplicateVoters;
+            }
+
+            public long getRepeatedSeqs() {
+                return repeatedSeqs;
+            }
+
+            // Ledger seqs between 1 and the highest seq read that no record carries.
+            public long getMissingSeqs() {
+                return missingSeqs;
+            }
+
+            public long getBytes() {
+                return bytes;
+            }
+
+            public long getMillis() {
+                return millis;
+            }
+
+            // The recount matches the live tallies and the records show no sign of tampering or loss.
+            public boolean isVerified() {
+                return mismatches.isEmpty() && malformed == 0 && unknownVoters == 0 && unknownCandidates == 0
+                        && duplicateVoters == 0 && repeatedSeqs == 0 && missingSeqs == 0;
+            }
+
+            @Override
+            public String toString() {
+                StringBuilder sb = new StringBuilder();
+                sb.append(String.format("Recounted %d ballot records (%.1f MB) in %d ms%n", records, bytes / 1e6,
+                        millis));
+                for (Map.Entry<String, Long> e : recounted.entrySet()) {
+                    sb.append(e.getKey()).append(" : ").append(e.getValue()).append('\n');
+                }
+                sb.append("Malformed records: ").append(malformed).append('\n');
+                sb.append("Unknown voters: ").append(unknownVoters).append('\n');
+                sb.append("Unknown candidates: ").append(unknownCandidates).append('\n');
+                sb.append("Second ballots from one voter: ").append(duplicateVoters).append('\n');
+                sb.append("Repeated seqs: ").append(repeatedSeqs).append('\n');
+                sb.append("Missing seqs: ").append(missingSeqs).append('\n');
+                for (String m : mismatches) {
+                    sb.append("MISMATCH ").append(m).append('\n');
+                }
+                if (!settled)
+                    sb.append("Votes were cast during the recount; run it again once voting is paused.\n");
+                sb.append(isVerified() ? "VERIFIED" : "NOT VERIFIED").append('\n');
+                return sb.toString();
+            }
+        }
+
+        // Counts from one chunk, or from several once merged.
+        static final class Tally {
+            final long[] votes;
+            long records;
+            long malformed;
+            long unknownVoters;
+            long unknownCandidates;
+            long duplicateVoters;
+            long repeatedSeqs;
+            long maxSeq;
+
+            Tally(int candidates) {
+                this.votes = new long[candidates];
+            }
+
+            Tally merge(Tally other) {
+                for (int c = 0; c < votes.length; c++) {
+                    votes[c] += other.votes[c];
+                }
+                records += other.records;
+                malformed += other.malformed;
+                unknownVoters += other.unknownVoters;
+                unknownCandidates += other.unknownCandidates;
+                duplicateVoters += other.duplicateVoters;
+                repeatedSeqs += other.repeatedSeqs;
+                maxSeq = Math.max(maxSeq, other.maxSeq);
+                return this;
+            }
+        }
+
+        public static Report run(List<Candidate> candidates, VoterRegistry voters) throws IOException {
+            return run(VoteLedger.ballotFiles(), VoteLedger.baselineFile(), candidates, voters,
+                    ForkJoinPool.commonPool());
+        }
+
+        // voters may be null to recount the tallies without checking voters.
+        public static Report run(List<Path> files, Path baseline, List<Candidate> candidates, VoterRegistry voters,
+                                 ForkJoinPool pool) throws IOException {
+            long start = System.nanoTime();
+            Map<String, Integer> liveBefore = liveTallies(candidates);
+            CandidateIndex index = new CandidateIndex(candidates);
+            VotedBitmap voted = voters == null ? null : new VotedBitmap();
+            if (voted != null)
+                voted.ensureCapacity(voters.size());
+            VotedBitmap seqs = new VotedBitmap();
+            VotedBitmap inBaseline = voted == null ? null : new VotedBitmap();
+            if (inBaseline != null)
+                inBaseline.ensureCapacity(voters.size());
+            Set<Integer> duplicated = ConcurrentHashMap.newKeySet();
+
+            Tally total = new Tally(candidates.size());
+            if (baseline != null)
+                readBaseline(baseline, index, voters, voted, inBaseline, total);
+
+            List<FileChannel> channels = new ArrayList<>();
+            List<Chunk> chunks = new ArrayList<>();
+            long bytes = 0;
+            try {
+                for (Path file : files) {
+                    FileChannel channel;
+                    try {
+                        channel = FileChannel.open(file, StandardOpenOption.READ);
+                    } catch (NoSuchFileException e) {
+                        // Compaction archived this live segment after it was listed
+                        channel = FileChannel.open(VoteLedger.archivePath(file), StandardOpenOption.READ);
+                    }
+                    channels.add(channel);
+                    long size = channel.size();
+                    bytes += size;
+                    // A record is at least 8 bytes, which bounds the highest seq a file should hold
+                    seqs.ensureCapacity((int) Math.min(Integer.MAX_VALUE - 1,
+                            VoteLedger.segmentStart(file) + size / 8 + 1));
+                    for (long[] range : VoterLoader.splitAtLines(channel, size)) {
+                        chunks.add(new Chunk(channel, range[0], range[1]));
+                    }
+                }
+                ChunkTask task = new ChunkTask(chunks, 0, chunks.size(), index, voters, voted, seqs, duplicated,
+                        null);
+                total.merge(pool.invoke(task));
+                if (!duplicated.isEmpty())
+                    keepLowestSeqs(chunks, index, voters, inBaseline, duplicated, pool, total);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                for (FileChannel channel : channels) {
+                    channel.close();
+                }
+            }
+
+            // Ledger seqs start at 1 and are never reused, so every seq up to the last should appear once
+            long missing = total.maxSeq - seqs.count();
+            Map<String, Long> recounted = new LinkedHashMap<>();
+            for (int c = 0; c < candidates.size(); c++) {
+                recounted.put(candidates.get(c).getId(), total.votes[index.slotOf(c)]);
+            }
+            Map<String, Integer> live = liveTallies(candidates);
+            return new Report(recounted, live, live.equals(liveBefore), total, missing, bytes,
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+
+        // Chunks are counted in parallel, so which of a voter's ballots took
+        // the voted bit first varies from run to run. Live counting keeps the
+        // ballot with the lowest seq (a baseline ballot before any record),
+        // so the second pass takes back every ballot of those voters and
+        // counts just the lowest.
+        private static void keepLowestSeqs(List<Chunk> chunks, CandidateIndex index, VoterRegistry voters,
+                                           VotedBitmap inBaseline, Set<Integer> duplicated, ForkJoinPool pool,
+                                           Tally total) {
+            // {seq, candidate slot}; baseline voters keep seq 0 and no slot
+            Map<Integer, long[]> kept = new ConcurrentHashMap<>();
+            for (int v : duplicated) {
+                if (inBaseline.get(v))
+                    kept.put(v, new long[] { 0, -1 });
+            }
+            Tally removed = pool.invoke(new ChunkTask(chunks, 0, chunks.size(), index, voters, null, null,
+                    duplicated, kept));
+            for (int c = 0; c < total.votes.length; c++) {
+                total.votes[c] += removed.votes[c];
+            }
+            for (long[] first : kept.values()) {
+                if (first[1] >= 0)
+                    total.votes[(int) first[1]]++;
+            }
+        }
+
+        private static Map<String, Integer> liveTallies(List<Candidate> candidates) {
+            Map<String, Integer> live = new LinkedHashMap<>();
+            for (Candidate c : candidates) {
+                live.put(c.getId(), c.getVotes());
+            }
+            return live;
+        }
+
+        private static void readBaseline(Path baseline, CandidateIndex index, VoterRegistry voters,
+                                         VotedBitmap voted, VotedBitmap inBaseline, Tally total)
+                throws IOException {
+            Map<String, Integer> votes = new LinkedHashMap<>();
+            Set<String> ids = new LinkedHashSet<>();
+            VoteLedger.readSnapshot(baseline, votes, ids);
+            for (Map.Entry<String, Integer> e : votes.entrySet()) {
+                byte[] id = e.getKey().getBytes(StandardCharsets.UTF_8);
+                int c = index.find(id, 0, id.length);
+                if (c < 0)
+                    total.unknownCandidates += e.getValue();
+                else
+                    total.votes[c] += e.getValue();
+            }
+            if (voters == null)
+                return;
+            for (String id : ids) {
+                int v = voters.indexOf(id);
+                if (v < 0)
+                    total.unknownVoters++;
+                else if (!voted.set(v))
+                    total.duplicateVoters++;
+                else
+                    inBaseline.set(v);
+            }
+        }
+
+        private static final class Chunk {
+            final FileChannel channel;
+            final long start;
+            final long end;
+
+            Chunk(FileChannel channel, long start, long end) {
+                this.channel = channel;
+                this.start = start;
+                this.end = end;
+            }
+        }
+
+        private static class ChunkTask extends RecursiveTask<Tally> {
+            private static final long serialVersionUID = 1L;
+
+            private final List<Chunk> chunks;
+            private final int from;
+            private final int to;
+            private final CandidateIndex index;
+            private final VoterRegistry voters;
+            private final VotedBitmap voted;
+            private final VotedBitmap seqs;
+            private final Set<Integer> duplicated;
+            // Null on the counting pass; on the second pass, the lowest
+            // {seq, candidate slot} seen for each duplicated voter.
+            private final Map<Integer, long[]> kept;
+
+            ChunkTask(List<Chunk> chunks, int from, int to, CandidateIndex index, VoterRegistry voters,
+                      VotedBitmap voted, VotedBitmap seqs, Set<Integer> duplicated, Map<Integer, long[]> kept) {
+                this.chunks = chunks;
+                this.from = from;
+                this.to = to;
+                this.index = index;
+                this.voters = voters;
+                this.voted = voted;
+                this.seqs = seqs;
+                this.duplicated = duplicated;
+                this.kept = kept;
+            }
+
+            @Override
+            protected Tally compute() {
+                if (to - from <= CHUNKS_PER_TASK) {
+                    Tally tally = new Tally(index.capacity());
+                    for (int i = from; i < to; i++) {
+                        try {
+                            tallyChunk(chunks.get(i), tally);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                    return tally;
+                }
+                int mid = (from + to) >>> 1;
+                ChunkTask left = new ChunkTask(chunks, from, mid, index, voters, voted, seqs, duplicated, kept);
+                left.fork();
+                Tally right = new ChunkTask(chunks, mid, to, index, voters, voted, seqs, duplicated,
+                        kept).compute();
+                return left.join().merge(right);
+            }
+
+            private void tallyChunk(Chunk chunk, Tally tally) throws IOException {
+                byte[] bytes = new byte[(int) (chunk.end - chunk.start)];
+                ByteBuffer buf = ByteBuffer.wrap(bytes);
+                while (buf.hasRemaining()) {
+                    if (chunk.channel.read(buf, chunk.start + buf.position()) < 0)
+                        break;
+                }
+                int lineStart = 0;
+                while (lineStart < bytes.length) {
+                    int lineEnd = VoterLoader.indexOf(bytes, (byte) '\n', lineStart, bytes.length);
+                    // A record still being appended has no newline yet; it is left for the next recount
+                    if (lineEnd < 0)
+                        break;
+                    tallyRecord(bytes, lineStart, lineEnd, tally);
+                    lineStart = lineEnd + 1;
+                }
+            }
+
+            // "seq,voterId,candidateId,timeMillis[,chainHash]"
+            private void tallyRecord(byte[] b, int from, int to, Tally tally) {
+                int c1 = VoterLoader.indexOf(b, (byte) ',', from, to);
+                int c2 = c1 < 0 ? -1 : VoterLoader.indexOf(b, (byte) ',', c1 + 1, to);
+                int c3 = c2 < 0 ? -1 : VoterLoader.indexOf(b, (byte) ',', c2 + 1, to);
+                int c4 = c3 < 0 ? -1 : VoterLoader.indexOf(b, (byte) ',', c3 + 1, to);
+                long seq = c1 < 0 ? -1 : parseLong(b, from, c1);
+                if (c3 < 0 || seq <= 0 || seq >= Integer.MAX_VALUE || parseLong(b, c3 + 1, c4 < 0 ? to : c4) < 0) {
+                    tally.malformed++;
+                    return;
+                }
+                if (kept != null) {
+                    takeBack(b, c1, c2, c3, seq, tally);
+                    return;
+                }
+                tally.records++;
+                tally.maxSeq = Math.max(tally.maxSeq, seq);
+                if (seq >= seqs.capacity())
+                    seqs.ensureCapacity((int) seq + 1);
+                if (!seqs.set((int) seq))
+                    tally.repeatedSeqs++;
+                int c = index.find(b, c2 + 1, c3 - c2 - 1);
+                if (c < 0) {
+                    tally.unknownCandidates++;
+                    return;
+                }
+                if (voters != null) {
+                    int v = voters.indexOf(b, c1 + 1, c2 - c1 - 1);
+                    if (v < 0) {
+                        tally.unknownVoters++;
+                        return;
+                    }
+                    // Counted for now; keepLowestSeqs settles which of the voter's ballots stands
+                    if (!voted.set(v)) {
+                        tally.duplicateVoters++;
+                        duplicated.add(v);
+                    }
+                }
+                tally.votes[c]++;
+            }
+
+            // Second pass: uncounts a duplicated voter's ballot and remembers it if its seq is the lowest yet.
+            private void takeBack(byte[] b, int c1, int c2, int c3, long seq, Tally tally) {
+                int c = index.find(b, c2 + 1, c3 - c2 - 1);
+                if (c < 0)
+                    return;
+                int v = voters.indexOf(b, c1 + 1, c2 - c1 - 1);
+                if (v < 0 || !duplicated.contains(v))
+                    return;
+                tally.votes[c]--;
+                kept.merge(v, new long[] { seq, c }, (a, n) -> a[0] <= n[0] ? a : n);
+            }
+
+            // Digits only; -1 for anything else.
+            private static long parseLong(byte[] b, int from, int to) {
+                if (from >= to || to - from > 18)
+                    return -1;
+                long value = 0;
+                for (int i = from; i < to; i++) {
+                    int d = b[i] - '0';
+                    if (d < 0 || d > 9)
+                        return -1;
+                    value = value * 10 + d;
+                }
+                return value;
+            }
+        }
+
+        // Open-addressing table from candidate id bytes to a slot, so records
+        // are matched without building a String per ballot. Candidates
+        // sharing an id share a slot, as they share a ledger record.
+        static final class CandidateIndex {
+            private final byte[][] ids;
+            private final int[] table;
+            private final int[] slotOf;
+
+            CandidateIndex(List<Candidate> candidates) {
+                int capacity = 16;
+                while (capacity < candidates.size() * 2) {
+                    capacity <<= 1;
+                }
+                this.ids = new byte[candidates.size()][];
+                this.table = new int[capacity];
+                this.slotOf = new int[candidates.size()];
+                int slots = 0;
+                for (int c = 0; c < candidates.size(); c++) {
+                    byte[] id = candidates.get(c).getId().getBytes(StandardCharsets.UTF_8);
+                    int existing = find(id, 0, id.length);
+                    if (existing >= 0) {
+                        slotOf[c] = existing;
+                        continue;
+                    }
+                    ids[slots] = id;
+                    int mask = table.length - 1;
+                    int t = VoterRoll.hashId(id, 0, id.length) & mask;
+                    while (table[t] != 0) {
+                        t = (t + 1) & mask;
+                    }
+                    table[t] = slots + 1;
+                    slotOf[c] = slots++;
+                }
+            }
+
+            int capacity() {
+                return ids.length;
+            }
+
+            int slotOf(int candidate) {
+                return slotOf[candidate];
+            }
+
+            // Returns the slot, or -1 for an unknown id.
+            int find(byte[] b, int off, int len) {
+                int mask = table.length - 1;
+                for (int t = VoterRoll.hashId(b, off, len) & mask; ; t = (t + 1) & mask) {
+                    int entry = table[t];
+                    if (entry == 0)
+                        return -1;
+                    if (Arrays.equals(ids[entry - 1], 0, ids[entry - 1].length, b, off, off + len))
+                        return entry - 1;
+                }
+            }
+        }
+    }
+
+    // Point-in-time snapshots of the whole election: the candidates with
+    // their tallies, the voter roll and the list of who has voted, all as of
+    // one ledger seq. The contents are cut into 1 MB chunks, deflated and
+    // stored once under snapshots/chunks by SHA-256; a snapshot itself is a
+    // small manifest naming its chunks. Roll records and the voted list only
+    // grow at the end (voted flags are left out of the roll chunks and come
+    // from the voted list), so a new snapshot shares every chunk but the
+    // last few with the one before it. Unchanged chunks are recognised by
+    // CRC32C against the previous manifest and are not hashed again.
+    // restore() rebuilds a data directory at any ledger seq from the
+    // snapshot before it plus the ballots after it.
+    static class Snapshots {
+        static final String DIR = "snapshots";
+        private static final String PREFIX = "snapshot.";
+        private static final String SUFFIX = ".txt";
+        private static final int CHUNK_BYTES = 1 << 20;
+
+        static final class Chunk {
+            final String hash;
+            final long crc;
+            final int length;
+
+            Chunk(String hash, long crc, int length) {
+                this.hash = hash;
+                this.crc = crc;
+                this.length = length;
+            }
+        }
+
+        public static class Snapshot {
+            private final long time;
+            private final long seq;
+            private final String candidates;
+            private final byte[] rollHeader;
+            private final List<Chunk> roll;
+            private final List<Chunk> voted;
+            private long storedBytes;
+            private long millis;
+
+            Snapshot(long time, long seq, String candidates, byte[] rollHeader, List<Chunk> roll, List<Chunk> voted) {
+                this.time = time;
+                this.seq = seq;
+                this.candidates = candidates;
+                this.rollHeader = rollHeader;
+                this.roll = roll;
+                this.voted = voted;
+            }
+
+            public long getTime() {
+                return time;
+            }
+
+            // Ledger seq of the last ballot included.
+            public long getSeq() {
+                return seq;
+            }
+
+            public int getVoters() {
+                return ByteBuffer.wrap(rollHeader).getInt(VoterRoll.COUNT_OFFSET);
+            }
+
+            // Size of the roll and voted list it describes, before compression.
+            public long getBytes() {
+                long bytes = 0;
+                for (Chunk c : roll) {
+                    bytes += c.length;
+                }
+                for (Chunk c : voted) {
+                    bytes += c.length;
+                }
+                return bytes;
+            }
+
+            // Compressed bytes this snapshot added to the chunk store; 0 when read back from disk.
+            public long getStoredBytes() {
+                return storedBytes;
+            }
+
+            public long getMillis() {
+                return millis;
+            }
+
+            @Override
+            public String toString() {
+                return String.format("%tF %<tT  seq %d  %d voters  %.1f MB", time, seq, getVoters(), getBytes() / 1e6)
+                        + (millis > 0 ? String.format("  (stored %.1f MB in %d ms)", storedBytes / 1e6, millis) : "");
+            }
+        }
+
+        public static class RestoreReport {
+            private final Path target;
+            private final long seq;
+            private final Snapshot base;
+            private final long replayed;
+            private final int voters;
+            private final int voted;
+            private final int candidates;
+            private final long millis;
+
+            RestoreReport(Path target, long seq, Snapshot base, long replayed, int voters, int voted, int candidates,
+                          long millis) {
+                this.target = target;
+                this.seq = seq;
+                this.base = base;
+                this.replayed = replayed;
+                this.voters = voters;
+                this.voted = voted;
+                this.candidates = candidates;
+                this.millis = millis;
+            }
+
+            // Ledger seq the restored state reflects; lower than asked for if the ledger ends sooner.
+            public long getSeq() {
+                return seq;
+            }
+
+            // Null when the state was rebuilt from the legacy baseline.
+            public Snapshot getBase() {
+                return base;
+            }
+
+            // Ballots applied on top of the snapshot.
+            public long getReplayed() {
+                return replayed;
+            }
+
+            public int getVoters() {
+                return voters;
+            }
+
+            public int getVoted() {
+                return voted;
+            }
+
+            public int getCandidates() {
+                return candidates;
+            }
+
+            public long getMillis() {
+                return millis;
+            }
+
+            @Override
+            public String toString() {
+                return "Restored seq " + seq + " to " + target + " from "
+                        + (base == null ? "the baseline" : "snapshot at seq " + base.seq) + " + " + replayed
+                        + " ballots: " + candidates + " candidates, " + voters + " voters, " + voted + " voted, in "
+                        + millis + " ms\n";
+            }
+        }
+
+        // Stores the candidates with the tallies in vote_snapshot.txt, the
+        // voter roll and the voted list from that file. The caller compacts
+        // the ledger first so the snapshot is as recent as possible.
+        public static synchronized Snapshot take(List<Candidate> live) throws IOException {
+            long start = System.nanoTime();
+            Path chunks = FileHandler.resolve(DIR).resolve("chunks");
+            Files.createDirectories(chunks);
+            List<Snapshot> existing = list();
+            Snapshot previous = existing.isEmpty() ? null : existing.get(existing.size() - 1);
+            MessageDigest md = BallotChain.sha256();
+            long[] stored = { 0 };
+
+            long seq;
+            Map<String, Integer> votes = new HashMap<>();
+            List<Chunk> voted = new ArrayList<>();
+            try (FileChannel tallies = FileChannel.open(FileHandler.resolve(VoteLedger.SNAPSHOT_FILE),
+                    StandardOpenOption.READ)) {
+                // One open file throughout, so a fold renaming a new snapshot into place cannot mix two
+                long[] votedStart = { 0 };
+                seq = readTallies(tallies, votes, votedStart);
+                long position = votedStart[0];
+                ByteBuffer buf = ByteBuffer.allocate(CHUNK_BYTES);
+                long end = tallies.size();
+                for (int i = 0; position < end; i++) {
+                    buf.clear().limit((int) Math.min(buf.capacity(), end - position));
+                    while (buf.hasRemaining() && tallies.read(buf, position + buf.position()) > 0) {
+                    }
+                    // Chunks end on a line break, so each holds whole lines and the cuts never move
+                    int length = buf.position();
+                    if (length == 0)
+                        break;
+                    if (position + length < end) {
+                        int cut = length;
+                        while (cut > 0 && buf.get(cut - 1) != '\n') {
+                            cut--;
+                        }
+                        length = cut > 0 ? cut : length;
+                    }
+                    position += length;
+                    voted.add(store(chunks, buf.array(), length, previousChunk(previous, false, i), md, stored));
+                }
+            }
+
+            List<Candidate> copies = new ArrayList<>();
+            for (Candidate c : live) {
+                Candidate copy = new Candidate(c.getName(), c.getPlace(), c.getId(), c.getParty(), c.getSymbol(),
+                        c.getAssets(), c.getCriminalCases());
+                copy.setManifesto(c.getManifesto());
+                copy.setVotes(votes.getOrDefault(c.getId(), 0));
+                copies.add(copy);
+            }
+            ByteArrayOutputStream candidateBytes = new ByteArrayOutputStream();
+            BinaryFormat.writeCandidates(candidateBytes, copies);
+            byte[] candidateData = candidateBytes.toByteArray();
+            String candidates = store(chunks, candidateData, candidateData.length, null, md, stored).hash;
+
+            byte[] header = new byte[VoterRoll.HEADER_SIZE];
+            List<Chunk> roll = new ArrayList<>();
+            try (FileChannel channel = FileChannel.open(FileHandler.resolve(FileHandler.VOTER_DATA),
+                    StandardOpenOption.READ)) {
+                ByteBuffer h = ByteBuffer.wrap(header);
+                while (h.hasRemaining() && channel.read(h, h.position()) > 0) {
+                }
+                int recordSize = VoterRoll.recordSize(h);
+                long end = VoterRoll.HEADER_SIZE + (long) h.getInt(VoterRoll.COUNT_OFFSET) * recordSize;
+                // Chunks hold whole records so the voted flags can be blanked
+                ByteBuffer buf = ByteBuffer.allocate(CHUNK_BYTES / recordSize * recordSize);
+                boolean sameLayout = previous != null
+                        && VoterRoll.recordSize(ByteBuffer.wrap(previous.rollHeader)) == recordSize;
+                long position = VoterRoll.HEADER_SIZE;
+                for (int i = 0; position < end; i++) {
+                    buf.clear().limit((int) Math.min(buf.capacity(), end - position));
+                    while (buf.hasRemaining() && channel.read(buf, position + buf.position()) > 0) {
+                    }
+                    int length = buf.position();
+                    if (length == 0)
+                        break;
+                    for (int off = 0; off < length; off += recordSize) {
+                        buf.array()[off] = 0;
+                    }
+                    position += length;
+                    roll.add(store(chunks, buf.array(), length, sameLayout ? previousChunk(previous, true, i) : null,
+                            md, stored));
+                }
+            }
+
+            long time = System.currentTimeMillis();
+            if (previous != null && time <= previous.time)
+                time = previous.time + 1;
+            Snapshot snapshot = new Snapshot(time, seq, candidates, header, roll, voted);
+            writeManifest(FileHandler.resolve(DIR).resolve(PREFIX + time + SUFFIX), snapshot);
+            snapshot.storedBytes = stored[0];
+            snapshot.millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+            return snapshot;
+        }
+
+        private static Chunk previousChunk(Snapshot previous, boolean roll, int i) {
+            if (previous == null)
+                return null;
+            List<Chunk> chunks = roll ? previous.roll : previous.voted;
+            return i < chunks.size() ? chunks.get(i) : null;
+        }
+
+        // Reads the seq and candidate tallies of a vote snapshot and sets
+        // votedStart to the offset where its "V,voterId" lines begin.
+        private static long readTallies(FileChannel channel, Map<String, Integer> votes, long[] votedStart)
+                throws IOException {
+            InputStream in = new BufferedInputStream(Channels.newInputStream(channel.position(0)));
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            long offset = 0;
+            long seq = -1;
+            while (true) {
+                line.reset();
+                int b;
+                while ((b = in.read()) >= 0 && b != '\n') {
+                    line.write(b);
+                }
+                if (b < 0 && line.size() == 0)
+                    break;
+                String text = line.toString(StandardCharsets.UTF_8);
+                if (seq < 0) {
+                    seq = VoteLedger.headerSeq(text);
+                } else if (text.startsWith("V,")) {
+                    break;
+                } else {
+                    String[] parts = text.split(",");
+                    if (parts[0].equals("C") && parts.length == 3)
+                        votes.put(parts[1], Integer.parseInt(parts[2]));
+                }
+                offset += line.size() + 1;
+            }
+            votedStart[0] = Math.min(offset, channel.size());
+            if (seq < 0)
+                throw new IOException("Vote snapshot is empty");
+            return seq;
+        }
+
+        private static Chunk store(Path chunks, byte[] b, int length, Chunk previous, MessageDigest md, long[] stored)
+                throws IOException {
+            CRC32C crc = new CRC32C();
+            crc.update(b, 0, length);
+            if (previous != null && previous.length == length && previous.crc == crc.getValue())
+                return previous;
+            md.update(b, 0, length);
+            String hash = BallotChain.hex(md.digest());
+            Path file = chunks.resolve(hash + ".z");
+            if (!Files.exists(file)) {
+                Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+                deflater.setInput(b, 0, length);
+                deflater.finish();
+                ByteArrayOutputStream out = new ByteArrayOutputStream(length / 4 + 64);
+                byte[] buf = new byte[1 << 16];
+                while (!deflater.finished()) {
+                    out.write(buf, 0, deflater.deflate(buf));
+                }
+                deflater.end();
+                AtomicFile.write(file, out::writeTo);
+                stored[0] += out.size();
+            }
+            return new Chunk(hash, crc.getValue(), length);
+        }
+
+        // Inflates a chunk and checks it against its hash.
+        private static byte[] load(String hash) throws IOException {
+            Path file = FileHandler.resolve(DIR).resolve("chunks").resolve(hash + ".z");
+            byte[] data;
+            try (InputStream in = new InflaterInputStream(Files.newInputStream(file))) {
+                data = in.readAllBytes();
+            }
+            if (!BallotChain.hex(BallotChain.sha256().digest(data)).equals(hash))
+                throw new IOException("Snapshot chunk " + file.getFileName() + " is damaged");
+            return data;
+        }
+
+        private static List<Candidate> loadCandidates(Snapshot s) throws IOException {
+            return BinaryFormat.readCandidates(new ByteArrayInputStream(load(s.candidates)),
+                    Paths.get(DIR, "chunks", s.candidates + ".z"));
+        }
+
+        private static void writeManifest(Path file, Snapshot s) throws IOException {
+            StringBuilder sb = new StringBuilder();
+            sb.append("time ").append(s.time).append('\n');
+            sb.append("seq ").append(s.seq).append('\n');
+            sb.append("candidates ").append(s.candidates).append('\n');
+            sb.append("header ").append(BallotChain.hex(s.rollHeader)).append('\n');
+            for (Chunk c : s.roll) {
+                sb.append("roll ").append(c.hash).append(' ').append(c.crc).append(' ').append(c.length).append('\n');
+            }
+            for (Chunk c : s.voted) {
+                sb.append("voted ").append(c.hash).append(' ').append(c.crc).append(' ').append(c.length).append('\n');
+            }
+            byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+            AtomicFile.write(file, out -> out.write(bytes));
+        }
+
+        private static Snapshot readManifest(Path file) throws IOException {
+            long time = 0;
+            long seq = -1;
+            String candidates = null;
+            byte[] header = null;
+            List<Chunk> roll = new ArrayList<>();
+            List<Chunk> voted = new ArrayList<>();
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                String[] parts = line.split(" ");
+                switch (parts[0]) {
+                    case "time":
+                        time = Long.parseLong(parts[1]);
+                        break;
+                    case "seq":
+                        seq = Long.parseLong(parts[1]);
+                        break;
+                    case "candidates":
+                        candidates = parts[1];
+                        break;
+                    case "header":
+                        header = HexFormat.of().parseHex(parts[1]);
+                        break;
+                    case "roll":
+                    case "voted":
+                        (parts[0].equals("roll") ? roll : voted).add(
+                                new Chunk(parts[1], Long.parseLong(parts[2]), Integer.parseInt(parts[3])));
+                        break;
+                    default:
+                        break;
+                }
+            }
+            if (seq < 0 || candidates == null || header == null)
+                throw new IOException(file.getFileName() + " is incomplete");
+            return new Snapshot(time, seq, candidates, header, roll, voted);
+        }
+
+        // Every readable snapshot, oldest first.
+        public static List<Snapshot> list() {
+            List<Snapshot> snapshots = new ArrayList<>();
+            Path dir = FileHandler.resolve(DIR);
+            if (!Files.isDirectory(dir))
+                return snapshots;
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+                for (Path p : ds) {
+                    try {
+                        snapshots.add(readManifest(p));
+                    } catch (IOException | RuntimeException e) {
+                        System.err.println("Skipping snapshot " + p.getFileName() + ": " + e.getMessage());
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Error listing snapshots: " + e.getMessage());
+            }
+            snapshots.sort(Comparator.comparingLong(Snapshot::getSeq).thenComparingLong(Snapshot::getTime));
+            return snapshots;
+        }
+
+        // The latest snapshot at or before seq, or null.
+        private static Snapshot baseFor(List<Snapshot> snapshots, long seq) {
+            Snapshot base = null;
+            for (Snapshot s : snapshots) {
+                if (s.seq <= seq)
+                    base = s;
+            }
+            return base;
+        }
+
+        // The last seq of the ledger as written before timeMillis: replay
+        // stops at the first record stamped later than that.
+        public static long seqAt(long timeMillis) throws IOException {
+            long[] last = { 0 };
+            BallotChain.scan(1, Long.MAX_VALUE, (seq, b, off, textLen, hashOff) -> {
+                int comma = off + textLen;
+                while (comma > off && b[comma - 1] != ',') {
+                    comma--;
+                }
+                long time = 0;
+                for (int i = comma; i < off + textLen; i++) {
+                    time = time * 10 + (b[i] - '0');
+                }
+                if (time > timeMillis)
+                    return false;
+                last[0] = seq;
+                return true;
+            });
+            return last[0];
+        }
+
+        // Feeds the ballots with after < seq <= upTo to the handler and returns the highest seq seen.
+        private static long replay(long after, long upTo, VoteLedger.RecordHandler handler) {
+            List<Path> files = VoteLedger.ballotFiles();
+            long last = after;
+            for (int i = 0; i < files.size(); i++) {
+                if (VoteLedger.segmentStart(files.get(i)) > upTo)
+                    break;
+                if (i + 1 < files.size() && VoteLedger.segmentStart(files.get(i + 1)) <= after + 1)
+                    continue;
+                long seen = VoteLedger.forEachRecord(files.get(i), (seq, voterId, candidateId) -> {
+                    if (seq > after && seq <= upTo)
+                        handler.accept(seq, voterId, candidateId);
+                });
+                last = Math.max(last, Math.min(seen, upTo));
+            }
+            return last;
+        }
+
+        // The candidates and their tallies as of ledger seq, without touching
+        // the data files. Candidates registered after the snapshot the count
+        // starts from are taken from current.
+        public static List<Candidate> candidatesAt(long seq, List<Candidate> current) throws IOException {
+            Snapshot base = baseFor(list(), seq);
+            Map<String, Candidate> byId = new LinkedHashMap<>();
+            if (base != null) {
+                for (Candidate c : loadCandidates(base)) {
+                    byId.put(c.getId(), c);
+                }
+            }
+            Map<String, Integer> baseline = new HashMap<>();
+            if (base == null && VoteLedger.baselineFile() != null)
+                VoteLedger.readSnapshot(VoteLedger.baselineFile(), baseline, new HashSet<>());
+            for (Candidate c : current) {
+                if (!byId.containsKey(c.getId())) {
+                    Candidate copy = new Candidate(c.getName(), c.getPlace(), c.getId(), c.getParty(), c.getSymbol(),
+                            c.getAssets(), c.getCriminalCases());
+                    copy.setManifesto(c.getManifesto());
+                    copy.setVotes(baseline.getOrDefault(c.getId(), 0));
+                    byId.put(c.getId(), copy);
+                }
+            }
+            // The ledger only holds accepted ballots, so every record counts
+            replay(base == null ? 0 : base.seq, seq, (recordSeq, voterId, candidateId) -> {
+                Candidate c = byId.get(candidateId);
+                if (c != null)
+                    c.setVotes(c.getVotes() + 1);
+            });
+            return new ArrayList<>(byId.values());
+        }
+
+        // Rebuilds the election as of ledger seq in target, which must not
+        // already hold one: candidate.dat and voter.dat from the latest
+        // snapshot at or before seq, the ballots after it replayed on top,
+        // the vote snapshot, and the ledger and checkpoints cut at seq so the
+        // restored copy still recounts and verifies. Start the engine with
+        // -Delection.dataDir=<target> to use it. Voters and candidates added
+        // after that snapshot are included only if a replayed ballot names
+        // them; they are looked up in the current data files.
+        public static RestoreReport restore(long seq, Path target) throws IOException {
+            long start = System.nanoTime();
+            List<Snapshot> snapshots = list();
+            if (snapshots.isEmpty())
+                throw new IOException("No snapshots in " + FileHandler.resolve(DIR).toAbsolutePath());
+            Snapshot base = baseFor(snapshots, seq);
+            // Before the first snapshot the tallies come from the baseline and the layout from that snapshot
+            Snapshot layout = base != null ? base : snapshots.get(0);
+            Files.createDirectories(target);
+            for (String name : new String[] { FileHandler.CANDIDATE_DATA, FileHandler.VOTER_DATA,
+                    VoteLedger.SNAPSHOT_FILE }) {
+                if (Files.exists(target.resolve(name)))
+                    throw new IOException(target.resolve(name) + " already exists");
+            }
+
+            Map<String, Candidate> candidates = new LinkedHashMap<>();
+            for (Candidate c : loadCandidates(layout)) {
+                candidates.put(c.getId(), c);
+            }
+
+            Path rollFile = target.resolve(FileHandler.VOTER_DATA);
+            try (FileChannel channel = FileChannel.open(rollFile, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(layout.rollHeader));
+                for (Chunk c : layout.roll) {
+                    ByteBuffer buf = ByteBuffer.wrap(load(c.hash));
+                    while (buf.hasRemaining()) {
+                        channel.write(buf);
+                    }
+                }
+                channel.force(true);
+            }
+
+            Path votedFile = target.resolve(VoteLedger.SNAPSHOT_FILE + ".voted");
+            long replayed;
+            long reached;
+            int voterCount;
+            int votedCount;
+            try (VoterRoll roll = VoterRoll.open(rollFile);
+                 OutputStream votedOut = new BufferedOutputStream(Files.newOutputStream(votedFile), 1 << 16)) {
+                VoterRegistry voters = new VoterRegistry(roll, null);
+                if (base != null) {
+                    for (Chunk c : base.voted) {
+                        byte[] lines = load(c.hash);
+                        votedOut.write(lines);
+                        int lineStart = 0;
+                        while (lineStart < lines.length) {
+                            int lineEnd = VoterLoader.indexOf(lines, (byte) '\n', lineStart, lines.length);
+                            int index = voters.indexOf(lines, lineStart + 2, lineEnd - lineStart - 2);
+                            if (index >= 0 && voters.markVoted(index))
+                                roll.setVoted(index, true);
+                            lineStart = lineEnd + 1;
+                        }
+                    }
+                } else {
+                    Map<String, Integer> votes = new HashMap<>();
+                    Set<String> voted = new LinkedHashSet<>();
+                    if (VoteLedger.baselineFile() != null)
+                        VoteLedger.readSnapshot(VoteLedger.baselineFile(), votes, voted);
+                    for (Candidate c : candidates.values()) {
+                        c.setVotes(votes.getOrDefault(c.getId(), 0));
+                    }
+                    for (String voterId : voted) {
+                        int index = voters.indexOf(voterId);
+                        if (index >= 0 && voters.markVoted(index)) {
+                            roll.setVoted(index, true);
+                            votedOut.write(("V," + voterId + "\n").getBytes(StandardCharsets.UTF_8));
+                        }
+                    }
+                }
+
+                CurrentFiles current = new CurrentFiles();
+                long[] count = { 0 };
+                IOException[] failure = { null };
+                reached = replay(base == null ? 0 : base.seq, seq, (recordSeq, voterId, candidateId) -> {
+                    try {
+                        Candidate c = candidates.get(candidateId);
+                        if (c == null) {
+                            c = current.candidate(candidateId);
+                            if (c != null)
+                                candidates.put(candidateId, c);
+                        }
+                        int index = voters.indexOf(voterId);
+                        if (index < 0) {
+                            Voter v = current.voter(voterId);
+                            if (v != null)
+                                index = voters.add(v.getName(), v.getId());
+                        }
+                        if (c != null && index >= 0 && voters.markVoted(index)) {
+                            c.setVotes(c.getVotes() + 1);
+                            roll.setVoted(index, true);
+                            votedOut.write(("V," + voterId + "\n").getBytes(StandardCharsets.UTF_8));
+                            count[0]++;
+                        }
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                });
+                current.close();
+                if (failure[0] != null)
+                    throw failure[0];
+                replayed = count[0];
+                voterCount = voters.size();
+                votedCount = voters.votedCount();
+            }
+            BinaryFormat.writeCandidates(target.resolve(FileHandler.CANDIDATE_DATA), new ArrayList<>(candidates.values()));
+
+            // The vote snapshot: seq, tallies, then the voted list written above
+            Path snapshotFile = target.resolve(VoteLedger.SNAPSHOT_FILE);
+            try (FileChannel voted = FileChannel.open(votedFile, StandardOpenOption.READ)) {
+                VoteLedger.writeSnapshotFile(snapshotFile, reached, BallotChain.hashAt(reached), out -> {
+                    StringBuilder sb = new StringBuilder();
+                    for (Candidate c : candidates.values()) {
+                        sb.append("C,").append(c.getId()).append(',').append(c.getVotes()).append('\n');
+                    }
+                    out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+                    Channels.newInputStream(voted).transferTo(out);
+                });
+            }
+            Files.delete(votedFile);
+
+            copyLedger(reached, target);
+            return new RestoreReport(target, reached, base, replayed, voterCount, votedCount, candidates.size(),
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+
+        // Ballot records up to seq become the restored copy's archive, with
+        // the baseline and the checkpoints that cover them.
+        private static void copyLedger(long seq, Path target) throws IOException {
+            List<Path> files = VoteLedger.ballotFiles();
+            for (int i = 0; i < files.size(); i++) {
+                Path file = files.get(i);
+                long first = VoteLedger.segmentStart(file);
+                if (first > seq)
+                    break;
+                Path copy = target.resolve(VoteLedger.archivePath(file).getFileName());
+                if (i + 1 < files.size() && VoteLedger.segmentStart(files.get(i + 1)) <= seq + 1) {
+                    Files.copy(file, copy);
+                    continue;
+                }
+                try (BufferedReader br = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+                     BufferedWriter bw = Files.newBufferedWriter(copy, StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = br.readLine()) != null) {
+                        int comma = line.indexOf(',');
+                        try {
+                            if (comma > 0 && Long.parseLong(line.substring(0, comma)) > seq)
+                                break;
+                        } catch (NumberFormatException nfe) {
+                            continue;
+                        }
+                        bw.write(line);
+                        bw.newLine();
+                    }
+                }
+            }
+            Path baseline = VoteLedger.baselineFile();
+            if (baseline != null)
+                Files.copy(baseline, target.resolve(baseline.getFileName()));
+            StringBuilder checkpoints = new StringBuilder();
+            for (BallotChain.Checkpoint cp : BallotChain.readCheckpoints()) {
+                if (cp.getLast() <= seq)
+                    checkpoints.append(cp.getFirst()).append(',').append(cp.getLast()).append(',')
+                            .append(cp.getChainHash()).append(',').append(cp.getMerkleRoot()).append('\n');
+            }
+            if (checkpoints.length() > 0)
+                Files.writeString(target.resolve(BallotChain.CHECKPOINT_FILE), checkpoints);
+        }
+
+        // The live data files, opened only if a replayed ballot names a voter
+        // or candidate the snapshot does not have.
+        private static class CurrentFiles implements Closeable {
+            private Map<String, Candidate> candidates;
+            private VoterRoll roll;
+            private VoterRegistry voters;
+
+            Candidate candidate(String id) {
+                if (candidates == null) {
+                    candidates = new HashMap<>();
+                    for (Candidate c : FileHandler.readCandidates()) {
+                        c.setVotes(0);
+                        candidates.put(c.getId(), c);
+                    }
+                }
+                return candidates.get(id);
+            }
+
+            Voter voter(String id) throws IOException {
+                if (voters == null) {
+                    roll = FileHandler.openVoterRoll();
+                    voters = new VoterRegistry(roll, null);
+                }
+                return voters.findById(id);
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (roll != null)
+                    roll.close();
+            }
+        }
+    }
+
+    // Write-behind stage between vote intake and the election files. Callers
+    // count the records they changed with markDirty(); one writer thread runs
+    // the flush every -Delection.flushMillis ms (default 1000), or as soon as
+    // -Delection.maxDirty records (default 10000) are waiting, so a burst of
+    // votes costs one flush rather than one per vote. A flush that fails
+    // leaves its records dirty for the next attempt.
+    static class WriteBehind implements Closeable {
+        private final BooleanSupplier flush;
+        private final long maxDirty;
+        private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "election-writer");
+            t.setDaemon(true);
+            return t;
+        });
+        private final AtomicLong dirty = new AtomicLong();
+        private final AtomicBoolean flushQueued = new AtomicBoolean();
+        private final LongAdder flushes = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder flushedRecords = new LongAdder();
+        private final LongAdder totalFlushNanos = new LongAdder();
+        private final AtomicLong maxFlushNanos = new AtomicLong();
+        private volatile long lastFlushNanos;
+
+        // flush returns false if anything could not be saved.
+        public WriteBehind(BooleanSupplier flush) {
+            this.flush = flush;
+            this.maxDirty = Long.getLong("election.maxDirty", 10_000L);
+            long interval = Long.getLong("election.flushMillis", 1000L);
+            writer.scheduleWithFixedDelay(() -> {
+                if (dirty.get() > 0)
+                    runFlush();
+            }, interval, interval, TimeUnit.MILLISECONDS);
+        }
+
+        public void markDirty(long records) {
+            if (dirty.addAndGet(records) >= maxDirty)
+                requestFlush();
+        }
+
+        // Queues a flush without waiting for it; one already queued covers this request.
+        public void requestFlush() {
+            if (flushQueued.compareAndSet(false, true))
+                writer.execute(this::runFlush);
+        }
+
+        // Flushes on the writer thread and waits; returns false if the flush failed.
+        public boolean flushNow() {
+            try {
+                return writer.submit(this::runFlush).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException e) {
+                return false;
+            }
+        }
+
+        private boolean runFlush() {
+            flushQueued.set(false);
+            long records = dirty.getAndSet(0);
+            long start = System.nanoTime();
+            boolean ok;
+            try {
+                ok = flush.getAsBoolean();
+            } catch (RuntimeException e) {
+                System.err.println("Error flushing election files: " + e.getMessage());
+                ok = false;
+            }
+            long nanos = System.nanoTime() - start;
+            if (!ok) {
+                dirty.addAndGet(records);
+                failures.increment();
+                return false;
+            }
+            flushes.increment();
+            flushedRecords.add(records);
+            totalFlushNanos.add(nanos);
+            maxFlushNanos.accumulateAndGet(nanos, Math::max);
+            lastFlushNanos = nanos;
+            return true;
+        }
+
+        public Stats stats() {
+            long n = flushes.sum();
+            return new Stats(dirty.get(), n, failures.sum(), flushedRecords.sum(), lastFlushNanos / 1e6,
+                    n == 0 ? 0 : totalFlushNanos.sum() / 1e6 / n, maxFlushNanos.get() / 1e6);
+        }
+
+        // Runs a final flush of anything pending.
+        @Override
+        public void close() {
+            if (writer.isShutdown())
+                return;
+            writer.execute(this::runFlush);
+            writer.shutdown();
+            try {
+                if (!writer.awaitTermination(10, TimeUnit.SECONDS))
+                    System.err.println("Gave up waiting for pending election file saves");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        public static class Stats {
+            private final long queueDepth;
+            private final long flushes;
+            private final long failures;
+            private final long flushedRecords;
+            private final double lastFlushMillis;
+            private final double meanFlushMillis;
+            private final double maxFlushMillis;
+
+            Stats(long queueDepth, long flushes, long failures, long flushedRecords, double lastFlushMillis,
+                  double meanFlushMillis, double maxFlushMillis) {
+                this.queueDepth = queueDepth;
+                this.flushes = flushes;
+                this.failures = failures;
+                this.flushedRecords = flushedRecords;
+                this.lastFlushMillis = lastFlushMillis;
+                this.meanFlushMillis = meanFlushMillis;
+                this.maxFlushMillis = maxFlushMillis;
+            }
+
+            // Changed records not yet flushed.
+            public long getQueueDepth() {
+                return queueDepth;
+            }
+
+            public long getFlushes() {
+                return flushes;
+            }
+
+            public long getFailures() {
+                return failures;
+            }
+
+            public long getFlushedRecords() {
+                return flushedRecords;
+            }
+
+            public double getLastFlushMillis() {
+                return lastFlushMillis;
+            }
+
+            public double getMeanFlushMillis() {
+                return meanFlushMillis;
+            }
+
+            public double getMaxFlushMillis() {
+                return maxFlushMillis;
+            }
+
+            @Override
+            public String toString() {
+                return String.format("queue=%d flushes=%d failures=%d records=%d flush ms last=%.2f mean=%.2f max=%.2f",
+                        queueDepth, flushes, failures, flushedRecords, lastFlushMillis, meanFlushMillis,
+                        maxFlushMillis);
+            }
+        }
+    }
+
+    // Process-wide instrumentation for the election hot paths, in the manner
+    // of a Micrometer registry: named counters, latency timers and gauges.
+    // The same numbers are readable three ways: JMX (ElectionEngine:type=Metrics),
+    // GET /metrics on the voting endpoint, and -Delection.metricsFile=<path>,
+    // rewritten every -Delection.metricsIntervalMillis ms (default 10000).
+    // The text form is the Prometheus exposition format. Names may carry
+    // labels, e.g. election_file_write_seconds{file="candidate.dat"}.
+    static class Metrics {
+        private static final Metrics GLOBAL = new Metrics();
+        private static final Map<VoteResult, Counter> REJECTIONS = new EnumMap<>(VoteResult.class);
+
+        private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+        private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+        private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+        static {
+            for (VoteResult r : VoteResult.values()) {
+                if (r != VoteResult.ACCEPTED)
+                    REJECTIONS.put(r, GLOBAL.counter("election_vote_rejections_total{reason=\"" + r + "\"}"));
+            }
+            try {
+                ObjectName name = new ObjectName("ElectionEngine:type=Metrics");
+                if (ManagementFactory.getPlatformMBeanServer().isRegistered(name))
+                    ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+                ManagementFactory.getPlatformMBeanServer().registerMBean(
+                        new StandardMBean(new MBeanView(GLOBAL), MetricsMBean.class), name);
+            } catch (JMException e) {
+                System.err.println("Error registering metrics MBean: " + e.getMessage());
+            }
+            String file = System.getProperty("election.metricsFile");
+            if (file != null)
+                GLOBAL.exportTo(Paths.get(file), Long.getLong("election.metricsIntervalMillis", 10_000L));
+        }
+
+        public static Metrics global() {
+            return GLOBAL;
+        }
+
+        static Counter rejection(VoteResult result) {
+            return REJECTIONS.get(result);
+        }
+
+        static void fileRead(String file, long nanos, long bytes) {
+            GLOBAL.timer("election_file_read_seconds{file=\"" + file + "\"}").record(nanos);
+            GLOBAL.counter("election_file_read_bytes_total{file=\"" + file + "\"}").add(bytes);
+        }
+
+        static void fileWrite(String file, long nanos, long bytes) {
+            GLOBAL.timer("election_file_write_seconds{file=\"" + file + "\"}").record(nanos);
+            GLOBAL.counter("election_file_write_bytes_total{file=\"" + file + "\"}").add(bytes);
+        }
+
+        public Counter counter(String name) {
+            return counters.computeIfAbsent(name, k -> new Counter());
+        }
+
+        public Timer timer(String name) {
+            return timers.computeIfAbsent(name, k -> new Timer());
+        }
+
+        // A later gauge with the same name replaces the earlier one, e.g. when a new Admin loads.
+        public void gauge(String name, LongSupplier value) {
+            gauges.put(name, value);
+        }
+
+        // Removes the gauge only if value is still the one registered under name.
+        public void removeGauge(String name, LongSupplier value) {
+            gauges.remove(name, value);
+        }
+
+        // Counters also report their rate as <name without _total>_per_second.
+        public String scrape() {
+            StringBuilder sb = new StringBuilder();
+            for (Map.Entry<String, Counter> e : new TreeMap<>(counters).entrySet()) {
+                sb.append(e.getKey()).append(' ').append(e.getValue().count()).append('\n');
+                if (e.getKey().endsWith("_total")) {
+                    String rate = e.getKey().substring(0, e.getKey().length() - "_total".length()) + "_per_second";
+                    sb.append(rate).append(' ').append(format(e.getValue().perSecond())).append('\n');
+                }
+            }
+            for (Map.Entry<String, Timer> e : new TreeMap<>(timers).entrySet()) {
+                Timer t = e.getValue();
+                for (double q : new double[] { 0.5, 0.99, 0.999 }) {
+                    sb.append(series(e.getKey(), "", "quantile=\"" + q + "\"")).append(' ')
+                            .append(format(t.percentile(q) / 1e9)).append('\n');
+                }
+                sb.append(series(e.getKey(), "_count", null)).append(' ').append(t.count()).append('\n');
+                sb.append(series(e.getKey(), "_sum", null)).append(' ').append(format(t.totalNanos() / 1e9)).append('\n');
+                sb.append(series(e.getKey(), "_max", null)).append(' ').append(format(t.maxNanos() / 1e9)).append('\n');
+            }
+            for (Map.Entry<String, LongSupplier> e : new TreeMap<>(gauges).entrySet()) {
+                sb.append(e.getKey()).append(' ').append(e.getValue().getAsLong()).append('\n');
+            }
+            return sb.toString();
+        }
+
+        // name{labels} + suffix + extra label -> name_suffix{labels,extra}
+        private static String series(String name, String suffix, String extraLabel) {
+            int brace = name.indexOf('{');
+            String base = brace < 0 ? name : name.substring(0, brace);
+            String labels = brace < 0 ? "" : name.substring(brace + 1, name.length() - 1);
+            if (extraLabel != null)
+                labels = labels.isEmpty() ? extraLabel : labels + "," + extraLabel;
+            return base + suffix + (labels.isEmpty() ? "" : "{" + labels + "}");
+        }
+
+        private static String format(double v) {
+            return String.format(Locale.ROOT, "%.6g", v);
+        }
+
+        private void exportTo(Path file, long intervalMillis) {
+            ScheduledExecutorService exporter = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "metrics-export");
+                t.setDaemon(true);
+                return t;
+            });
+            exporter.scheduleWithFixedDelay(() -> {
+                try {
+                    AtomicFile.write(file, out -> out.write(scrape().getBytes(StandardCharsets.UTF_8)));
+                } catch (IOException e) {
+                    System.err.println("Error writing metrics file: " + e.getMessage());
+                }
+            }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+
+        public static class Counter {
+            private final LongAdder count = new LongAdder();
+            // Guarded by this; the rate covers the window since it last rolled over
+            private long windowStart = System.nanoTime();
+            private long windowCount;
+            private double rate;
+
+            public void increment() {
+                count.increment();
+            }
+
+            public void add(long n) {
+                count.add(n);
+            }
+
+            public long count() {
+                return count.sum();
+            }
+
+            // Events per second over the last window of at least one second.
+            public synchronized double perSecond() {
+                long now = System.nanoTime();
+                if (now - windowStart >= 1_000_000_000L) {
+                    long c = count.sum();
+                    rate = (c - windowCount) * 1e9 / (now - windowStart);
+                    windowStart = now;
+                    windowCount = c;
+                }
+                return rate;
+            }
+        }
+
+        // Latency histogram with four buckets per power of two, so any
+        // percentile is within about 12% of the true value. Recording is two
+        // LongAdder increments and never allocates.
+        public static class Timer {
+            private static final int BUCKETS = 64 * 4;
+
+            private final LongAdder[] buckets = new LongAdder[BUCKETS];
+            private final LongAdder count = new LongAdder();
+            private final LongAdder total = new LongAdder();
+            private final AtomicLong max = new AtomicLong();
+
+            Timer() {
+                for (int i = 0; i < BUCKETS; i++) {
+                    buckets[i] = new LongAdder();
+                }
+            }
+
+            public void record(long nanos) {
+                long v = Math.max(1, nanos);
+                buckets[bucket(v)].increment();
+                count.increment();
+                total.add(v);
+                if (v > max.get())
+                    max.accumulateAndGet(v, Math::max);
+            }
+
+            private static int bucket(long v) {
+                int exp = 63 - Long.numberOfLeadingZeros(v);
+                if (exp < 2)
+                    return (int) v;
+                return exp * 4 + (int) ((v >>> (exp - 2)) & 3);
+            }
+
+            // Midpoint of the bucket holding the value.
+            private static double value(int bucket) {
+                if (bucket < 8)
+                    return bucket;
+                int exp = bucket / 4;
+                long low = (4L + bucket % 4) << (exp - 2);
+                return low + (1L << (exp - 2)) / 2.0;
+            }
+
+            public long count() {
+                return count.sum();
+            }
+
+            public long totalNanos() {
+                return total.sum();
+            }
+
+            public long maxNanos() {
+                return max.get();
+            }
+
+            // Nanoseconds at quantile q (0..1); 0 before anything is recorded.
+            public double percentile(double q) {
+                long[] counts = new long[BUCKETS];
+                long n = 0;
+                for (int i = 0; i < BUCKETS; i++) {
+                    counts[i] = buckets[i].sum();
+                    n += counts[i];
+                }
+                if (n == 0)
+                    return 0;
+                long rank = Math.max(1, (long) Math.ceil(q * n));
+                long seen = 0;
+                for (int i = 0; i < BUCKETS; i++) {
+                    seen += counts[i];
+                    if (seen >= rank)
+                        return Math.min(value(i), max.get());
+                }
+                return max.get();
+            }
+        }
+    }
+
+    // JMX view of the global metrics; attribute names follow the getters.
+    public interface MetricsMBean {
+        long getVotesAccepted();
+
+        long getVotesRejected();
+
+        double getVotesAcceptedPerSecond();
+
+        double getVotesRejectedPerSecond();
+
+        double getCastVoteP50Micros();
+
+        double getCastVoteP99Micros();
+
+        double getFindVoterP99Micros();
+
+        long getVoterRollHeapBytes();
+
+        long getPersistenceQueueDepth();
+
+        // Every metric in the text format.
+        String scrape();
+    }
+
+    static class MBeanView implements MetricsMBean {
+        private final Metrics metrics;
+
+        MBeanView(Metrics metrics) {
+            this.metrics = metrics;
+        }
+
+        public long getVotesAccepted() {
+            return metrics.counter("election_votes_accepted_total").count();
+        }
+
+        public long getVotesRejected() {
+            return metrics.counter("election_votes_rejected_total").count();
+        }
+
+        public double getVotesAcceptedPerSecond() {
+            return metrics.counter("election_votes_accepted_total").perSecond();
+        }
+
+        public double getVotesRejectedPerSecond() {
+            return metrics.counter("election_votes_rejected_total").perSecond();
+        }
+
+        public double getCastVoteP50Micros() {
+            return metrics.timer("election_cast_vote_seconds").percentile(0.5) / 1e3;
+        }
+
+        public double getCastVoteP99Micros() {
+            return metrics.timer("election_cast_vote_seconds").percentile(0.99) / 1e3;
+        }
+
+        public double getFindVoterP99Micros() {
+            return metrics.timer("election_find_voter_seconds").percentile(0.99) / 1e3;
+        }
+
+        public long getVoterRollHeapBytes() {
+            return gauge("election_voter_roll_heap_bytes");
+        }
+
+        public long getPersistenceQueueDepth() {
+            return gauge("election_persistence_queue_depth");
+        }
+
+        public String scrape() {
+            return metrics.scrape();
+        }
+
+        private long gauge(String name) {
+            LongSupplier g = metrics.gauges.get(name);
+            return g == null ? 0 : g.getAsLong();
+        }
+    }
+
+    // Push-based live results. Ballots never touch the feed: every
+    // election.feedIntervalMillis (default 100) one ticker thread samples
+    // the leaderboard and, if anything moved, publishes the deltas since the
+    // previous tick. Each subscriber is drained by its own task; while it is
+    // busy, newer updates are merged into the one pending update, so a slow
+    // subscriber holds at most one update and never delays the others or
+    // vote intake.
+    static class ResultsFeed implements Closeable {
+        private final CandidateRegistry registry;
+        private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+        private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "results-feed");
+            t.setDaemon(true);
+            return t;
+        });
+        private final ExecutorService delivery = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "results-delivery");
+            t.setDaemon(true);
+            return t;
+        });
+        // Guarded by this; only tick() reads or writes them
+        private Map<String, Integer> last = new HashMap<>();
+        private long seq;
+
+        public ResultsFeed(CandidateRegistry registry) {
+            this.registry = registry;
+            long interval = Long.getLong("election.feedIntervalMillis", 100L);
+            ticker.scheduleAtFixedRate(this::tick, interval, interval, TimeUnit.MILLISECONDS);
+        }
+
+        public Subscription subscribe(ResultsSubscriber subscriber) {
+            Subscription s = new Subscription(subscriber);
+            subscriptions.add(s);
+            return s;
+        }
+
+        // Samples now instead of waiting for the next tick, e.g. when the election ends.
+        public synchronized void tick() {
+            if (subscriptions.isEmpty())
+                return;
+            Leaderboard board = registry.leaderboard();
+            List<Leaderboard.Standing> standings = board.top(Integer.MAX_VALUE);
+            Map<String, Integer> now = new HashMap<>();
+            Map<String, Integer> deltas = new LinkedHashMap<>();
+            int total = 0;
+            for (Leaderboard.Standing s : standings) {
+                String id = s.getCandidate().getId();
+                now.put(id, s.getVotes());
+                total += s.getVotes();
+                int delta = s.getVotes() - last.getOrDefault(id, 0);
+                if (delta != 0)
+                    deltas.put(id, delta);
+            }
+            if (seq > 0 && deltas.isEmpty() && now.keySet().equals(last.keySet()))
+                return;
+            last = now;
+            ResultsUpdate update = new ResultsUpdate(++seq, System.currentTimeMillis(), total,
+                    Collections.unmodifiableList(standings), Collections.unmodifiableMap(deltas), 1);
+            for (Subscription s : subscriptions) {
+                s.offer(update);
+            }
+        }
+
+        @Override
+        public void close() {
+            ticker.shutdownNow();
+            delivery.shutdown();
+        }
+
+        public class Subscription implements Closeable {
+            private final ResultsSubscriber subscriber;
+            // Guarded by this
+            private ResultsUpdate pending;
+            private boolean draining;
+
+            Subscription(ResultsSubscriber subscriber) {
+                this.subscriber = subscriber;
+            }
+
+            private void offer(ResultsUpdate update) {
+                synchronized (this) {
+                    pending = pending == null ? update : pending.mergeInto(update);
+                    if (draining)
+                        return;
+                    draining = true;
+                }
+                delivery.execute(this::drain);
+            }
+
+            private void drain() {
+                while (true) {
+                    ResultsUpdate update;
+                    synchronized (this) {
+                        update = pending;
+                        pending = null;
+                        if (update == null) {
+                            draining = false;
+                            return;
+                        }
+                    }
+                    try {
+                        subscriber.onResults(update);
+                    } catch (RuntimeException e) {
+                        System.err.println("Results subscriber failed: " + e.getMessage());
+                    }
+                }
+            }
+
+            @Override
+            public void close() {
+                subscriptions.remove(this);
+            }
+        }
+
+        // Prints what changed, replacing the old VoteCounter's full dump every 5 seconds.
+        public static ResultsSubscriber logSink() {
+            return update -> {
+                StringBuilder sb = new StringBuilder("Vote count update #").append(update.getSeq())
+                        .append(" (total ").append(update.getTotalVotes()).append(")\n");
+                for (Leaderboard.Standing s : update.getStandings()) {
+                    Integer delta = update.getDeltas().get(s.getCandidate().getId());
+                    if (delta != null)
+                        sb.append(s.getCandidate().getName()).append(" - ").append(s.getVotes()).append(" votes (+")
+                                .append(delta).append(")\n");
+                }
+                System.out.print(sb);
+            };
+        }
+
+        // Rewrites file with the latest standings as "rank,name,party,place,votes" lines.
+        public static ResultsSubscriber fileSink(Path file) {
+            return update -> {
+                StringBuilder sb = new StringBuilder();
+                int rank = 1;
+                for (Leaderboard.Standing s : update.getStandings()) {
+                    Candidate c = s.getCandidate();
+                    sb.append(rank++).append(',').append(c.getName()).append(',').append(c.getParty()).append(',')
+                            .append(c.getPlace()).append(',').append(s.getVotes()).append('\n');
+                }
+                Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+                try {
+                    Files.write(tmp, sb.toString().getBytes(StandardCharsets.UTF_8));
+                    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    System.err.println("Error exporting results: " + e.getMessage());
+                }
+            };
+        }
+    }
+
+    // Election deadlines on one shared scheduled executor, however many
+    // elections (the national one plus any constituencies, keyed by place)
+    // are open at once. Every change is persisted to election_schedule.txt
+    // as "name,state,deadlineMillis,remainingMillis". Deadlines are wall-clock
+    // times, so polls close on time even if the process was down: after a
+    // restart a running election resumes its countdown, or ends at once if
+    // its deadline passed meanwhile. A paused election keeps its remaining
+    // time and does not count down.
+    static class ElectionScheduler implements Closeable {
+        private static final String SCHEDULE_FILE = "election_schedule.txt";
+
+        enum State {
+            RUNNING, PAUSED, ENDED
+        }
+
+        interface ExpiryHandler {
+            void onExpired(String election);
+        }
+
+        private static class Entry {
+            State state;
+            long deadline;
+            long remaining;
+            ScheduledFuture<?> timer;
+        }
+
+        private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "election-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+        private final ExpiryHandler handler;
+        // Guarded by this
+        private final Map<String, Entry> elections = new LinkedHashMap<>();
+
+        // Loads the persisted schedule; nothing counts down until recover().
+        public ElectionScheduler(ExpiryHandler handler) {
+            this.handler = handler;
+            Path file = FileHandler.resolve(SCHEDULE_FILE);
+            if (!Files.exists(file))
+                return;
+            try {
+                for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                    String[] parts = line.split(",");
+                    if (parts.length != 4)
+                        continue;
+                    Entry e = new Entry();
+                    e.state = State.valueOf(parts[1]);
+                    e.deadline = Long.parseLong(parts[2]);
+                    e.remaining = Long.parseLong(parts[3]);
+                    elections.put(parts[0], e);
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Error reading election schedule: " + e.getMessage());
+            }
+        }
+
+        // Re-arms every running election loaded from disk.
+        public synchronized void recover() {
+            for (Map.Entry<String, Entry> e : elections.entrySet()) {
+                if (e.getValue().state == State.RUNNING)
+                    arm(e.getKey(), e.getValue());
+            }
+        }
+
+        // Returns false if the election is already running or paused.
+        public synchronized boolean start(String election, long durationMillis) {
+            Entry e = elections.get(election);
+            if (e != null && e.state != State.ENDED)
+                return false;
+            e = new Entry();
+            e.state = State.RUNNING;
+            e.deadline = System.currentTimeMillis() + durationMillis;
+            elections.put(election, e);
+            arm(election, e);
+            persist();
+            return true;
+        }
+
+        public synchronized boolean pause(String election) {
+            Entry e = elections.get(election);
+            if (e == null || e.state != State.RUNNING)
+                return false;
+            e.timer.cancel(false);
+            e.state = State.PAUSED;
+            e.remaining = Math.max(0, e.deadline - System.currentTimeMillis());
+            persist();
+            return true;
+        }
+
+        public synchronized boolean resume(String election) {
+            Entry e = elections.get(election);
+            if (e == null || e.state != State.PAUSED)
+                return false;
+            e.state = State.RUNNING;
+            e.deadline = System.currentTimeMillis() + e.remaining;
+            arm(election, e);
+            persist();
+            return true;
+        }
+
+        // Adds time to a running or paused election.
+        public synchronized boolean extend(String election, long extraMillis) {
+            Entry e = elections.get(election);
+            if (e == null || e.state == State.ENDED)
+                return false;
+            if (e.state == State.PAUSED) {
+                e.remaining += extraMillis;
+            } else {
+                e.timer.cancel(false);
+                e.deadline += extraMillis;
+                arm(election, e);
+            }
+            persist();
+            return true;
+        }
+
+        // Ends an election early without calling the expiry handler.
+        public synchronized boolean end(String election) {
+            Entry e = elections.get(election);
+            if (e == null || e.state == State.ENDED)
+                return false;
+            if (e.timer != null)
+                e.timer.cancel(false);
+            e.state = State.ENDED;
+            persist();
+            return true;
+        }
+
+        // Null if the election was never started.
+        public synchronized State state(String election) {
+            Entry e = elections.get(election);
+            return e == null ? null : e.state;
+        }
+
+        public synchronized long remainingMillis(String election) {
+            Entry e = elections.get(election);
+            if (e == null || e.state == State.ENDED)
+                return 0;
+            return e.state == State.PAUSED ? e.remaining : Math.max(0, e.deadline - System.currentTimeMillis());
+        }
+
+        @Override
+        public void close() {
+            executor.shutdownNow();
+        }
+
+        private void arm(String election, Entry e) {
+            long delay = Math.max(0, e.deadline - System.currentTimeMillis());
+            e.timer = executor.schedule(() -> expire(election, e), delay, TimeUnit.MILLISECONDS);
+        }
+
+        private void expire(String election, Entry e) {
+            synchronized (this) {
+                // A pause, extension or restart since arming leaves this timer stale
+                if (elections.get(election) != e || e.state != State.RUNNING
+                        || e.deadline > System.currentTimeMillis())
+                    return;
+                e.state = State.ENDED;
+                persist();
+            }
+            handler.onExpired(election);
+        }
+
+        private void persist() {
+            StringBuilder sb = new StringBuilder();
+            for (Map.Entry<String, Entry> e : elections.entrySet()) {
+                Entry v = e.getValue();
+                sb.append(e.getKey()).append(',').append(v.state).append(',').append(v.deadline).append(',')
+                        .append(v.remaining).append('\n');
+            }
+            try {
+                AtomicFile.write(FileHandler.resolve(SCHEDULE_FILE),
+                        out -> out.write(sb.toString().getBytes(StandardCharsets.UTF_8)));
+            } catch (IOException e) {
+                System.err.println("Error saving election schedule: " + e.getMessage());
+            }
+        }
+    }
+
+    // Local HTTP front end over an Admin, for driving concurrent load at
+    // the engine. Bound to the loopback interface only. Requests and
+    // responses are UTF-8 plain text; POST bodies are form-encoded.
+    //   POST /login       name, id          -> "id=..", "name=..", "voted=.." lines, or 404
+    //   GET  /candidates                    -> one "name | party | symbol" line per candidate
+    //   POST /vote        voterId, candidate -> the VoteResult name
+    //   GET  /results     [?top=k]          -> one "name | party | votes" line per candidate
+    //   GET  /metrics                       -> Metrics.global().scrape()
+    // Each request runs on its own virtual thread where the JDK has them
+    // (21+); older JDKs use a pool of -Delection.httpThreads (default 64).
+    static class VotingServer implements Closeable {
+        static final int DEFAULT_PORT = 8080;
+        private static final int BACKLOG = 16_384;
+        private static final int MAX_BODY = 4096;
+
+        private final Admin admin;
+        private final HttpServer server;
+        private final ExecutorService handlers;
+        private final String threading;
+
+        // The JDK server reads these once, when the first server is created.
+        // Without nodelay small responses wait out the client's delayed ACK
+        // (~40 ms each). With its defaults it also closes keep-alive
+        // connections past the 200th idle one, or after 30 s of quiet, which
+        // a saturated load test hits while clients are about to reuse them.
+        // Any of them can be overridden with -D.
+        static {
+            setDefault("sun.net.httpserver.nodelay", "true");
+            setDefault("sun.net.httpserver.maxIdleConnections", String.valueOf(BACKLOG));
+            setDefault("sun.net.httpserver.idleInterval", "300");
+        }
+
+        private static void setDefault(String property, String value) {
+            if (System.getProperty(property) == null)
+                System.setProperty(property, value);
+        }
+
+        // Port 0 picks a free port; see getAddress().
+        public VotingServer(Admin admin, int port) throws IOException {
+            this.admin = admin;
+            this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+            ExecutorService virtual = virtualThreadExecutor();
+            if (virtual != null) {
+                this.handlers = virtual;
+                this.threading = "virtual threads";
+            } else {
+                int threads = Integer.getInteger("election.httpThreads", 64);
+                this.handlers = Executors.newFixedThreadPool(threads, r -> {
+                    Thread t = new Thread(r, "voting-http");
+                    t.setDaemon(true);
+                    return t;
+                });
+                this.threading = threads + " platform threads";
+            }
+            server.setExecutor(handlers);
+            server.createContext("/login", exchange -> handle(exchange, "POST", this::login));
+            server.createContext("/candidates", exchange -> handle(exchange, "GET", this::candidates));
+            server.createContext("/vote", exchange -> handle(exchange, "POST", this::vote));
+            server.createContext("/results", exchange -> handle(exchange, "GET", this::results));
+            server.createContext("/metrics", exchange -> handle(exchange, "GET", (params, body) -> {
+                body.append(Metrics.global().scrape());
+                return 200;
+            }));
+            server.start();
+        }
+
+        // Executors.newVirtualThreadPerTaskExecutor() is looked up reflectively
+        // so the engine still compiles and runs on JDK 17.
+        private static ExecutorService virtualThreadExecutor() {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                return null;
+            }
+        }
+
+        public InetSocketAddress getAddress() {
+            return server.getAddress();
+        }
+
+        // "virtual threads" or "<n> platform threads".
+        public String getThreading() {
+            return threading;
+        }
+
+        // A handler returns the status code and fills in the response body.
+        private interface Handler {
+            int handle(Map<String, String> params, StringBuilder body);
+        }
+
+        // A handler that throws still answers 500, so the client is not left
+        // waiting, and the exchange is closed either way.
+        private void handle(HttpExchange exchange, String method, Handler handler) throws IOException {
+            try (exchange) {
+                try {
+                    StringBuilder body = new StringBuilder();
+                    int status;
+                    if (!exchange.getRequestMethod().equals(method)) {
+                        exchange.getResponseHeaders().set("Allow", method);
+                        status = 405;
+                    } else {
+                        Map<String, String> params = parseForm(exchange.getRequestURI().getRawQuery());
+                        byte[] form = exchange.getRequestBody().readNBytes(MAX_BODY + 1);
+                        if (form.length > MAX_BODY) {
+                            status = 413;
+                        } else {
+                            params.putAll(parseForm(new String(form, StandardCharsets.UTF_8)));
+                            status = handler.handle(params, body);
+                        }
+                    }
+                    byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+                    exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+                    if (bytes.length > 0)
+                        exchange.getResponseBody().write(bytes);
+                } catch (RuntimeException e) {
+                    System.err.println("Error handling " + exchange.getRequestURI() + ": " + e.getMessage());
+                    // The response code stays -1 until headers are sent
+                    if (exchange.getResponseCode() < 0)
+                        exchange.sendResponseHeaders(500, -1);
+                }
+            }
+        }
+
+        private static Map<String, String> parseForm(String form) {
+            Map<String, String> params = new HashMap<>();
+            if (form == null || form.isEmpty())
+                return params;
+            for (String pair : form.split("&")) {
+                int eq = pair.indexOf('=');
+                if (eq <= 0)
+                    continue;
+                params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+            return params;
+        }
+
+        private int login(Map<String, String> params, StringBuilder body) {
+            String name = params.get("name");
+            String id = params.get("id");
+            if (name == null || id == null) {
+                body.append("name and id are required\n");
+                return 400;
+            }
+            Voter voter = admin.findVoter(name, id);
+            if (voter == null) {
+                body.append("Invalid Voter Credentials\n");
+                return 404;
+            }
+            body.append("id=").append(voter.getId()).append("\nname=").append(voter.getName())
+                    .append("\nvoted=").append(voter.hasVoted()).append('\n');
+            return 200;
+        }
+
+        private int candidates(Map<String, String> params, StringBuilder body) {
+            for (String line : admin.getCandidateSummary()) {
+                body.append(line).append('\n');
+            }
+            return 200;
+        }
+
+        private int vote(Map<String, String> params, StringBuilder body) {
+            String voterId = params.get("voterId");
+            String candidate = params.get("candidate");
+            if (voterId == null || candidate == null) {
+                body.append("voterId and candidate are required\n");
+                return 400;
+            }
+            VoteResult result = admin.castVote(voterId, candidate);
+            body.append(result).append('\n');
+            switch (result) {
+                case ACCEPTED:
+                    return 200;
+                case UNKNOWN_VOTER:
+                case UNKNOWN_CANDIDATE:
+                    return 404;
+                case NOT_RECORDED:
+                    return 503;
+                default:
+                    return 409;
+            }
+        }
+
+        private int results(Map<String, String> params, StringBuilder body) {
+            int top;
+            try {
+                top = Integer.parseInt(params.getOrDefault("top", String.valueOf(Integer.MAX_VALUE)));
+            } catch (NumberFormatException e) {
+                body.append("top must be a number\n");
+                return 400;
+            }
+            if (top < 0) {
+                body.append("top must not be negative\n");
+                return 400;
+            }
+            for (Leaderboard.Standing s : admin.getTopCandidates(top)) {
+                body.append(s.getCandidate().getName()).append(" | ").append(s.getCandidate().getParty())
+                        .append(" | ").append(s.getVotes()).append('\n');
+            }
+            return 200;
+        }
+
+        // Stops accepting requests and gives in-flight ones a second to finish.
+        @Override
+        public void close() {
+            server.stop(1);
+            handlers.shutdown();
+        }
+    }
+}
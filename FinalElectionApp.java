@@ -1,33 +1,74 @@
 import java.awt.*;
 import java.awt.event.*;
-import java.io.*;
-import java.util.*;
-import java.util.List;
 import javax.swing.*;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.plaf.basic.BasicButtonUI;
+import javax.swing.table.AbstractTableModel;
 
 public class FinalElectionApp {
-    // Global static fields for the system
-    private static Admin admin = new Admin();
-    private static Voter currentVoter;
-    private static Candidate currentCandidate;
-    private static volatile boolean electionRunning = false;
-    private static volatile boolean campaignRunning = false;
+    // Global static fields for the system; campaign/election state lives in the engine
+    private static ElectionEngine.Admin admin;
+    private static ElectionEngine.Voter currentVoter;
+    private static ElectionEngine.Candidate currentCandidate;
 
     // For screen switching using CardLayout
     private static JFrame frame;
     private static JPanel mainPanel;
     private static CardLayout cardLayout;
 
+    // Shown at the bottom of the window while the voter roll loads
+    private static JProgressBar loadProgressBar;
+
     // Reusable panels to avoid duplicates
     private static JPanel candidatePanel = null;
     private static JPanel votePagePanel = null;
 
+    // Shared by every vote page; the list on the page being replaced is detached from it
+    private static final CandidateListModel candidateListModel = new CandidateListModel();
+    private static JList<String> votePageList = null;
+
     // Reference to the voter panel’s tabbed pane so we can disable the Vote tab
     // later
     private static JTabbedPane voterTabbedPane = null;
 
     public static void main(String[] args) {
+        // Candidates load now; the voter roll streams in behind the UI
+        admin = new ElectionEngine.Admin(new ElectionEngine.LoadListener() {
+            @Override
+            public void onProgress(long done, long total) {
+                int percent = total == 0 ? 100 : (int) (done * 100 / total);
+                SwingUtilities.invokeLater(() -> {
+                    if (loadProgressBar != null) {
+                        loadProgressBar.setValue(percent);
+                        loadProgressBar.setString("Loading voter roll... " + percent + "%");
+                    }
+                });
+            }
+
+            @Override
+            public void onLoaded(int voterCount) {
+                SwingUtilities.invokeLater(() -> {
+                    if (loadProgressBar != null) {
+                        loadProgressBar.setVisible(false);
+                    }
+                });
+            }
+        });
+
+        // The engine raises events on its own threads; dialogs go through the EDT
+        admin.addListener(event -> {
+            if (event.getType() == ElectionEngine.ElectionEvent.Type.ELECTION_ENDED) {
+                ElectionEngine.Candidate winner = event.getCandidate();
+                String message = winner != null ? "Election Ended. Winner: " + winner.getName()
+                        : "Election Ended. No winner.";
+                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(frame, message));
+            }
+        });
+
         SwingUtilities.invokeLater(() -> {
             frame = new JFrame("Interactive Election Management System");
             frame.setSize(900, 750);
@@ -43,6 +84,14 @@ public class FinalElectionApp {
             mainPanel.add(createVoterPanel(), "VoterPanel");
 
             frame.add(mainPanel);
+
+            loadProgressBar = new JProgressBar(0, 100);
+            loadProgressBar.setStringPainted(true);
+            loadProgressBar.setString("Loading voter roll...");
+            loadProgressBar.setFont(new Font("SansSerif", Font.BOLD, 16));
+            loadProgressBar.setVisible(!admin.isLoaded());
+            frame.add(loadProgressBar, BorderLayout.SOUTH);
+
             frame.setLocationRelativeTo(null);
             frame.setVisible(true);
         });
@@ -267,9 +316,13 @@ public class FinalElectionApp {
             String symbol = candSymbolField.getText();
             String assets = candAssetsField.getText();
             String crim = candCrimField.getText();
-            admin.addCandidate(name, place, id, party, symbol, assets, crim);
-            showInteractiveDialog(candidateTab, "Candidate information updated interactively!", "Success",
-                    JOptionPane.INFORMATION_MESSAGE);
+            if (admin.addCandidate(name, place, id, party, symbol, assets, crim)) {
+                showInteractiveDialog(candidateTab, "Candidate information updated interactively!", "Success",
+                        JOptionPane.INFORMATION_MESSAGE);
+            } else {
+                showInteractiveDialog(candidateTab, "Candidate ID must not be empty or contain commas or line breaks!",
+                        "Error", JOptionPane.ERROR_MESSAGE);
+            }
         });
 
         JButton enterCandidateListButton = new JButton("Candidate List: ");
@@ -328,10 +381,19 @@ public class FinalElectionApp {
         gbc.gridwidth = 2;
         voterTab.add(addVoterButton, gbc);
         addVoterButton.addActionListener(e -> {
+            if (!admin.isLoaded()) {
+                showInteractiveDialog(voterTab, "Voter roll is still loading. Please wait.", "Info",
+                        JOptionPane.INFORMATION_MESSAGE);
+                return;
+            }
             String name = voterNameField.getText();
             String id = voterIdField.getText();
-            admin.addVoter(name, id);
-            showInteractiveDialog(voterTab, "Voter added interactively!", "Success", JOptionPane.INFORMATION_MESSAGE);
+            if (admin.addVoter(name, id)) {
+                showInteractiveDialog(voterTab, "Voter added interactively!", "Success", JOptionPane.INFORMATION_MESSAGE);
+            } else {
+                showInteractiveDialog(voterTab, "A voter with this ID is already registered, the name/ID is too long, or the ID contains a comma or line break!", "Error",
+                        JOptionPane.ERROR_MESSAGE);
+            }
         });
 
         JButton enterVoterListButton = new JButton("Registered Voters");
@@ -341,11 +403,7 @@ public class FinalElectionApp {
         gbc.gridx = 0;
         gbc.gridwidth = 2;
         voterTab.add(enterVoterListButton, gbc);
-        enterVoterListButton.addActionListener(e -> {
-            String list = admin.getVoterList();
-            showInteractiveDialog(voterTab, "Registered Voters:\n" + list, "Voter List",
-                    JOptionPane.INFORMATION_MESSAGE);
-        });
+        enterVoterListButton.addActionListener(e -> showVoterBrowser(voterTab));
 
         tabbedPane.addTab("Voter Management", voterTab);
 
@@ -371,9 +429,7 @@ public class FinalElectionApp {
         gbc.gridx = 0;
         campaignTab.add(startCampaignButton, gbc);
         startCampaignButton.addActionListener(e -> {
-            if (!campaignRunning) {
-                campaignRunning = true;
-                admin.startCampaign();
+            if (admin.startCampaign()) {
                 showInteractiveDialog(campaignTab, "Campaign started interactively!", "Success",
                         JOptionPane.INFORMATION_MESSAGE);
             } else {
@@ -388,9 +444,7 @@ public class FinalElectionApp {
         gbc.gridx = 0;
         campaignTab.add(endCampaignButton, gbc);
         endCampaignButton.addActionListener(e -> {
-            if (campaignRunning) {
-                campaignRunning = false;
-                admin.endCampaign();
+            if (admin.endCampaign()) {
                 showInteractiveDialog(campaignTab, "Campaign ended interactively!", "Success",
                         JOptionPane.INFORMATION_MESSAGE);
             } else {
@@ -433,10 +487,13 @@ public class FinalElectionApp {
         startElectionButton.addActionListener(e -> {
             try {
                 int duration = Integer.parseInt(durationField.getText());
-                admin.startElection(duration);
-                electionRunning = true;
-                showInteractiveDialog(electionTab, "Election started for " + duration + " seconds interactively!",
-                        "Success", JOptionPane.INFORMATION_MESSAGE);
+                if (admin.startElection(duration)) {
+                    showInteractiveDialog(electionTab, "Election started for " + duration + " seconds interactively!",
+                            "Success", JOptionPane.INFORMATION_MESSAGE);
+                } else {
+                    showInteractiveDialog(electionTab, "Election is already running!", "Info",
+                            JOptionPane.WARNING_MESSAGE);
+                }
             } catch (NumberFormatException nfe) {
                 showInteractiveDialog(electionTab, "Invalid duration entered!", "Error", JOptionPane.ERROR_MESSAGE);
             }
@@ -448,9 +505,7 @@ public class FinalElectionApp {
         gbc.gridx = 1;
         electionTab.add(endElectionButton, gbc);
         endElectionButton.addActionListener(e -> {
-            if (electionRunning) {
-                admin.endElection();
-                electionRunning = false;
+            if (admin.endElection()) {
                 showInteractiveDialog(electionTab, "Election ended interactively!", "Success",
                         JOptionPane.INFORMATION_MESSAGE);
             } else {
@@ -458,6 +513,66 @@ public class FinalElectionApp {
             }
         });
 
+        JButton pauseElectionButton = new JButton("Pause Election");
+        styleButton(pauseElectionButton);
+        pauseElectionButton.setFont(new Font("SansSerif", Font.BOLD, 22));
+        gbc.gridy = 3;
+        gbc.gridx = 0;
+        electionTab.add(pauseElectionButton, gbc);
+        pauseElectionButton.addActionListener(e -> {
+            if (admin.pauseElection()) {
+                showInteractiveDialog(electionTab, "Election paused with " + admin.getElectionSecondsLeft()
+                        + " seconds left.", "Success", JOptionPane.INFORMATION_MESSAGE);
+            } else {
+                showInteractiveDialog(electionTab, "Election is not running!", "Info", JOptionPane.WARNING_MESSAGE);
+            }
+        });
+
+        JButton resumeElectionButton = new JButton("Resume Election");
+        styleButton(resumeElectionButton);
+        resumeElectionButton.setFont(new Font("SansSerif", Font.BOLD, 22));
+        gbc.gridx = 1;
+        electionTab.add(resumeElectionButton, gbc);
+        resumeElectionButton.addActionListener(e -> {
+            if (admin.resumeElection()) {
+                showInteractiveDialog(electionTab, "Election resumed!", "Success", JOptionPane.INFORMATION_MESSAGE);
+            } else {
+                showInteractiveDialog(electionTab, "Election is not paused!", "Info", JOptionPane.WARNING_MESSAGE);
+            }
+        });
+
+        JButton extendElectionButton = new JButton("Extend by Duration");
+        styleButton(extendElectionButton);
+        extendElectionButton.setFont(new Font("SansSerif", Font.BOLD, 22));
+        gbc.gridy = 4;
+        gbc.gridx = 0;
+        electionTab.add(extendElectionButton, gbc);
+        extendElectionButton.addActionListener(e -> {
+            try {
+                int extra = Integer.parseInt(durationField.getText());
+                if (admin.extendElection(extra)) {
+                    showInteractiveDialog(electionTab, "Election extended! " + admin.getElectionSecondsLeft()
+                            + " seconds left.", "Success", JOptionPane.INFORMATION_MESSAGE);
+                } else {
+                    showInteractiveDialog(electionTab, "Election is not running!", "Info",
+                            JOptionPane.WARNING_MESSAGE);
+                }
+            } catch (NumberFormatException nfe) {
+                showInteractiveDialog(electionTab, "Invalid duration entered!", "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        });
+
+        JButton timeLeftButton = new JButton("Time Left");
+        styleButton(timeLeftButton);
+        timeLeftButton.setFont(new Font("SansSerif", Font.BOLD, 22));
+        gbc.gridx = 1;
+        electionTab.add(timeLeftButton, gbc);
+        timeLeftButton.addActionListener(e -> {
+            String state = !admin.isElectionRunning() ? "Election is not running."
+                    : admin.getElectionSecondsLeft() + " seconds left" + (admin.isElectionPaused() ? " (paused)." : ".");
+            showInteractiveDialog(electionTab, state, "Time Left", JOptionPane.INFORMATION_MESSAGE);
+        });
+
         tabbedPane.addTab("Election Control", electionTab);
 
         // Tab 5: Results
@@ -474,7 +589,7 @@ public class FinalElectionApp {
         gbc.gridy = 0;
         resultsTab.add(winnerButton, gbc);
         winnerButton.addActionListener(e -> {
-            if(electionRunning){showInteractiveDialog(resultsTab, "Election not ended yet!..." ,
+            if(admin.isElectionRunning()){showInteractiveDialog(resultsTab, "Election not ended yet!..." ,
                     "Info", JOptionPane.INFORMATION_MESSAGE);
             }
             else { String result = admin.getElectionWinner();
@@ -487,7 +602,7 @@ public class FinalElectionApp {
         gbc.gridx = 1;
         resultsTab.add(actualResultsButton, gbc);
         actualResultsButton.addActionListener(e -> {
-            if(electionRunning){
+            if(admin.isElectionRunning()){
                 showInteractiveDialog(resultsTab, "Election not ended yet!..." ,
                         "Info", JOptionPane.INFORMATION_MESSAGE);
             }
@@ -509,6 +624,47 @@ public class FinalElectionApp {
                     JOptionPane.INFORMATION_MESSAGE);
         });
 
+        JButton constituencyButton = new JButton("Constituency Results");
+        styleButton(constituencyButton);
+        constituencyButton.setFont(new Font("SansSerif", Font.BOLD, 22));
+        gbc.gridy = 2;
+        resultsTab.add(constituencyButton, gbc);
+        constituencyButton.addActionListener(e -> {
+            String results = admin.getConstituencyResultsText();
+            showInteractiveDialog(resultsTab, "Constituency Results:\n" + results, "Constituencies",
+                    JOptionPane.INFORMATION_MESSAGE);
+        });
+
+        JButton turnoutButton = new JButton("Turnout Analytics");
+        styleButton(turnoutButton);
+        turnoutButton.setFont(new Font("SansSerif", Font.BOLD, 22));
+        gbc.gridy = 3;
+        resultsTab.add(turnoutButton, gbc);
+        turnoutButton.addActionListener(e -> {
+            String report = admin.getTurnoutReport();
+            showInteractiveDialog(resultsTab, "Turnout:\n" + report, "Turnout Analytics",
+                    JOptionPane.INFORMATION_MESSAGE);
+        });
+
+        JLabel liveResultsLabel = new JLabel("Live results: no votes yet", SwingConstants.CENTER);
+        liveResultsLabel.setFont(new Font("SansSerif", Font.BOLD, 18));
+        liveResultsLabel.setForeground(new Color(25, 25, 112));
+        gbc.gridy = 4;
+        resultsTab.add(liveResultsLabel, gbc);
+        // Waiting for the EDT lets the feed merge updates while Swing is busy
+        admin.subscribeResults(update -> {
+            String leader = update.getStandings().isEmpty() ? "-"
+                    : update.getStandings().get(0).getCandidate().getName();
+            try {
+                SwingUtilities.invokeAndWait(() -> liveResultsLabel.setText(
+                        "Live results: " + update.getTotalVotes() + " votes, leading: " + leader));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (java.lang.reflect.InvocationTargetException ex) {
+                System.err.println("Error updating live results: " + ex.getCause());
+            }
+        });
+
         tabbedPane.addTab("Results", resultsTab);
 
         // would be added similarly.
@@ -570,7 +726,7 @@ public class FinalElectionApp {
         loginButton.addActionListener(e -> {
             String name = nameField.getText();
             String id = idField.getText();
-            Candidate candidate = admin.findCandidate(name, id);
+            ElectionEngine.Candidate candidate = admin.findCandidate(name, id);
             if (candidate != null) {
                 currentCandidate = candidate;
                 showInteractiveDialog(panel, "Login Successful!", "Success", JOptionPane.INFORMATION_MESSAGE);
@@ -654,7 +810,7 @@ public class FinalElectionApp {
         gbc.gridwidth = 2;
         profileTab.add(updateManifestoButton, gbc);
         updateManifestoButton.addActionListener(e -> {
-            if (campaignRunning) {
+            if (admin.isCampaignRunning()) {
                 String newManifesto = manifestoArea.getText();
                 currentCandidate.setManifesto(newManifesto);
                 showInteractiveDialog(profileTab, "Manifesto updated successfully!", "Success",
@@ -690,7 +846,7 @@ public class FinalElectionApp {
         gbc.gridy = 0;
         candidateResultsTab.add(resultsButton, gbc);
         resultsButton.addActionListener(e -> {
-            if(electionRunning) showInteractiveDialog(candidateResultsTab, "Election not ended yet!..." ,
+            if(admin.isElectionRunning()) showInteractiveDialog(candidateResultsTab, "Election not ended yet!..." ,
                     "Info", JOptionPane.INFORMATION_MESSAGE);
             else {String results = admin.getVoteCount();
                 showInteractiveDialog(candidateResultsTab, "Election Results:\n" + results, "Results",
@@ -704,7 +860,7 @@ public class FinalElectionApp {
         gbc.gridy = 1;
         candidateResultsTab.add(winnerButton, gbc);
         winnerButton.addActionListener(e -> {
-            if(electionRunning) {
+            if(admin.isElectionRunning()) {
                 showInteractiveDialog(candidateResultsTab, "Election not ended yet!..." ,
                         "Info", JOptionPane.INFORMATION_MESSAGE);
             }
@@ -782,9 +938,13 @@ public class FinalElectionApp {
         loginTab.add(loginStatusLabel, gbc);
 
         loginButton.addActionListener(e -> {
+            if (!admin.isLoaded()) {
+                loginStatusLabel.setText("Voter roll is still loading. Please wait.");
+                return;
+            }
             String name = voterNameField.getText();
             String id = voterIdField.getText();
-            Voter voter = admin.findVoter(name, id);
+            ElectionEngine.Voter voter = admin.findVoter(name, id);
             if (voter != null) {
                 if (voter.hasVoted()) {
                     loginStatusLabel.setText("You have already voted.");
@@ -836,7 +996,7 @@ public class FinalElectionApp {
                 showInteractiveDialog(voteTab, "You have already voted.", "Info", JOptionPane.WARNING_MESSAGE);
                 return;
             }
-            if (!electionRunning) {
+            if (!admin.isElectionRunning()) {
                 showInteractiveDialog(voteTab, "Voting has not yet started.", "Info", JOptionPane.INFORMATION_MESSAGE);
                 return;
             }
@@ -887,7 +1047,7 @@ public class FinalElectionApp {
         gbc.gridy = 0;
         resultsTab.add(winnerButton, gbc);
         winnerButton.addActionListener(e -> {
-            if(electionRunning) showInteractiveDialog(resultsTab, "Election not ended yet!..." ,
+            if(admin.isElectionRunning()) showInteractiveDialog(resultsTab, "Election not ended yet!..." ,
                     "Info", JOptionPane.INFORMATION_MESSAGE);
             else{
                 String result = admin.getElectionWinner();
@@ -901,7 +1061,7 @@ public class FinalElectionApp {
         gbc.gridy = 1;
         resultsTab.add(resultsButton, gbc);
         resultsButton.addActionListener(e -> {
-            if (electionRunning) {
+            if (admin.isElectionRunning()) {
                 showInteractiveDialog(resultsTab, "Election not ended yet!..." ,
                         "Info", JOptionPane.INFORMATION_MESSAGE);
             } else {
@@ -926,9 +1086,12 @@ public class FinalElectionApp {
         voteHeader.setForeground(new Color(25, 25, 112));
         votePage.add(voteHeader, BorderLayout.NORTH);
 
-        // Get candidate summary using "|" as delimiter
-        String[] candidateSummary = admin.getCandidateSummary();
-        JList<String> candidateList = new JList<>(candidateSummary);
+        // Candidate summaries use "|" as delimiter
+        candidateListModel.refresh();
+        if (votePageList != null)
+            votePageList.setModel(new DefaultListModel<>());
+        JList<String> candidateList = new JList<>(candidateListModel);
+        votePageList = candidateList;
         candidateList.setFont(new Font("SansSerif", Font.PLAIN, 24));
         candidateList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         candidateList.setFixedCellHeight(40);
@@ -957,7 +1120,7 @@ public class FinalElectionApp {
                 showInteractiveDialog(votePage, "You have already voted.", "Info", JOptionPane.WARNING_MESSAGE);
                 return;
             }
-            if (!electionRunning) {
+            if (!admin.isElectionRunning()) {
                 showInteractiveDialog(votePage, "Voting has not yet started.", "Info", JOptionPane.INFORMATION_MESSAGE);
                 return;
             }
@@ -968,9 +1131,20 @@ public class FinalElectionApp {
             }
             // Use "|" as the delimiter and trim spaces to extract the candidate's name.
             String candidateName = selected.split("\\|")[0].trim();
-            if (!currentVoter.hasVoted()) {
-                admin.castVote(currentVoter, candidateName);
+            ElectionEngine.VoteResult result = admin.castVote(currentVoter, candidateName);
+            if (result == ElectionEngine.VoteResult.ACCEPTED) {
                 showInteractiveDialog(votePage, "Vote cast successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
+            } else if (result == ElectionEngine.VoteResult.ALREADY_VOTED) {
+                showInteractiveDialog(votePage, "You have already voted.", "Info", JOptionPane.WARNING_MESSAGE);
+            } else if (result == ElectionEngine.VoteResult.VOTING_CLOSED) {
+                showInteractiveDialog(votePage, "Voting is paused or closed for this candidate's constituency.",
+                        "Info", JOptionPane.WARNING_MESSAGE);
+            } else if (result == ElectionEngine.VoteResult.NOT_RECORDED) {
+                showInteractiveDialog(votePage, "Your vote could not be recorded. Please try again.", "Error",
+                        JOptionPane.ERROR_MESSAGE);
+            } else {
+                showInteractiveDialog(votePage, "Selected candidate no longer exists.", "Error",
+                        JOptionPane.ERROR_MESSAGE);
             }
         });
 
@@ -985,448 +1159,221 @@ public class FinalElectionApp {
         return votePage;
     }
 
-    // ----------------------- Helper Methods for Styling -----------------------
-    private static void styleButton(JButton button) {
-        Color normalColor = new Color(70, 130, 180); // steel blue
-        Color hoverColor = new Color(100, 149, 237); // cornflower blue
-        button.setBackground(normalColor);
-        button.setForeground(Color.WHITE);
-        button.setFont(new Font("SansSerif", Font.BOLD, 16));
-        button.setFocusPainted(false);
-        button.setUI(new BasicButtonUI());
-        button.addMouseListener(new MouseAdapter() {
-            public void mouseEntered(MouseEvent e) {
-                button.setBackground(hoverColor);
-            }
-
-            public void mouseExited(MouseEvent e) {
-                button.setBackground(normalColor);
-            }
-        });
-    }
-
-    private static void styleLabel(JLabel label) {
-        label.setFont(new Font("SansSerif", Font.BOLD, 24));
-        label.setForeground(new Color(25, 25, 112));
-    }
-
-    // ----------------------- Custom Gradient Panel -----------------------
-    static class GradientPanel extends JPanel {
-        @Override
-        protected void paintComponent(Graphics g) {
-            super.paintComponent(g);
-            Graphics2D g2d = (Graphics2D) g;
-            int width = getWidth();
-            int height = getHeight();
-            Color startColor = new Color(173, 216, 230); // light blue
-            Color endColor = new Color(224, 255, 255); // light cyan
-            GradientPaint gp = new GradientPaint(0, 0, startColor, width, height, endColor);
-            g2d.setPaint(gp);
-            g2d.fillRect(0, 0, width, height);
-        }
-    }
-
-    // ----------------------- Supporting Classes -----------------------
-    static class Admin {
-        private List<Candidate> candidates;
-        private List<Voter> voters;
-
-        public Admin() {
-            this.candidates = FileHandler.readCandidates();
-            this.voters = FileHandler.readVoters();
-        }
-
-        public int getTotalVotes() {
-            int total = 0;
-            for (Candidate candidate : candidates) {
-                total += candidate.getVotes();
-            }
-            return total;
-        }
-
-        public void addCandidate(String name, String place, String id, String party, String symbol, String assets,
-                                 String criminalCases) {
-            Candidate candidate = new Candidate(name, place, id, party, symbol, assets, criminalCases);
-            boolean exists = false;
-            for (int i = 0; i < candidates.size(); i++) {
-                Candidate c = candidates.get(i);
-                if (c.getId().equals(id)) {
-                    candidates.set(i, candidate);
-                    exists = true;
-                    break;
+    // ----------------------- Registered Voters Browser -----------------------
+    // Searching runs off the EDT; the table then reads only the pages it paints.
+    private static void showVoterBrowser(Component parent) {
+        JDialog dialog = new JDialog(frame, "Registered Voters", false);
+        VoterTableModel model = new VoterTableModel();
+        JTable table = new JTable(model);
+        table.setFont(new Font("SansSerif", Font.PLAIN, 16));
+        table.setRowHeight(24);
+        table.getTableHeader().setFont(new Font("SansSerif", Font.BOLD, 16));
+        table.setFillsViewportHeight(true);
+
+        JTextField searchField = new JTextField(20);
+        searchField.setFont(new Font("SansSerif", Font.PLAIN, 16));
+        // Labels in the same order as ElectionEngine.VoterFilter
+        JComboBox<String> statusBox = new JComboBox<>(new String[] { "All voters", "Voted", "Not voted" });
+        statusBox.setFont(new Font("SansSerif", Font.PLAIN, 16));
+        JLabel countLabel = new JLabel("Searching...");
+        countLabel.setFont(new Font("SansSerif", Font.BOLD, 16));
+        JLabel searchLabel = new JLabel("Name or ID starts with:");
+        searchLabel.setFont(new Font("SansSerif", Font.BOLD, 16));
+
+        JPanel searchPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        searchPanel.add(searchLabel);
+        searchPanel.add(searchField);
+        searchPanel.add(statusBox);
+        searchPanel.add(countLabel);
+
+        // Only the newest search may replace the table, however the workers finish
+        int[] latest = { 0 };
+        Runnable search = () -> {
+            int seq = ++latest[0];
+            String prefix = searchField.getText().trim();
+            ElectionEngine.VoterFilter filter = ElectionEngine.VoterFilter.values()[statusBox.getSelectedIndex()];
+            countLabel.setText("Searching...");
+            new SwingWorker<ElectionEngine.VoterQuery, Void>() {
+                @Override
+                protected ElectionEngine.VoterQuery doInBackground() {
+                    return admin.queryVoters(prefix, filter);
                 }
-            }
-            if (!exists) {
-                candidates.add(candidate);
-            }
-            FileHandler.writeCandidates(candidates);
-        }
-
-        public void addVoter(String name, String id) {
-            Voter voter = new Voter(name, id);
-            voters.add(voter);
-            FileHandler.writeVoters(voters);
-        }
-
-        public void startCampaign() {
-            System.out.println("Campaign started.");
-        }
 
-        public void endCampaign() {
-            System.out.println("Campaign ended.");
-        }
-
-        public void startElection(int durationInSeconds) {
-            VoteCounter voteCounter = new VoteCounter(candidates);
-            voteCounter.start();
-            ElectionTimer timer = new ElectionTimer(durationInSeconds, this);
-            timer.start();
-        }
-
-        public void endElection() {
-            Candidate winner = candidates.stream().max(Comparator.comparingInt(Candidate::getVotes)).orElse(null);
-            if (winner != null) {
-                JOptionPane.showMessageDialog(null, "Election Ended. Winner: " + winner.getName());
-            } else {
-                JOptionPane.showMessageDialog(null, "Election Ended. No winner.");
-            }
-            FileHandler.writeCandidates(candidates);
-        }
-
-        public String getVoterList() {
-            StringBuilder sb = new StringBuilder();
-            for (Voter v : voters) {
-                sb.append(v.getName()).append(" (ID: ").append(v.getId()).append(")\n");
-            }
-            return sb.toString();
-        }
-
-        public String getVoteCount() {
-            StringBuilder sb = new StringBuilder();
-            for (Candidate c : candidates) {
-                sb.append(c.getName()).append(" : ").append(c.getVotes()).append(" votes\n");
-            }
-            return sb.toString();
-        }
-
-        public String getCandidateList() {
-            StringBuilder sb = new StringBuilder();
-            for (Candidate c : candidates) {
-                sb.append(c.getName()).append("\n");
-            }
-            return sb.toString();
-        }
-
-        // Returns candidate summary using a pipe delimiter.
-        public String[] getCandidateSummary() {
-            String[] summary = new String[candidates.size()];
-            for (int i = 0; i < candidates.size(); i++) {
-                Candidate c = candidates.get(i);
-                summary[i] = c.getName() + " | " + c.getParty() + " | " + c.getSymbol();
-            }
-            return summary;
-        }
-
-        public String getCandidateManifestos() {
-            StringBuilder sb = new StringBuilder();
-            for (Candidate c : candidates) {
-                sb.append(c.getName()).append(":\n").append(c.getManifesto()).append("\n\n");
-            }
-            return sb.toString();
-        }
-
-        public String getCandidateDetails() {
-            StringBuilder sb = new StringBuilder();
-            for (Candidate c : candidates) {
-                sb.append("Name: ").append(c.getName())
-                        .append(", Place: ").append(c.getPlace())
-                        .append(", Party: ").append(c.getParty())
-                        .append(", Assets: ").append(c.getAssets())
-                        .append(", Criminal Cases: ").append(c.getCriminalCases())
-                        .append("\n");
-            }
-            return sb.toString();
-        }
-
-        public void castVote(Voter voter, String candidateName) {
-            if (voter.hasVoted())
-                return;
-            for (Candidate c : candidates) {
-                if (c.getName().equals(candidateName)) {
-                    c.incrementVote();
-                    voter.setVoted();
-                    FileHandler.writeCandidates(candidates);
-                    FileHandler.writeVoters(voters);
-                    break;
-                }
-            }
-        }
-
-        public Voter findVoter(String name, String id) {
-            for (Voter v : voters) {
-                if (v.getName().equals(name) && v.getId().equals(id)) {
-                    return v;
+                @Override
+                protected void done() {
+                    if (seq != latest[0])
+                        return;
+                    try {
+                        ElectionEngine.VoterQuery query = get();
+                        model.setQuery(query);
+                        countLabel.setText(query.size() + " voters");
+                    } catch (Exception ex) {
+                        countLabel.setText("Search failed");
+                        System.err.println("Error searching voters: " + ex);
+                    }
                 }
+            }.execute();
+        };
+        // Wait for a pause in typing instead of searching the roll on every keystroke
+        Timer debounce = new Timer(250, e -> search.run());
+        debounce.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) {
+                debounce.restart();
             }
-            return null;
-        }
 
-        public Candidate findCandidate(String name, String id) {
-            for (Candidate c : candidates) {
-                if (c.getName().equals(name) && c.getId().equals(id)) {
-                    return c;
-                }
+            public void removeUpdate(DocumentEvent e) {
+                debounce.restart();
             }
-            return null;
-        }
 
-        public String getElectionWinner() {
-            if (candidates.isEmpty())
-                return "No candidates available.";
-
-            // Check if all candidates have 0 votes
-            boolean votingNotStarted = candidates.stream().allMatch(c -> c.getVotes() == 0);
-            if (votingNotStarted) {
-                return "Voting has not yet started.";
+            public void changedUpdate(DocumentEvent e) {
+                debounce.restart();
             }
+        });
+        statusBox.addActionListener(e -> search.run());
 
-            candidates.sort((c1, c2) -> c2.getVotes() - c1.getVotes());
-            Candidate winner = candidates.get(0);
-            String winnerName = winner.getName();
-            int winnerVotes = winner.getVotes();
-            int runnerUpVotes = (candidates.size() > 1) ? candidates.get(1).getVotes() : 0;
-            int voteDifference = winnerVotes - runnerUpVotes;
-            return "Winner: " + winnerName + "\nVotes: " + winnerVotes + "\nVote Difference: " + voteDifference;
-        }
+        dialog.add(searchPanel, BorderLayout.NORTH);
+        dialog.add(new JScrollPane(table), BorderLayout.CENTER);
+        dialog.setSize(700, 550);
+        dialog.setLocationRelativeTo(parent);
+        dialog.setVisible(true);
+        search.run();
     }
 
-    static class Candidate {
-        private String name;
-        private String place;
-        private String id;
-        private String party;
-        private String symbol;
-        private String assets;
-        private String criminalCases;
-        private String manifesto;
-        private int votes;
-
-        public Candidate(String name, String place, String id, String party, String symbol, String assets,
-                         String criminalCases) {
-            this.name = name;
-            this.place = place;
-            this.id = id;
-            this.party = party;
-            this.symbol = symbol;
-            this.assets = assets;
-            this.criminalCases = criminalCases;
-            this.manifesto = "No manifesto provided.";
-            this.votes = 0;
-        }
-
-        public String getName() {
-            return name;
-        }
-
-        public String getPlace() {
-            return place;
-        }
-
-        public String getId() {
-            return id;
-        }
-
-        public String getParty() {
-            return party;
-        }
-
-        public String getSymbol() {
-            return symbol;
-        }
-
-        public String getAssets() {
-            return assets;
-        }
-
-        public String getCriminalCases() {
-            return criminalCases;
-        }
+    // Rows are read from the engine a page at a time as the table paints
+    // them, keeping a few recent pages so scrolling back does not re-read.
+    static class VoterTableModel extends AbstractTableModel {
+        private static final long serialVersionUID = 1L;
+        private static final int PAGE_SIZE = 200;
+        private static final int CACHED_PAGES = 16;
+        private static final String[] COLUMNS = { "#", "Name", "Voter ID", "Voted" };
+
+        private ElectionEngine.VoterQuery query = ElectionEngine.VoterQuery.EMPTY;
+        private final Map<Integer, List<ElectionEngine.Voter>> pages = new LinkedHashMap<>(CACHED_PAGES, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<ElectionEngine.Voter>> eldest) {
+                return size() > CACHED_PAGES;
+            }
+        };
 
-        public String getManifesto() {
-            return manifesto;
+        void setQuery(ElectionEngine.VoterQuery query) {
+            this.query = query;
+            pages.clear();
+            fireTableDataChanged();
         }
 
-        public int getVotes() {
-            return votes;
+        @Override
+        public int getRowCount() {
+            return query.size();
         }
 
-        public void setManifesto(String manifesto) {
-            this.manifesto = manifesto;
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
         }
 
-        public void incrementVote() {
-            votes++;
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
         }
 
-        public void setVotes(int votes) {
-            this.votes = votes;
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return column == 0 ? Integer.class : column == 3 ? Boolean.class : String.class;
         }
 
         @Override
-        public String toString() {
-            return name + "," + place + "," + id + "," + party + "," + symbol + "," + assets + "," + criminalCases + ","
-                    + manifesto + "," + votes;
+        public Object getValueAt(int row, int column) {
+            if (column == 0)
+                return row + 1;
+            List<ElectionEngine.Voter> page = pages.computeIfAbsent(row / PAGE_SIZE,
+                    p -> query.page(p * PAGE_SIZE, PAGE_SIZE));
+            ElectionEngine.Voter voter = page.get(row % PAGE_SIZE);
+            switch (column) {
+                case 1:
+                    return voter.getName();
+                case 2:
+                    return voter.getId();
+                default:
+                    return voter.hasVoted();
+            }
         }
     }
 
-    static class Voter {
-        private String name;
-        private String id;
-        private boolean hasVoted;
+    // ----------------------- Shared Candidate List Model -----------------------
+    // Backed by the engine's cached candidate views; refresh() only notifies
+    // the list when a candidate was added or a manifesto edited since the last one.
+    static class CandidateListModel extends AbstractListModel<String> {
+        private static final long serialVersionUID = 1L;
 
-        public Voter(String name, String id) {
-            this.name = name;
-            this.id = id;
-            this.hasVoted = false;
-        }
+        private ElectionEngine.CandidateViews views;
 
-        public String getName() {
-            return name;
-        }
-
-        public String getId() {
-            return id;
-        }
-
-        public boolean hasVoted() {
-            return hasVoted;
+        void refresh() {
+            ElectionEngine.CandidateViews latest = admin.getCandidateViews();
+            if (latest == views)
+                return;
+            int oldSize = getSize();
+            views = latest;
+            int newSize = getSize();
+            if (newSize > oldSize)
+                fireIntervalAdded(this, oldSize, newSize - 1);
+            else if (newSize < oldSize)
+                fireIntervalRemoved(this, newSize, oldSize - 1);
+            if (Math.min(oldSize, newSize) > 0)
+                fireContentsChanged(this, 0, Math.min(oldSize, newSize) - 1);
         }
 
-        public void setVoted() {
-            this.hasVoted = true;
+        @Override
+        public int getSize() {
+            return views == null ? 0 : views.getSummary().size();
         }
 
         @Override
-        public String toString() {
-            return name + "," + id + "," + hasVoted;
+        public String getElementAt(int index) {
+            return views.getSummary().get(index);
         }
     }
 
-    static class FileHandler {
-        // Using lowercase file names for consistency
-        private static final String CANDIDATE_FILE = "candidate.txt";
-        private static final String VOTER_FILE = "voter.txt";
-
-        public static List<Candidate> readCandidates() {
-            List<Candidate> candidates = new ArrayList<>();
-            try (BufferedReader br = new BufferedReader(new FileReader(CANDIDATE_FILE))) {
-                String line;
-                while ((line = br.readLine()) != null) {
-                    String[] parts = line.split(",");
-                    if (parts.length < 9)
-                        continue;
-                    Candidate candidate = new Candidate(parts[0], parts[1], parts[2], parts[3], parts[4], parts[5],
-                            parts[6]);
-                    candidate.setManifesto(parts[7]);
-                    try {
-                        int votes = Integer.parseInt(parts[8]);
-                        candidate.setVotes(votes);
-                    } catch (NumberFormatException nfe) {
-                    }
-                    candidates.add(candidate);
-                }
-            } catch (IOException e) {
-                System.err.println("Error reading candidate file: " + e.getMessage());
-            }
-            return candidates;
-        }
-
-        public static List<Voter> readVoters() {
-            List<Voter> voters = new ArrayList<>();
-            try (BufferedReader br = new BufferedReader(new FileReader(VOTER_FILE))) {
-                String line;
-                while ((line = br.readLine()) != null) {
-                    String[] parts = line.split(",");
-                    if (parts.length < 3)
-                        continue;
-                    Voter voter = new Voter(parts[0], parts[1]);
-                    if (parts[2].equals("true"))
-                        voter.setVoted();
-                    voters.add(voter);
-                }
-            } catch (IOException e) {
-                System.err.println("Error reading voter file: " + e.getMessage());
-            }
-            return voters;
-        }
-
-        public static void writeCandidates(List<Candidate> candidates) {
-            try (BufferedWriter bw = new BufferedWriter(new FileWriter(CANDIDATE_FILE))) {
-                for (Candidate c : candidates) {
-                    bw.write(c.toString());
-                    bw.newLine();
-                }
-            } catch (IOException e) {
-                System.err.println("Error writing candidate file: " + e.getMessage());
+    // ----------------------- Helper Methods for Styling -----------------------
+    private static void styleButton(JButton button) {
+        Color normalColor = new Color(70, 130, 180); // steel blue
+        Color hoverColor = new Color(100, 149, 237); // cornflower blue
+        button.setBackground(normalColor);
+        button.setForeground(Color.WHITE);
+        button.setFont(new Font("SansSerif", Font.BOLD, 16));
+        button.setFocusPainted(false);
+        button.setUI(new BasicButtonUI());
+        button.addMouseListener(new MouseAdapter() {
+            public void mouseEntered(MouseEvent e) {
+                button.setBackground(hoverColor);
             }
-        }
 
-        public static void writeVoters(List<Voter> voters) {
-            try (BufferedWriter bw = new BufferedWriter(new FileWriter(VOTER_FILE))) {
-                for (Voter v : voters) {
-                    bw.write(v.toString());
-                    bw.newLine();
-                }
-            } catch (IOException e) {
-                System.err.println("Error writing voter file: " + e.getMessage());
+            public void mouseExited(MouseEvent e) {
+                button.setBackground(normalColor);
             }
-        }
+        });
     }
 
-    static class VoteCounter extends Thread {
-        private final List<Candidate> candidates;
-
-        public VoteCounter(List<Candidate> candidates) {
-            this.candidates = candidates;
-        }
-
-        @Override
-        public void run() {
-            while (electionRunning) {
-                System.out.println("Updating Vote Count...");
-                for (Candidate c : candidates) {
-                    System.out.println(c.getName() + " - " + c.getVotes() + " votes");
-                }
-                try {
-                    Thread.sleep(5000);
-                } catch (InterruptedException e) {
-                    System.err.println("VoteCounter interrupted!");
-                    break;
-                }
-            }
-        }
+    private static void styleLabel(JLabel label) {
+        label.setFont(new Font("SansSerif", Font.BOLD, 24));
+        label.setForeground(new Color(25, 25, 112));
     }
 
-    static class ElectionTimer extends Thread {
-        private final int duration;
-        private final Admin admin;
-
-        public ElectionTimer(int duration, Admin admin) {
-            this.duration = duration;
-            this.admin = admin;
-        }
+    // ----------------------- Custom Gradient Panel -----------------------
+    static class GradientPanel extends JPanel {
+        private static final long serialVersionUID = 1L;
 
         @Override
-        public void run() {
-            try {
-                Thread.sleep(duration * 1000);
-                admin.endElection();
-                electionRunning = false;
-            } catch (InterruptedException e) {
-                System.err.println("ElectionTimer interrupted!");
-            }
+        protected void paintComponent(Graphics g) {
+            super.paintComponent(g);
+            Graphics2D g2d = (Graphics2D) g;
+            int width = getWidth();
+            int height = getHeight();
+            Color startColor = new Color(173, 216, 230); // light blue
+            Color endColor = new Color(224, 255, 255); // light cyan
+            GradientPaint gp = new GradientPaint(0, 0, startColor, width, height, endColor);
+            g2d.setPaint(gp);
+            g2d.fillRect(0, 0, width, height);
         }
-
-
     }
 }
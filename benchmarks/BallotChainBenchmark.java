@@ -0,0 +1,138 @@
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+// Writes a hash-chained vote ledger in archived segments of 10,000 ballots,
+// checkpoints it, then verifies it in full on one worker and on the
+// fork-join pool, one block by seq range, and incrementally after more
+// ballots arrive. A record is then altered on disk and the run fails unless
+// verification names it.
+//
+// java -cp out BallotChainBenchmark [ballots] [budgetSeconds]        (default: 10000000 60)
+public class BallotChainBenchmark {
+    private static final int PER_SEGMENT = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        int ballots = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int budgetSeconds = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+        Path dataDir = Files.createTempDirectory("election-chain");
+        System.setProperty("election.dataDir", dataDir.toString());
+
+        long begin = System.nanoTime();
+        MessageDigest md = ElectionEngine.BallotChain.sha256();
+        byte[][] head = { ElectionEngine.BallotChain.GENESIS };
+        Random random = new Random(23);
+        long hashNanos = 0;
+        for (int start = 1; start <= ballots; start += PER_SEGMENT) {
+            hashNanos += writeSegment(dataDir.resolve("vote_archive." + start + ".log"), start,
+                    Math.min(ballots, start + PER_SEGMENT - 1), md, head, random);
+        }
+        System.out.printf("ballots=%d files=%d (written in %.1f s, chain hash %.0f ns/ballot)%n", ballots,
+                (ballots + PER_SEGMENT - 1) / PER_SEGMENT, (System.nanoTime() - begin) / 1e9,
+                (double) hashNanos / ballots);
+
+        long start = System.nanoTime();
+        ElectionEngine.BallotChain.checkpoint(ballots);
+        System.out.printf("%-12s %8.2f s  (%d checkpoints)%n", "checkpoint", (System.nanoTime() - start) / 1e9,
+                ElectionEngine.BallotChain.readCheckpoints().size());
+
+        ForkJoinPool single = new ForkJoinPool(1);
+        ElectionEngine.BallotChain.Report one = ElectionEngine.BallotChain.verify(1, Long.MAX_VALUE, single);
+        single.shutdown();
+        report("1 worker", one);
+        ElectionEngine.BallotChain.Report pool = ElectionEngine.BallotChain.verifyAll();
+        report("pool (" + ForkJoinPool.commonPool().getParallelism() + ")", pool);
+        if (!one.isValid() || !pool.isValid() || pool.getRecords() != ballots
+                || !pool.getHead().equals(ElectionEngine.BallotChain.hex(head[0])))
+            throw new IllegalStateException("Chain did not verify:\n" + pool);
+        if (pool.getMillis() > budgetSeconds * 1000L)
+            throw new IllegalStateException("Verification took " + pool.getMillis() + " ms, budget " + budgetSeconds
+                    + " s");
+
+        long middle = ballots / 2;
+        ElectionEngine.BallotChain.Report range = ElectionEngine.BallotChain.verify(middle, middle,
+                ForkJoinPool.commonPool());
+        report("seq " + middle, range);
+
+        // New ballots in a live segment: only they are re-hashed
+        int more = PER_SEGMENT / 2;
+        hashNanos = writeSegment(dataDir.resolve("vote_ledger." + (ballots + 1) + ".log"), ballots + 1,
+                ballots + more, md, head, random);
+        ElectionEngine.BallotChain.Report incremental = ElectionEngine.BallotChain.verify(
+                pool.getCheckpointedSeq() + 1, Long.MAX_VALUE, ForkJoinPool.commonPool());
+        report("incremental", incremental);
+        if (!range.isValid() || !incremental.isValid() || incremental.getRecords() != more
+                || !incremental.getHead().equals(ElectionEngine.BallotChain.hex(head[0])))
+            throw new IllegalStateException("Range or incremental verification failed:\n" + incremental);
+
+        // Change one candidate id digit in place; the chain must name that record
+        Path victim = dataDir.resolve("vote_archive." + (middle / PER_SEGMENT * PER_SEGMENT + 1) + ".log");
+        long tampered = alter(victim);
+        ElectionEngine.BallotChain.Report broken = ElectionEngine.BallotChain.verifyAll();
+        System.out.print(broken);
+        if (broken.isValid() || !broken.getFailures().get(0).equals("seq " + tampered + " does not match its chain hash"))
+            throw new IllegalStateException("Tampering with seq " + tampered + " was not detected");
+        System.out.println("OK: " + ballots + " ballots verified within " + budgetSeconds + " s, tampering detected");
+
+        try (var files = Files.list(dataDir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dataDir);
+    }
+
+    // Returns the nanoseconds spent hashing.
+    private static long writeSegment(Path file, long first, long last, MessageDigest md, byte[][] head, Random random)
+            throws Exception {
+        long nanos = 0;
+        long time = 1_700_000_000_000L;
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+            StringBuilder sb = new StringBuilder(64);
+            for (long seq = first; seq <= last; seq++) {
+                sb.setLength(0);
+                sb.append(seq).append(",V").append(seq - 1).append(",C").append(random.nextInt(20)).append(',')
+                        .append(time + seq);
+                byte[] text = sb.toString().getBytes(StandardCharsets.US_ASCII);
+                long t = System.nanoTime();
+                head[0] = ElectionEngine.BallotChain.link(md, head[0], text, 0, text.length);
+                nanos += System.nanoTime() - t;
+                out.write(text);
+                out.write(',');
+                out.write(ElectionEngine.BallotChain.hex(head[0]).getBytes(StandardCharsets.US_ASCII));
+                out.write('\n');
+            }
+        }
+        return nanos;
+    }
+
+    // Rewrites the candidate id of the 1000th record in the file; returns its seq.
+    private static long alter(Path file) throws Exception {
+        List<String> lines = new ArrayList<>(Files.readAllLines(file, StandardCharsets.US_ASCII));
+        String line = lines.get(999);
+        int c = line.indexOf(",C") + 2;
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            long offset = 0;
+            for (int i = 0; i < 999; i++) {
+                offset += lines.get(i).length() + 1;
+            }
+            raf.seek(offset + c);
+            raf.write(line.charAt(c) == '1' ? '2' : '1');
+        }
+        return Long.parseLong(line.substring(0, line.indexOf(',')));
+    }
+
+    private static void report(String name, ElectionEngine.BallotChain.Report report) {
+        double seconds = Math.max(report.getMillis(), 1) / 1e3;
+        System.out.printf("%-12s %8.3f s  %8.2f M ballots/s  %8.1f MB/s  (%d blocks)%n", name, seconds,
+                report.getRecords() / seconds / 1e6, report.getBytes() / seconds / 1e6, report.getBlocks());
+    }
+}
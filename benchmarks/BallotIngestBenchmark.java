@@ -0,0 +1,67 @@
+import java.io.BufferedWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// Ingests a synthetic polling-station upload through Admin.ingestBallotFile
+// and reports ballots per minute. About 1% of the ballots repeat an
+// earlier voter and 0.5% each name an unknown voter or candidate; the run
+// fails unless exactly the clean ballots are accepted and counted.
+//
+// java -Xmx4g -cp out BallotIngestBenchmark [ballots] [voters]        (default: 1000000 2000000)
+public class BallotIngestBenchmark {
+    public static void main(String[] args) throws Exception {
+        int ballots = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int voterCount = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+        Path dataDir = Files.createTempDirectory("election-ingest");
+        System.setProperty("election.dataDir", dataDir.toString());
+        List<ElectionEngine.Candidate> candidates = ElectionBenchmark.syntheticCandidates();
+        ElectionEngine.FileHandler.writeCandidates(candidates);
+        ElectionEngine.FileHandler.writeVoters(ElectionBenchmark.syntheticVoters(voterCount));
+
+        Path upload = dataDir.resolve("ballots.csv");
+        Random random = new Random(11);
+        int clean = 0;
+        int[] voted = new int[ballots];
+        try (BufferedWriter out = Files.newBufferedWriter(upload)) {
+            int next = 0;
+            for (int i = 0; i < ballots; i++) {
+                int roll = random.nextInt(1000);
+                String candidate = "C" + random.nextInt(candidates.size());
+                if (roll < 10 && clean > 0) {
+                    out.write("V" + voted[random.nextInt(clean)] + "," + candidate + "\n");
+                } else if (roll < 15) {
+                    out.write("X" + i + "," + candidate + "\n");
+                } else if (roll < 20) {
+                    out.write("V" + next++ + ",NoSuchCandidate\n");
+                } else {
+                    voted[clean++] = next;
+                    out.write("V" + next++ + "," + candidate + "," + (1_700_000_000_000L + i) + "\n");
+                }
+            }
+        }
+
+        ElectionEngine.Admin admin = new ElectionEngine.Admin();
+        // Ballots are refused unless the election is running; the scheduler
+        // opens it directly so the results log stays out of the output
+        admin.getScheduler().start(ElectionEngine.Admin.NATIONAL, 24 * 3600 * 1000L);
+        long start = System.nanoTime();
+        Map<ElectionEngine.VoteResult, Long> counts = admin.ingestBallotFile(upload,
+                dataDir.resolve("ballots.rejects.csv"));
+        admin.flush();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("ballots=%d voters=%d batch=%d%n", ballots, voterCount,
+                ElectionEngine.Admin.INGEST_BATCH);
+        counts.forEach((result, n) -> System.out.printf("  %-20s %10d%n", result, n));
+        System.out.printf("%.2f s, %.2f M ballots/min%n", seconds, ballots / seconds * 60 / 1e6);
+        long accepted = counts.getOrDefault(ElectionEngine.VoteResult.ACCEPTED, 0L);
+        if (accepted != clean || admin.getTotalVotes() != clean || admin.getTurnout() != clean)
+            throw new IllegalStateException("Accepted " + accepted + ", counted " + admin.getTotalVotes()
+                    + ", expected " + clean);
+        System.out.println("OK: every clean ballot accepted once");
+        admin.close();
+    }
+}
@@ -0,0 +1,96 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+
+// Runs many constituencies at once: ballots for every seat are cast from
+// several polling-station threads through TallyEngine, then the per-seat
+// results and party seat counts are tallied on one worker and on the
+// fork-join pool. The run fails if the seat totals do not add up to the
+// ballots cast or the two tallies disagree.
+//
+// java -cp out ConstituencyBenchmark [seats] [candidatesPerSeat] [voters] [threads]
+//     (default: 543 8 5000000 <cpus>)
+public class ConstituencyBenchmark {
+    private static final int PARTIES = 6;
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) throws InterruptedException {
+        int seats = args.length > 0 ? Integer.parseInt(args[0]) : 543;
+        int perSeat = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int voterCount = args.length > 2 ? Integer.parseInt(args[2]) : 5_000_000;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        List<ElectionEngine.Candidate> candidates = new ArrayList<>();
+        for (int s = 0; s < seats; s++) {
+            for (int c = 0; c < perSeat; c++) {
+                String id = "S" + s + "C" + c;
+                candidates.add(new ElectionEngine.Candidate(id, "Seat" + s, id, "Party" + ((s + c) % PARTIES),
+                        "Symbol", "0", "No"));
+            }
+        }
+        ElectionEngine.CandidateRegistry registry = new ElectionEngine.CandidateRegistry(candidates);
+        ElectionEngine.Voter[] voters = new ElectionEngine.Voter[voterCount];
+        for (int i = 0; i < voterCount; i++) {
+            voters[i] = new ElectionEngine.Voter("Voter" + i, "V" + i);
+        }
+
+        // Each voter belongs to one seat and leans towards its lower-numbered candidates
+        CountDownLatch done = new CountDownLatch(threads);
+        long begin = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int first = t;
+            new Thread(() -> {
+                for (int v = first; v < voterCount; v += threads) {
+                    int seat = v % seats;
+                    int pick = (int) ((v * 2654435761L >>> 7) % (perSeat * (perSeat + 1) / 2));
+                    int c = 0;
+                    while (pick >= perSeat - c) {
+                        pick -= perSeat - c;
+                        c++;
+                    }
+                    ElectionEngine.TallyEngine.tally(voters[v], candidates.get(seat * perSeat + c));
+                }
+                done.countDown();
+            }, "station-" + t).start();
+        }
+        done.await();
+        double castSeconds = (System.nanoTime() - begin) / 1e9;
+
+        ForkJoinPool single = new ForkJoinPool(1);
+        ElectionEngine.Constituencies.Results sequential = ElectionEngine.Constituencies.tally(registry, single);
+        ElectionEngine.Constituencies.Results parallel = ElectionEngine.Constituencies.tally(registry);
+        double singleMs = bestOf(() -> ElectionEngine.Constituencies.tally(registry, single));
+        double parallelMs = bestOf(() -> ElectionEngine.Constituencies.tally(registry));
+        single.shutdown();
+
+        long seatTotal = 0;
+        for (ElectionEngine.Constituencies.SeatResult seat : parallel.getSeats()) {
+            seatTotal += seat.getTotalVotes();
+        }
+        if (seatTotal != voterCount || parallel.getSeats().size() != seats
+                || !parallel.getSeatsByParty().equals(sequential.getSeatsByParty()))
+            throw new IllegalStateException("Seat tallies do not add up");
+
+        System.out.printf("seats=%d candidates=%d voters=%d threads=%d pool=%d%n", seats, candidates.size(),
+                voterCount, threads, ForkJoinPool.commonPool().getParallelism());
+        System.out.printf("casting:            %.2f M ballots/s%n", voterCount / castSeconds / 1e6);
+        System.out.printf("seat tally, 1 worker: %8.3f ms%n", singleMs);
+        System.out.printf("seat tally, pool:     %8.3f ms%n", parallelMs);
+        for (Map.Entry<String, Integer> e : parallel.getSeatsByParty().entrySet()) {
+            System.out.printf("  %-8s %4d seats%n", e.getKey(), e.getValue());
+        }
+        System.out.println("OK: every ballot counted in exactly one seat");
+    }
+
+    private static double bestOf(Runnable tally) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long t0 = System.nanoTime();
+            tally.run();
+            best = Math.min(best, System.nanoTime() - t0);
+        }
+        return best / 1e6;
+    }
+}
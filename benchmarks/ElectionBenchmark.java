@@ -0,0 +1,196 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+// Benchmarks the election engine hot paths on synthetic rolls and reports
+// throughput, latency percentiles and allocation per operation, so
+// regressions show up before deployment.
+//
+// javac -encoding UTF-8 -d out ElectionEngine.java benchmarks/*.java
+// java -Xmx8g -cp out ElectionBenchmark [sizes...]        (default: 10000 1000000 10000000)
+//
+// All files are written to a temporary data directory, never the working directory.
+public class ElectionBenchmark {
+    private static final int CANDIDATES = 20;
+    private static final long WARMUP_MS = 1000;
+    private static final long MEASURE_MS = 3000;
+    private static final int MIN_ITERATIONS = 3;
+    private static final int MAX_SAMPLES = 1 << 20;
+
+    interface Op {
+        void run(int iteration) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = { 10_000, 1_000_000, 10_000_000 };
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        Path dataDir = Files.createTempDirectory("election-bench");
+        System.setProperty("election.dataDir", dataDir.toString());
+        System.out.println("data dir: " + dataDir);
+        System.out.printf("%-26s %10s %12s %10s %10s %10s %10s %12s%n", "benchmark", "voters", "ops/s", "p50 us",
+                "p90 us", "p99 us", "p99.9 us", "alloc B/op");
+
+        for (int size : sizes) {
+            runSize(size, dataDir);
+        }
+    }
+
+    private static void runSize(int size, Path dataDir) throws Exception {
+        clean(dataDir);
+        List<ElectionEngine.Candidate> candidates = syntheticCandidates();
+        List<ElectionEngine.Voter> voters = syntheticVoters(size);
+        ElectionEngine.FileHandler.writeCandidates(candidates);
+        ElectionEngine.FileHandler.writeVoters(voters);
+
+        measure("FileHandler.writeVoters", size, i -> ElectionEngine.FileHandler.writeVoters(voters));
+        measure("FileHandler.writeCands", size, i -> ElectionEngine.FileHandler.writeCandidates(candidates));
+        measure("FileHandler.readVoters", size, i -> ElectionEngine.FileHandler.readVoters());
+        measure("FileHandler.readCands", size, i -> ElectionEngine.FileHandler.readCandidates());
+        measure("VoterRoll.open", size, i -> {
+            try (ElectionEngine.VoterRoll roll = ElectionEngine.VoterRoll.open(dataDir.resolve("voter.dat"))) {
+                roll.isVoted(roll.size() - 1);
+            }
+        });
+        try (ElectionEngine.VoterRoll roll = ElectionEngine.VoterRoll.open(dataDir.resolve("voter.dat"))) {
+            measure("VoterRoll.setVoted", size, i -> roll.setVoted(i % size, (i / size & 1) == 0));
+        }
+        ElectionEngine.FileHandler.writeVoters(voters);
+
+        ElectionEngine.Admin admin = new ElectionEngine.Admin();
+        // Ballots are refused unless the election is running; the scheduler
+        // opens it directly so the results log stays out of the output
+        admin.getScheduler().start(ElectionEngine.Admin.NATIONAL, 24 * 3600 * 1000L);
+        Random random = new Random(7);
+        int[] keys = new int[4096];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextInt(size);
+        }
+        String[] names = new String[keys.length];
+        String[] ids = new String[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            names[i] = "Voter" + keys[i];
+            ids[i] = "V" + keys[i];
+        }
+        measure("Admin.findVoter", size, i -> {
+            int k = i & (keys.length - 1);
+            if (admin.findVoter(names[k], ids[k]) == null)
+                throw new IllegalStateException("missing voter " + ids[k]);
+        });
+
+        // Every castVote consumes a fresh voter, so the two runs share the roll between them
+        int[] next = { 0 };
+        measure("Admin.castVote", size, size / 2, i -> {
+            int v = next[0]++;
+            admin.castVote(admin.findVoter("Voter" + v, "V" + v), "Candidate" + (v % CANDIDATES));
+        });
+        measure("Admin.castVote(id)", size, size - next[0], i -> {
+            int v = next[0]++;
+            admin.castVote("V" + v, "Candidate" + (v % CANDIDATES));
+        });
+        measure("Admin.getTurnout", size, i -> admin.getTurnout());
+        measure("Admin.getTotalVotes", size, i -> admin.getTotalVotes());
+        ElectionEngine.TurnoutAnalytics turnout = admin.getTurnoutAnalytics();
+        long now = System.currentTimeMillis();
+        String[] places = turnout.places().toArray(new String[0]);
+        measure("Turnout.forPlace(hour)", size, i -> turnout.forPlace(ElectionEngine.TurnoutAnalytics.Resolution.HOUR,
+                now, places[i % places.length]));
+        measure("Turnout.total(minute)", size,
+                i -> turnout.total(ElectionEngine.TurnoutAnalytics.Resolution.MINUTE, now - i % 60 * 60_000L));
+        measure("Admin.getTurnoutReport", size, i -> admin.getTurnoutReport());
+        measure("Admin.getElectionWinner", size, i -> admin.getElectionWinner());
+        measure("Admin.getTopCandidates", size, i -> admin.getTopCandidates(10));
+        measure("Admin.getCandidateSummary", size, i -> admin.getCandidateSummary());
+        measure("Admin.getCandidateDetails", size, i -> admin.getCandidateDetails());
+        measure("Admin.getVoters(page)", size,
+                i -> admin.getVoters(null, ElectionEngine.VoterFilter.ALL, (int) (i * 7919L % size), 50));
+        measure("Admin.queryVoters(prefix)", size, i -> admin.queryVoters("voter12", ElectionEngine.VoterFilter.ALL));
+        admin.close();
+    }
+
+    private static void measure(String name, int size, Op op) throws Exception {
+        measure(name, size, Integer.MAX_VALUE, op);
+    }
+
+    // maxOps caps warmup plus measurement for operations that consume state
+    private static void measure(String name, int size, int maxOps, Op op) throws Exception {
+        int warmup = runFor(op, WARMUP_MS, 1, maxOps / 10, null);
+        long[] samples = new long[MAX_SAMPLES];
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocBefore = threads.getThreadAllocatedBytes(threadId);
+        long begin = System.nanoTime();
+        int ops = runFor(op, MEASURE_MS, MIN_ITERATIONS, maxOps - warmup, samples);
+        long elapsed = System.nanoTime() - begin;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocBefore;
+
+        int n = Math.min(ops, samples.length);
+        long[] sorted = Arrays.copyOf(samples, n);
+        Arrays.sort(sorted);
+        System.out.printf("%-26s %10d %12.1f %10.2f %10.2f %10.2f %10.2f %12d%n", name, size,
+                ops / (elapsed / 1e9), pct(sorted, 0.50), pct(sorted, 0.90), pct(sorted, 0.99),
+                pct(sorted, 0.999), allocated / Math.max(1, ops));
+    }
+
+    // Runs op until the time budget is spent (and at least minIterations, at
+    // most maxIterations), recording each latency into samples when given.
+    private static int runFor(Op op, long budgetMs, int minIterations, int maxIterations, long[] samples)
+            throws Exception {
+        long deadline = System.nanoTime() + budgetMs * 1_000_000L;
+        int i = 0;
+        while (i < maxIterations && (i < minIterations || System.nanoTime() < deadline)) {
+            long t0 = System.nanoTime();
+            op.run(i);
+            long t1 = System.nanoTime();
+            if (samples != null && i < samples.length)
+                samples[i] = t1 - t0;
+            i++;
+        }
+        return i;
+    }
+
+    private static double pct(long[] sorted, double p) {
+        if (sorted.length == 0)
+            return 0;
+        int idx = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+        return sorted[Math.max(0, idx)] / 1000.0;
+    }
+
+    static List<ElectionEngine.Candidate> syntheticCandidates() {
+        List<ElectionEngine.Candidate> candidates = new ArrayList<>();
+        for (int i = 0; i < CANDIDATES; i++) {
+            ElectionEngine.Candidate c = new ElectionEngine.Candidate("Candidate" + i, "Place" + (i % 5), "C" + i,
+                    "Party" + (i % 4), "Symbol" + i, "1000000", "No");
+            c.setManifesto("Manifesto of candidate " + i);
+            candidates.add(c);
+        }
+        return candidates;
+    }
+
+    static List<ElectionEngine.Voter> syntheticVoters(int size) {
+        List<ElectionEngine.Voter> voters = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            voters.add(new ElectionEngine.Voter("Voter" + i, "V" + i));
+        }
+        return voters;
+    }
+
+    static void clean(Path dataDir) throws IOException {
+        try (Stream<Path> files = Files.list(dataDir)) {
+            for (Path p : (Iterable<Path>) files::iterator) {
+                Files.delete(p);
+            }
+        }
+    }
+}
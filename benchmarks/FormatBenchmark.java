@@ -0,0 +1,68 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+// Compares the legacy comma-joined voter.txt with the binary voter.dat:
+// save time, load time and file size on a synthetic roll.
+//
+// java -Xmx8g -cp out FormatBenchmark [voters]        (default: 10000000)
+public class FormatBenchmark {
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws IOException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        Path dataDir = Files.createTempDirectory("election-format");
+        System.setProperty("election.dataDir", dataDir.toString());
+        List<ElectionEngine.Voter> voters = ElectionBenchmark.syntheticVoters(size);
+        for (int i = 0; i < size; i += 3) {
+            voters.get(i).setVoted();
+        }
+        Path text = dataDir.resolve("voter.txt");
+        Path binary = dataDir.resolve("voter.dat");
+
+        long textSave = Long.MAX_VALUE, textLoad = Long.MAX_VALUE;
+        long binarySave = Long.MAX_VALUE, binaryLoad = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            Files.deleteIfExists(binary);
+            long t0 = System.nanoTime();
+            writeText(text, voters);
+            long t1 = System.nanoTime();
+            check(ElectionEngine.FileHandler.readVoters(), size);
+            long t2 = System.nanoTime();
+            ElectionEngine.FileHandler.writeVoters(voters);
+            long t3 = System.nanoTime();
+            check(ElectionEngine.FileHandler.readVoters(), size);
+            long t4 = System.nanoTime();
+            textSave = Math.min(textSave, t1 - t0);
+            textLoad = Math.min(textLoad, t2 - t1);
+            binarySave = Math.min(binarySave, t3 - t2);
+            binaryLoad = Math.min(binaryLoad, t4 - t3);
+        }
+
+        System.out.printf("voters: %d (best of %d)%n", size, ROUNDS);
+        System.out.printf("%-8s %12s %12s %14s%n", "format", "save ms", "load ms", "file bytes");
+        System.out.printf("%-8s %12.1f %12.1f %14d%n", "text", textSave / 1e6, textLoad / 1e6, Files.size(text));
+        System.out.printf("%-8s %12.1f %12.1f %14d%n", "binary", binarySave / 1e6, binaryLoad / 1e6,
+                Files.size(binary));
+        ElectionBenchmark.clean(dataDir);
+        Files.delete(dataDir);
+    }
+
+    // The pre-binary FileHandler.writeVoters
+    private static void writeText(Path file, List<ElectionEngine.Voter> voters) throws IOException {
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(file.toFile()))) {
+            for (ElectionEngine.Voter v : voters) {
+                bw.write(v.toString());
+                bw.newLine();
+            }
+        }
+    }
+
+    private static void check(List<ElectionEngine.Voter> loaded, int size) {
+        if (loaded.size() != size)
+            throw new IllegalStateException("Loaded " + loaded.size() + " of " + size + " voters");
+    }
+}
@@ -0,0 +1,128 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// Counts synthetic ranked ballots with each counting engine and reports
+// how long each count takes. Instant runoff is also counted the naive way,
+// re-reading every ballot each round, as a baseline. The run fails if the
+// two runoffs disagree or a count fills the wrong number of seats.
+//
+// java -Xmx2g -cp out RankedCountBenchmark [ballots] [candidates] [seats]        (default: 10000000 12 5)
+public class RankedCountBenchmark {
+    private static final int PARTIES = 4;
+    private static final int MAX_RANKS = 6;
+
+    public static void main(String[] args) {
+        int ballotCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int candidateCount = args.length > 1 ? Integer.parseInt(args[1]) : 12;
+        int seats = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        List<ElectionEngine.Candidate> candidates = new ArrayList<>();
+        for (int i = 0; i < candidateCount; i++) {
+            candidates.add(new ElectionEngine.Candidate("C" + i, "Place", "C" + i, "Party" + (i % PARTIES), "S",
+                    "0", "No"));
+        }
+        // Voters lean towards lower-numbered candidates and rank 1 to MAX_RANKS of them
+        ElectionEngine.RankedBallots ballots = new ElectionEngine.RankedBallots();
+        Random random = new Random(21);
+        List<ElectionEngine.Candidate> ranking = new ArrayList<>();
+        long begin = System.nanoTime();
+        long preferences = 0;
+        for (int b = 0; b < ballotCount; b++) {
+            ranking.clear();
+            int ranks = 1 + random.nextInt(Math.min(MAX_RANKS, candidateCount));
+            while (ranking.size() < ranks) {
+                double pick = Math.abs(random.nextGaussian()) * candidateCount / 3;
+                ElectionEngine.Candidate c = candidates.get((int) Math.min(candidateCount - 1, pick));
+                if (!ranking.contains(c))
+                    ranking.add(c);
+            }
+            ballots.add(ranking);
+            preferences += ranks;
+        }
+        double buildSeconds = (System.nanoTime() - begin) / 1e9;
+        System.out.printf("ballots=%d preferences=%d candidates=%d seats=%d (stored in %.1f s)%n", ballotCount,
+                preferences, candidateCount, seats, buildSeconds);
+
+        ElectionEngine.Counting.Result irv = timed("instant runoff",
+                () -> ElectionEngine.Counting.INSTANT_RUNOFF.count(ballots, 1));
+        String naive = timedNaive(ballots, candidates, ballotCount);
+        ElectionEngine.Counting.Result stv = timed("STV", () -> ElectionEngine.Counting.STV.count(ballots, seats));
+        ElectionEngine.Counting.Result dhondt = timed("D'Hondt",
+                () -> ElectionEngine.Counting.DHONDT.count(ballots, seats));
+        ElectionEngine.Counting.Result sainteLague = timed("Sainte-Lague",
+                () -> ElectionEngine.Counting.SAINTE_LAGUE.count(ballots, seats));
+
+        System.out.print(irv);
+        System.out.print(stv);
+        if (!irv.getElected().get(0).getName().equals(naive))
+            throw new IllegalStateException("Instant runoff elected " + irv.getElected().get(0).getName()
+                    + ", naive count elected " + naive);
+        if (stv.getElected().size() != seats || dhondt.getElected().size() != seats
+                || sainteLague.getElected().size() != seats)
+            throw new IllegalStateException("A count did not fill all " + seats + " seats");
+        System.out.println("OK: runoffs agree and every count filled " + seats + " seats");
+    }
+
+    interface Count {
+        ElectionEngine.Counting.Result run();
+    }
+
+    private static ElectionEngine.Counting.Result timed(String name, Count count) {
+        long t0 = System.nanoTime();
+        ElectionEngine.Counting.Result result = count.run();
+        System.out.printf("%-16s %8.3f s (%d rounds)%n", name, (System.nanoTime() - t0) / 1e9,
+                result.getRounds().size());
+        return result;
+    }
+
+    // Re-reads every ballot each round to find its first continuing
+    // preference. Same tie-breaks as the engine: out on fewer first
+    // preferences, then the candidate named latest.
+    private static String timedNaive(ElectionEngine.RankedBallots ballots,
+                                     List<ElectionEngine.Candidate> candidates, int ballotCount) {
+        long t0 = System.nanoTime();
+        ElectionEngine.RankedBallots.Packed packed = ballots.packed();
+        int k = packed.candidates.size();
+        boolean[] out = new boolean[k];
+        long[] first = new long[k];
+        for (int b = 0; b < packed.size; b++) {
+            first[packed.prefs[packed.offsets[b]]]++;
+        }
+        int rounds = 0;
+        String winner = null;
+        while (winner == null) {
+            rounds++;
+            long[] tally = new long[k];
+            long active = 0;
+            for (int b = 0; b < packed.size; b++) {
+                for (int p = packed.offsets[b]; p < packed.offsets[b + 1]; p++) {
+                    if (!out[packed.prefs[p]]) {
+                        tally[packed.prefs[p]]++;
+                        active++;
+                        break;
+                    }
+                }
+            }
+            int lead = -1;
+            int low = -1;
+            int continuing = 0;
+            for (int c = 0; c < k; c++) {
+                if (out[c])
+                    continue;
+                continuing++;
+                if (lead < 0 || tally[c] > tally[lead] || (tally[c] == tally[lead] && first[c] > first[lead]))
+                    lead = c;
+                if (low < 0 || tally[c] < tally[low] || (tally[c] == tally[low] && first[c] <= first[low]))
+                    low = c;
+            }
+            if (tally[lead] * 2 > active || continuing == 1)
+                winner = packed.candidates.get(lead).getName();
+            else
+                out[low] = true;
+        }
+        System.out.printf("%-16s %8.3f s (%d rounds)%n", "naive runoff", (System.nanoTime() - t0) / 1e9, rounds);
+        return winner;
+    }
+}
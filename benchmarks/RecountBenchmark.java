@@ -0,0 +1,78 @@
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+// Writes a synthetic vote ledger in archived segments of 10,000 ballots,
+// as compaction leaves it, then recounts it on one worker and on the
+// fork-join pool. The run fails unless both recounts verify against the
+// expected totals, or if the pool recount takes longer than the budget.
+// Voter checks are left out: they need a voter roll as large as the ledger.
+//
+// java -cp out RecountBenchmark [ballots] [budgetSeconds]        (default: 50000000 60)
+public class RecountBenchmark {
+    private static final int PER_SEGMENT = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        int ballots = args.length > 0 ? Integer.parseInt(args[0]) : 50_000_000;
+        int budgetSeconds = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+        Path dataDir = Files.createTempDirectory("election-recount");
+        List<ElectionEngine.Candidate> candidates = ElectionBenchmark.syntheticCandidates();
+
+        long begin = System.nanoTime();
+        int[] expected = new int[candidates.size()];
+        List<Path> files = new ArrayList<>();
+        Random random = new Random(22);
+        long time = 1_700_000_000_000L;
+        for (int start = 1; start <= ballots; start += PER_SEGMENT) {
+            Path file = dataDir.resolve("vote_archive." + start + ".log");
+            files.add(file);
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+                StringBuilder sb = new StringBuilder(64);
+                for (int seq = start; seq < start + PER_SEGMENT && seq <= ballots; seq++) {
+                    int c = random.nextInt(candidates.size());
+                    expected[c]++;
+                    sb.setLength(0);
+                    sb.append(seq).append(",V").append(seq - 1).append(",C").append(c).append(',')
+                            .append(time + seq).append('\n');
+                    out.write(sb.toString().getBytes(StandardCharsets.US_ASCII));
+                }
+            }
+        }
+        System.out.printf("ballots=%d files=%d (written in %.1f s)%n", ballots, files.size(),
+                (System.nanoTime() - begin) / 1e9);
+        // The live tallies the recount is checked against
+        for (int c = 0; c < candidates.size(); c++) {
+            candidates.get(c).setVotes(expected[c]);
+        }
+
+        ForkJoinPool single = new ForkJoinPool(1);
+        ElectionEngine.Recount.Report one = ElectionEngine.Recount.run(files, null, candidates, null, single);
+        single.shutdown();
+        report("1 worker", one);
+        ElectionEngine.Recount.Report pool = ElectionEngine.Recount.run(files, null, candidates, null,
+                ForkJoinPool.commonPool());
+        report("pool (" + ForkJoinPool.commonPool().getParallelism() + ")", pool);
+
+        if (!one.isVerified() || !pool.isVerified() || pool.getRecords() != ballots)
+            throw new IllegalStateException("Recount did not verify:\n" + pool);
+        if (pool.getMillis() > budgetSeconds * 1000L)
+            throw new IllegalStateException("Recount took " + pool.getMillis() + " ms, budget " + budgetSeconds + " s");
+        System.out.println("OK: " + ballots + " ballots recounted and verified within " + budgetSeconds + " s");
+        for (Path file : files) {
+            Files.delete(file);
+        }
+        Files.delete(dataDir);
+    }
+
+    private static void report(String name, ElectionEngine.Recount.Report report) {
+        double seconds = report.getMillis() / 1e3;
+        System.out.printf("%-10s %8.2f s  %8.2f M ballots/s  %8.1f MB/s%n", name, seconds,
+                report.getRecords() / seconds / 1e6, report.getBytes() / seconds / 1e6);
+    }
+}
@@ -0,0 +1,68 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Measures VoterRegistry lookup latency as the roll grows. With hashed
+// lookup the ns/op column should stay flat from 1K to 10M voters.
+//
+// javac -encoding UTF-8 -d out ElectionEngine.java benchmarks/*.java
+// java -Xmx4g -cp out RegistryBenchmark [sizes...]
+public class RegistryBenchmark {
+    private static final int LOOKUPS = 2_000_000;
+
+    public static void main(String[] args) throws IOException {
+        int[] sizes = { 1_000, 10_000, 100_000, 1_000_000, 10_000_000 };
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        Path dir = Files.createTempDirectory("election-registry");
+        System.out.printf("%12s %14s %14s%n", "voters", "find ns/op", "findById ns/op");
+        for (int size : sizes) {
+            ElectionEngine.VoterRegistry registry = buildRoll(dir.resolve("voter-" + size + ".dat"), size);
+            // Warm up, then measure
+            lookups(registry, size, LOOKUPS / 4, true);
+            double findNs = lookups(registry, size, LOOKUPS, true);
+            double byIdNs = lookups(registry, size, LOOKUPS, false);
+            System.out.printf("%12d %14.1f %14.1f%n", size, findNs, byIdNs);
+        }
+    }
+
+    static ElectionEngine.VoterRegistry buildRoll(Path file, int size) throws IOException {
+        List<ElectionEngine.Voter> voters = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            voters.add(new ElectionEngine.Voter("Voter" + i, "V" + i));
+        }
+        ElectionEngine.VoterRoll.write(file, voters);
+        return new ElectionEngine.VoterRegistry(ElectionEngine.VoterRoll.open(file), null);
+    }
+
+    private static double lookups(ElectionEngine.VoterRegistry registry, int size, int count, boolean byNameAndId) {
+        // Keys are built up front so only the lookup is timed
+        Random random = new Random(42);
+        String[] names = new String[4096];
+        String[] ids = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            int n = random.nextInt(size);
+            names[i] = "Voter" + n;
+            ids[i] = "V" + n;
+        }
+        int found = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            int k = i & (names.length - 1);
+            ElectionEngine.Voter v = byNameAndId ? registry.find(names[k], ids[k]) : registry.findById(ids[k]);
+            if (v != null)
+                found++;
+        }
+        long elapsed = System.nanoTime() - start;
+        if (found != count)
+            throw new IllegalStateException("Lookup missed " + (count - found) + " voters");
+        return (double) elapsed / count;
+    }
+}
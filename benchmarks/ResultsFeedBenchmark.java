@@ -0,0 +1,105 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Drives vote intake at full speed while the results feed publishes to a
+// fast subscriber and a deliberately slow one. Reports intake throughput
+// with and without the feed, how stale the fast subscriber's results got,
+// and how many ticks the slow subscriber had merged. The run fails unless
+// both subscribers end on the exact final total and the slow one's merged
+// deltas add up to it.
+//
+// java -cp out ResultsFeedBenchmark [candidates] [seconds] [threads]        (default: 20 5 <cpus>)
+public class ResultsFeedBenchmark {
+    private static final long SLOW_SUBSCRIBER_MS = 500;
+
+    public static void main(String[] args) throws Exception {
+        int candidateCount = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        double baseline = intake(registry(candidateCount), seconds, threads);
+
+        ElectionEngine.CandidateRegistry registry = registry(candidateCount);
+        ElectionEngine.ResultsFeed feed = new ElectionEngine.ResultsFeed(registry);
+        AtomicLong maxStaleMs = new AtomicLong();
+        AtomicLong fastTotal = new AtomicLong();
+        LongAdder fastUpdates = new LongAdder();
+        feed.subscribe(update -> {
+            long interval = Long.getLong("election.feedIntervalMillis", 100L);
+            // Counts can be up to one interval old when sampled, plus the delivery delay
+            maxStaleMs.accumulateAndGet(System.currentTimeMillis() - update.getTimeMillis() + interval, Math::max);
+            fastTotal.set(update.getTotalVotes());
+            fastUpdates.increment();
+        });
+        AtomicLong slowTotal = new AtomicLong();
+        LongAdder slowDeltaSum = new LongAdder();
+        LongAdder slowUpdates = new LongAdder();
+        LongAdder slowCoalesced = new LongAdder();
+        feed.subscribe(update -> {
+            update.getDeltas().values().forEach(slowDeltaSum::add);
+            slowTotal.set(update.getTotalVotes());
+            slowUpdates.increment();
+            slowCoalesced.add(update.getCoalesced());
+            try {
+                Thread.sleep(SLOW_SUBSCRIBER_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        double withFeed = intake(registry, seconds, threads);
+
+        int finalTotal = registry.leaderboard().total();
+        feed.tick();
+        long deadline = System.currentTimeMillis() + 5 * SLOW_SUBSCRIBER_MS;
+        while ((fastTotal.get() != finalTotal || slowTotal.get() != finalTotal)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        feed.close();
+
+        System.out.printf("candidates=%d threads=%d seconds=%d%n", candidateCount, threads, seconds);
+        System.out.printf("intake without feed: %8.2f M votes/s%n", baseline / 1e6);
+        System.out.printf("intake with feed:    %8.2f M votes/s%n", withFeed / 1e6);
+        System.out.printf("fast subscriber: %d updates, worst staleness %d ms%n", fastUpdates.sum(), maxStaleMs.get());
+        System.out.printf("slow subscriber: %d updates carrying %d ticks%n", slowUpdates.sum(), slowCoalesced.sum());
+        if (fastTotal.get() != finalTotal || slowTotal.get() != finalTotal || slowDeltaSum.sum() != finalTotal)
+            throw new IllegalStateException("Subscribers ended on " + fastTotal.get() + "/" + slowTotal.get()
+                    + " (slow deltas " + slowDeltaSum.sum() + "), expected " + finalTotal);
+        System.out.println("OK: both subscribers converged on " + finalTotal + " votes");
+    }
+
+    private static ElectionEngine.CandidateRegistry registry(int candidateCount) {
+        List<ElectionEngine.Candidate> candidates = new ArrayList<>();
+        for (int i = 0; i < candidateCount; i++) {
+            candidates.add(new ElectionEngine.Candidate("C" + i, "Place", "C" + i, "Party", "S", "0", "No"));
+        }
+        return new ElectionEngine.CandidateRegistry(candidates);
+    }
+
+    // Votes per second across all threads.
+    private static double intake(ElectionEngine.CandidateRegistry registry, int seconds, int threads)
+            throws InterruptedException {
+        List<ElectionEngine.Candidate> candidates = registry.asList();
+        AtomicBoolean stop = new AtomicBoolean();
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int offset = t;
+            new Thread(() -> {
+                for (int i = offset; !stop.get(); i++) {
+                    candidates.get(i % candidates.size()).incrementVote();
+                }
+                done.countDown();
+            }, "station-" + t).start();
+        }
+        long begin = System.nanoTime();
+        Thread.sleep(seconds * 1000L);
+        stop.set(true);
+        done.await();
+        double elapsed = (System.nanoTime() - begin) / 1e9;
+        return registry.leaderboard().total() / elapsed;
+    }
+}
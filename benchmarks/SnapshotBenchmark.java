@@ -0,0 +1,71 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Simulates a polling day on a large voter roll: each "hour" registers
+// 0.1% more voters, takes 5% of the roll's ballots through Admin.castVotes
+// and then snapshots the election. The first snapshot stores everything;
+// the run prints what each later one adds to the chunk store and how long
+// it takes, then restores the election halfway through the last hour and
+// fails unless the restored tallies match. The temporary data directory
+// is left in place, as the engine still holds it open.
+//
+// java -Xmx4g -cp out SnapshotBenchmark [voters] [hours]        (default: 10000000 4)
+public class SnapshotBenchmark {
+    public static void main(String[] args) throws Exception {
+        int voterCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int hours = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        Path dataDir = Files.createTempDirectory("election-snapshots");
+        System.setProperty("election.dataDir", dataDir.toString());
+        System.setProperty("election.snapshotMinutes", "0");
+        List<ElectionEngine.Candidate> candidates = ElectionBenchmark.syntheticCandidates();
+        ElectionEngine.FileHandler.writeCandidates(candidates);
+        ElectionEngine.FileHandler.writeVoters(ElectionBenchmark.syntheticVoters(voterCount));
+
+        ElectionEngine.Admin admin = new ElectionEngine.Admin();
+        admin.startCampaign();
+        admin.startElection(24 * 3600);
+        Random random = new Random(24);
+        int registered = voterCount;
+        int nextVoter = 0;
+        long time = System.currentTimeMillis();
+        long restoreSeq = 0;
+        System.out.printf("voters=%d%n%-6s %10s %10s %12s %12s %10s%n", voterCount, "hour", "seq", "voters",
+                "raw MB", "stored MB", "ms");
+        for (int hour = 1; hour <= hours; hour++) {
+            for (int i = 0; i < voterCount / 1000; i++, registered++) {
+                admin.addVoter("Voter" + registered, "V" + registered);
+            }
+            int ballots = voterCount / 20;
+            List<ElectionEngine.Ballot> batch = new ArrayList<>(ElectionEngine.Admin.INGEST_BATCH);
+            for (int i = 0; i < ballots; i++) {
+                batch.add(new ElectionEngine.Ballot("V" + nextVoter++, "C" + random.nextInt(candidates.size()),
+                        time++));
+                if (batch.size() == ElectionEngine.Admin.INGEST_BATCH || i == ballots - 1) {
+                    admin.castVotes(batch);
+                    batch.clear();
+                }
+                if (hour == hours && i == ballots / 2)
+                    restoreSeq = admin.getTotalVotes();
+            }
+            ElectionEngine.Snapshots.Snapshot s = admin.snapshot();
+            System.out.printf("%-6d %10d %10d %12.1f %12.2f %10d%n", hour, s.getSeq(), s.getVoters(),
+                    s.getBytes() / 1e6, s.getStoredBytes() / 1e6, s.getMillis());
+        }
+        admin.flush();
+        admin.close();
+
+        Path target = dataDir.resolve("restored");
+        ElectionEngine.Snapshots.RestoreReport report = ElectionEngine.Snapshots.restore(restoreSeq, target);
+        System.out.print(report);
+        int restoredVotes = 0;
+        for (ElectionEngine.Candidate c : ElectionEngine.BinaryFormat.readCandidates(target.resolve("candidate.dat"))) {
+            restoredVotes += c.getVotes();
+        }
+        if (report.getSeq() != restoreSeq || report.getVoted() != restoreSeq || restoredVotes != restoreSeq)
+            throw new IllegalStateException("Restored " + restoredVotes + " votes, expected " + restoreSeq);
+        System.out.println("OK: restored seq " + restoreSeq + " with matching tallies");
+    }
+}
@@ -0,0 +1,81 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+// Hammers TallyEngine from many polling-station threads. Every voter is
+// offered to every thread, so each ballot races against itself; the run
+// fails if any vote is lost or counted twice, or if the leaderboard
+// disagrees with the candidates' own counts.
+//
+// java -cp out TallyStressBenchmark [voters] [candidates] [threads]
+public class TallyStressBenchmark {
+    public static void main(String[] args) throws InterruptedException {
+        int voterCount = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int candidateCount = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        List<ElectionEngine.Candidate> candidates = new ArrayList<>();
+        for (int i = 0; i < candidateCount; i++) {
+            candidates.add(new ElectionEngine.Candidate("C" + i, "Place", "C" + i, "Party", "S", "0", "No"));
+        }
+        // Registering puts every candidate on the leaderboard, so each ballot also moves the ranking
+        ElectionEngine.CandidateRegistry registry = new ElectionEngine.CandidateRegistry(candidates);
+        ElectionEngine.Voter[] voters = new ElectionEngine.Voter[voterCount];
+        for (int i = 0; i < voterCount; i++) {
+            voters[i] = new ElectionEngine.Voter("Voter" + i, "V" + i);
+        }
+
+        LongAdder accepted = new LongAdder();
+        LongAdder rejected = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int offset = t * (voterCount / threads);
+            new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < voterCount; i++) {
+                    int v = (i + offset) % voterCount;
+                    ElectionEngine.VoteResult r = ElectionEngine.TallyEngine.tally(voters[v],
+                            candidates.get(v % candidateCount));
+                    if (r == ElectionEngine.VoteResult.ACCEPTED)
+                        accepted.increment();
+                    else
+                        rejected.increment();
+                }
+                done.countDown();
+            }, "station-" + t).start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        double seconds = (System.nanoTime() - begin) / 1e9;
+
+        long tallied = 0;
+        for (ElectionEngine.Candidate c : candidates) {
+            tallied += c.getVotes();
+        }
+        long attempts = (long) voterCount * threads;
+        System.out.printf("threads=%d attempts=%d accepted=%d rejected=%d tallied=%d%n", threads, attempts,
+                accepted.sum(), rejected.sum(), tallied);
+        System.out.printf("%.2f M ballots/s%n", attempts / seconds / 1e6);
+        if (accepted.sum() != voterCount || tallied != voterCount || rejected.sum() != attempts - voterCount) {
+            throw new IllegalStateException("Lost or duplicate votes detected");
+        }
+        ElectionEngine.Leaderboard board = registry.leaderboard();
+        List<ElectionEngine.Leaderboard.Standing> ranking = board.top(candidateCount);
+        for (int r = 0; r < ranking.size(); r++) {
+            ElectionEngine.Leaderboard.Standing s = ranking.get(r);
+            if (s.getVotes() != s.getCandidate().getVotes() || (r > 0 && ranking.get(r - 1).getVotes() < s.getVotes()))
+                throw new IllegalStateException("Leaderboard out of order at rank " + r);
+        }
+        if (board.total() != voterCount)
+            throw new IllegalStateException("Leaderboard total " + board.total() + " != " + voterCount);
+        System.out.println("OK: every voter counted exactly once");
+    }
+}
@@ -0,0 +1,110 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Heap footprint of the voter roll: a List<Voter> (with and without the id
+// and name hash indexes the registry used to keep) against VoterRegistry,
+// whose heap is only the id table and voted bitmap over a mapped roll.
+// Layouts that would not fit in the heap are extrapolated from the
+// per-voter cost at the smallest size and marked "est".
+//
+// java -Xmx4g -cp out VoterMemoryReport [sizes...]        (default: 1000000 50000000)
+public class VoterMemoryReport {
+    interface Layout {
+        Object build(int size) throws IOException;
+    }
+
+    private static final double[] perVoter = new double[3];
+
+    public static void main(String[] args) throws IOException {
+        int[] sizes = { 1_000_000, 50_000_000 };
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        Path dir = Files.createTempDirectory("election-memory");
+        System.out.println("data dir: " + dir);
+        System.out.printf("%-28s %12s %14s %12s%n", "layout", "voters", "heap MB", "B/voter");
+        for (int size : sizes) {
+            report(0, "List<Voter>", size, VoterMemoryReport::voterList);
+            report(1, "List<Voter> + hash indexes", size, VoterMemoryReport::indexedList);
+            Path roll = dir.resolve("voter-" + size + ".dat");
+            report(2, "VoterRegistry (bitmap)", size, n -> registry(roll, n));
+            Files.deleteIfExists(roll);
+        }
+    }
+
+    private static void report(int layout, String name, int size, Layout build) throws IOException {
+        double known = perVoter[layout];
+        if (known > 0 && known * size > Runtime.getRuntime().maxMemory() * 0.7) {
+            System.out.printf("%-28s %12d %10.1f est %12.1f%n", name, size, known * size / (1 << 20), known);
+            return;
+        }
+        long before = usedHeap();
+        Object held = build.build(size);
+        long bytes = usedHeap() - before;
+        if (held == null)
+            throw new IllegalStateException();
+        if (perVoter[layout] == 0)
+            perVoter[layout] = (double) bytes / size;
+        System.out.printf("%-28s %12d %14.1f %12.1f%n", name, size, bytes / (double) (1 << 20), (double) bytes / size);
+    }
+
+    private static Object voterList(int size) {
+        List<ElectionEngine.Voter> voters = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            voters.add(new ElectionEngine.Voter("Voter" + i, "V" + i));
+        }
+        return voters;
+    }
+
+    private static Object indexedList(int size) {
+        List<ElectionEngine.Voter> voters = new ArrayList<>(size);
+        Map<String, ElectionEngine.Voter> byId = new ConcurrentHashMap<>();
+        Map<String, List<ElectionEngine.Voter>> byName = new ConcurrentHashMap<>();
+        for (int i = 0; i < size; i++) {
+            ElectionEngine.Voter v = new ElectionEngine.Voter("Voter" + i, "V" + i);
+            voters.add(v);
+            byId.put(v.getId(), v);
+            byName.computeIfAbsent(v.getName(), k -> new CopyOnWriteArrayList<>()).add(v);
+        }
+        return new Object[] { voters, byId, byName };
+    }
+
+    // The roll is filled by appends so no List<Voter> is ever built; the
+    // closed roll leaves nothing on the heap, so only the registry counts.
+    private static Object registry(Path file, int size) throws IOException {
+        ElectionEngine.VoterRoll.write(file, Collections.emptyList());
+        try (ElectionEngine.VoterRoll roll = ElectionEngine.VoterRoll.open(file)) {
+            for (int i = 0; i < size; i++) {
+                roll.append(new ElectionEngine.Voter("Voter" + i, "V" + i));
+            }
+        }
+        ElectionEngine.VoterRegistry registry = new ElectionEngine.VoterRegistry(ElectionEngine.VoterRoll.open(file), null);
+        for (int i = 0; i < size; i += 3) {
+            registry.markVoted(i);
+        }
+        return registry;
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            rt.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,181 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Load generator for the HTTP voting endpoint. Writes a synthetic roll to
+// a temp directory, serves it with "ElectionEngine serve" in a child JVM
+// (so client and server each get their own file-descriptor budget for
+// the open connections) and keeps the given number of simulated voters
+// in flight. Each simulated
+// voter logs in, lists the candidates, votes and fetches the results;
+// when one finishes, the next voter on the roll takes its place. Reports
+// sustained requests per second and p50/p99 latency per endpoint. The run
+// fails if any request errors or the votes the server reports differ
+// from the ones it accepted.
+//
+// java -Xmx2g -cp out VotingLoadGenerator [voters] [concurrency] [seconds]        (default: 500000 10000 30)
+public class VotingLoadGenerator {
+    private static final String[] ENDPOINTS = { "login", "candidates", "vote", "results" };
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final String base;
+    private final List<ElectionEngine.Candidate> candidates;
+    private final int voterCount;
+    private final long deadline;
+    private final AtomicInteger nextVoter = new AtomicInteger();
+    private final long[][] latencies;
+    private final AtomicInteger[] recorded = new AtomicInteger[ENDPOINTS.length];
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+
+    private VotingLoadGenerator(String base, List<ElectionEngine.Candidate> candidates, int voterCount, long deadline) {
+        this.base = base;
+        this.candidates = candidates;
+        this.voterCount = voterCount;
+        this.deadline = deadline;
+        this.latencies = new long[ENDPOINTS.length][voterCount];
+        for (int i = 0; i < ENDPOINTS.length; i++) {
+            recorded[i] = new AtomicInteger();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int voterCount = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        Path dataDir = Files.createTempDirectory("election-http");
+        System.setProperty("election.dataDir", dataDir.toString());
+        List<ElectionEngine.Candidate> candidates = ElectionBenchmark.syntheticCandidates();
+        ElectionEngine.FileHandler.writeCandidates(candidates);
+        ElectionEngine.FileHandler.writeVoters(ElectionBenchmark.syntheticVoters(voterCount));
+
+        Process server = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-Delection.dataDir=" + dataDir, "-cp", System.getProperty("java.class.path"), "ElectionEngine",
+                "serve", "0").redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        BufferedReader serverOut = new BufferedReader(new InputStreamReader(server.getInputStream()));
+        String banner = serverOut.readLine();
+        if (banner == null || !banner.contains("http://")) {
+            server.destroy();
+            throw new IllegalStateException("Voting endpoint did not start: " + banner);
+        }
+        String base = banner.substring(banner.indexOf("http://"), banner.indexOf(' ', banner.indexOf("http://")));
+        VotingLoadGenerator load = new VotingLoadGenerator(base, candidates, voterCount,
+                System.nanoTime() + seconds * 1_000_000_000L);
+
+        CountDownLatch done = new CountDownLatch(concurrency);
+        long begin = System.nanoTime();
+        for (int i = 0; i < concurrency; i++) {
+            load.nextSession(done);
+        }
+        done.await();
+        double elapsed = (System.nanoTime() - begin) / 1e9;
+        long counted = 0;
+        for (String line : load.client.send(HttpRequest.newBuilder(URI.create(base + "results")).build(),
+                HttpResponse.BodyHandlers.ofString()).body().split("\n")) {
+            counted += Long.parseLong(line.substring(line.lastIndexOf('|') + 1).trim());
+        }
+        server.destroy();
+
+        long requests = 0;
+        for (AtomicInteger n : load.recorded) {
+            requests += n.get();
+        }
+        System.out.printf("voters=%d concurrency=%d server: %s%n", voterCount, concurrency,
+                banner.substring(banner.indexOf('(') + 1, banner.lastIndexOf(')')));
+        System.out.printf("%d sessions, %d requests in %.1f s: %.0f requests/s (%d retried)%n",
+                load.recorded[2].get(), requests, elapsed, requests / elapsed, load.retries.sum());
+        long[] all = new long[(int) requests];
+        int k = 0;
+        for (int e = 0; e < ENDPOINTS.length; e++) {
+            long[] sorted = Arrays.copyOf(load.latencies[e], load.recorded[e].get());
+            System.arraycopy(sorted, 0, all, k, sorted.length);
+            k += sorted.length;
+            report(ENDPOINTS[e], sorted);
+        }
+        report("all", all);
+        if (load.errors.sum() > 0 || load.accepted.sum() != counted)
+            throw new IllegalStateException(load.errors.sum() + " failed sessions; " + load.accepted.sum()
+                    + " votes accepted, " + counted + " counted");
+        System.out.println("OK: " + load.accepted.sum() + " votes accepted and counted");
+    }
+
+    // Starts the next voter's session, or retires this slot when time or voters run out.
+    private void nextSession(CountDownLatch done) {
+        int voter = nextVoter.getAndIncrement();
+        if (voter >= voterCount || System.nanoTime() > deadline) {
+            done.countDown();
+            return;
+        }
+        String candidate = candidates.get(voter % candidates.size()).getName();
+        send(0, post("login", "name=Voter" + voter + "&id=V" + voter))
+                .thenCompose(r -> send(1, HttpRequest.newBuilder(URI.create(base + "candidates")).build()))
+                .thenCompose(r -> send(2, post("vote", "voterId=V" + voter + "&candidate="
+                        + URLEncoder.encode(candidate, StandardCharsets.UTF_8))))
+                .thenCompose(r -> {
+                    if (r.statusCode() == 200)
+                        accepted.increment();
+                    return send(3, HttpRequest.newBuilder(URI.create(base + "results?top=5")).build());
+                })
+                .whenComplete((r, e) -> {
+                    if (e != null) {
+                        errors.increment();
+                        if (errors.sum() <= 5)
+                            System.err.println("Session for voter " + voter + " failed: " + e);
+                    }
+                    nextSession(done);
+                });
+    }
+
+    private HttpRequest post(String path, String form) {
+        return HttpRequest.newBuilder(URI.create(base + path))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form)).build();
+    }
+
+    // A keep-alive connection the server closed as idle fails the request
+    // that tried to reuse it; like a browser, that request is sent once more.
+    private CompletableFuture<HttpResponse<String>> send(int endpoint, HttpRequest request) {
+        long t0 = System.nanoTime();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).handle((r, e) -> {
+            if (e == null)
+                return CompletableFuture.completedFuture(r);
+            if (!(e instanceof IOException || e.getCause() instanceof IOException))
+                return CompletableFuture.<HttpResponse<String>>failedFuture(e);
+            retries.increment();
+            return client.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+        }).thenCompose(f -> f).thenApply(r -> {
+            latencies[endpoint][recorded[endpoint].getAndIncrement()] = System.nanoTime() - t0;
+            if (r.statusCode() != 200)
+                throw new IllegalStateException(ENDPOINTS[endpoint] + " returned " + r.statusCode() + ": " + r.body());
+            return r;
+        });
+    }
+
+    private static void report(String label, long[] nanos) {
+        Arrays.sort(nanos);
+        System.out.printf("  %-12s %9d requests  p50 %8.1f ms  p99 %8.1f ms%n", label, nanos.length,
+                pct(nanos, 0.50), pct(nanos, 0.99));
+    }
+
+    private static double pct(long[] sorted, double p) {
+        if (sorted.length == 0)
+            return 0;
+        int idx = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+        return sorted[Math.max(0, idx)] / 1e6;
+    }
+}
@@ -0,0 +1,76 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+// Per-vote latency of Admin.castVote with the files saved synchronously
+// after every vote (what the EDT used to wait for) against the
+// write-behind stage, which acknowledges once the ballot is in the ledger.
+// Prints the write-behind queue depth and flush latency at the end; the
+// run fails unless every vote is counted and the queue drains to zero.
+//
+// java -cp out WriteBehindBenchmark [voters] [syncVotes]        (default: 200000 500)
+public class WriteBehindBenchmark {
+    public static void main(String[] args) throws Exception {
+        int voterCount = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int syncVotes = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        Path dataDir = Files.createTempDirectory("election-writebehind");
+        System.setProperty("election.dataDir", dataDir.toString());
+        List<ElectionEngine.Candidate> candidates = ElectionBenchmark.syntheticCandidates();
+        ElectionEngine.FileHandler.writeCandidates(candidates);
+        ElectionEngine.FileHandler.writeVoters(ElectionBenchmark.syntheticVoters(voterCount));
+
+        ElectionEngine.Admin admin = new ElectionEngine.Admin();
+        // Ballots are refused unless the election is running; the scheduler
+        // opens it directly so the results log stays out of the output
+        admin.getScheduler().start(ElectionEngine.Admin.NATIONAL, 24 * 3600 * 1000L);
+        int next = 0;
+        long[] sync = new long[syncVotes];
+        for (int i = 0; i < syncVotes; i++, next++) {
+            long t0 = System.nanoTime();
+            cast(admin, next, candidates);
+            admin.flush();
+            sync[i] = System.nanoTime() - t0;
+        }
+
+        long[] behind = new long[voterCount - syncVotes];
+        for (int i = 0; i < behind.length; i++, next++) {
+            long t0 = System.nanoTime();
+            cast(admin, next, candidates);
+            behind[i] = System.nanoTime() - t0;
+        }
+        ElectionEngine.WriteBehind.Stats during = admin.getPersistenceStats();
+        admin.flush();
+        ElectionEngine.WriteBehind.Stats after = admin.getPersistenceStats();
+
+        System.out.printf("voters=%d maxDirty=%d flushMillis=%d%n", voterCount,
+                Long.getLong("election.maxDirty", 10_000L), Long.getLong("election.flushMillis", 1000L));
+        report("castVote + synchronous save", sync);
+        report("castVote, write-behind", behind);
+        System.out.println("before final flush: " + during);
+        System.out.println("after final flush:  " + after);
+        if (admin.getTotalVotes() != voterCount || after.getQueueDepth() != 0)
+            throw new IllegalStateException("Counted " + admin.getTotalVotes() + " of " + voterCount
+                    + " votes, " + after.getQueueDepth() + " records still queued");
+        System.out.println("OK: every vote counted and flushed");
+        admin.close();
+    }
+
+    private static void cast(ElectionEngine.Admin admin, int voter, List<ElectionEngine.Candidate> candidates) {
+        ElectionEngine.VoteResult r = admin.castVote("V" + voter, candidates.get(voter % candidates.size()).getName());
+        if (r != ElectionEngine.VoteResult.ACCEPTED)
+            throw new IllegalStateException("Vote " + voter + " was " + r);
+    }
+
+    private static void report(String label, long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%-30s p50 %9.1f us  p99 %9.1f us  max %9.1f us%n", label, pct(sorted, 0.50),
+                pct(sorted, 0.99), sorted[sorted.length - 1] / 1000.0);
+    }
+
+    private static double pct(long[] sorted, double p) {
+        int idx = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+        return sorted[Math.max(0, idx)] / 1000.0;
+    }
+}
@@ -0,0 +1,90 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Edge cases of the engine, each against a fresh data directory.
+class ElectionEngineTest {
+    @TempDir
+    Path dataDir;
+
+    private ElectionEngine.Admin admin;
+
+    @BeforeEach
+    void openAdmin() {
+        System.setProperty("election.dataDir", dataDir.toString());
+        admin = new ElectionEngine.Admin();
+    }
+
+    @AfterEach
+    void closeAdmin() {
+        admin.close();
+        System.clearProperty("election.dataDir");
+    }
+
+    // The ledger and snapshot files are comma- and line-separated
+    @Test
+    void idsWithDelimitersAreRefused() {
+        for (String id : new String[] { "v,1", "v\n1", "v\r1", "" }) {
+            assertFalse(admin.addVoter("Eve", id), "voter id " + id);
+            assertFalse(admin.addCandidate("Ann", "North", id, "P", "S", "1", "No"), "candidate id " + id);
+        }
+        assertTrue(admin.addVoter("Eve", "v1"));
+        assertTrue(admin.addCandidate("Ann", "North", "c1", "P", "S", "1", "No"));
+        assertEquals(1, admin.getTopCandidates(10).size());
+    }
+
+    @Test
+    void negativeTopIsEmpty() {
+        admin.addCandidate("Ann", "North", "c1", "P", "S", "1", "No");
+        assertTrue(admin.getTopCandidates(-1).isEmpty());
+        assertTrue(admin.getTopCandidates(0).isEmpty());
+    }
+
+    @Test
+    void resultsRejectNegativeTop() throws Exception {
+        ElectionEngine.VotingServer server = new ElectionEngine.VotingServer(admin, 0);
+        try {
+            HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+            String base = "http://127.0.0.1:" + server.getAddress().getPort();
+            HttpResponse<String> response = client.send(
+                    HttpRequest.newBuilder(URI.create(base + "/results?top=-1")).timeout(Duration.ofSeconds(5)).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(400, response.statusCode());
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    void ingestAfterCloseNeedsTheOverride() throws Exception {
+        admin.addCandidate("Ann", "North", "c1", "P", "S", "1", "No");
+        admin.addVoter("Eve", "v1");
+        admin.addVoter("Bob", "v2");
+        assertTrue(admin.startCampaign());
+        assertTrue(admin.startElection(3600));
+        assertTrue(admin.endElection());
+
+        Path upload = Files.writeString(dataDir.resolve("upload.csv"), "v1,c1\nv2,c1\n");
+        Path rejects = dataDir.resolve("upload.rejects.csv");
+        Map<ElectionEngine.VoteResult, Long> counts = admin.ingestBallotFile(upload, rejects);
+        assertEquals(2L, counts.get(ElectionEngine.VoteResult.VOTING_CLOSED));
+
+        counts = admin.ingestBallotFile(upload, rejects, true);
+        assertEquals(2L, counts.get(ElectionEngine.VoteResult.ACCEPTED));
+        assertEquals(2, admin.getTotalVotes());
+    }
+}